@@ -0,0 +1,155 @@
+package nl.osmdata.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.RelationContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.xml.common.CompressionMethod;
+import org.openstreetmap.osmosis.xml.v0_6.XmlChangeWriter;
+
+import nl.osmdata.pbf.PbfFileWriter;
+
+/**
+ * Small deterministic data sets for the benchmarks.
+ *
+ * The extract is a grid of nodes, with ways along the rows of the grid and relations
+ * of consecutive ways. The same data gives the same results on every commit. A real
+ * extract can be used instead with -Dbenchmark.pbf=file.osm.pbf and a real change file
+ * with -Dbenchmark.osc=file.osc.gz.
+ */
+final class BenchmarkData {
+    private static final int GRID_SIZE = 300;
+    private static final int WAY_LENGTH = 30;
+    private static final int RELATION_SIZE = 10;
+    private static final long BASE_TIME = 1704067200000L;
+
+    static final String STATE = """
+        #Sat Mar 02 21:21:38 UTC 2024
+        sequenceNumber=4012
+        timestamp=2024-03-02T20\\:21\\:14Z
+        """;
+
+    private static File extract;
+    private static File changeFile;
+
+    private BenchmarkData() {
+    }
+
+    static synchronized File getExtract() {
+        var path = System.getProperty("benchmark.pbf");
+        if (path != null) {
+            return new File(path);
+        }
+        if (extract == null) {
+            extract = createTempFile(".osm.pbf");
+            var writer = new PbfFileWriter(extract);
+            writer.initialize(null);
+            createEntities().forEach(writer::process);
+            writer.complete();
+            writer.close();
+        }
+        return extract;
+    }
+
+    static synchronized File getChangeFile() {
+        var path = System.getProperty("benchmark.osc");
+        if (path != null) {
+            return new File(path);
+        }
+        if (changeFile == null) {
+            changeFile = createTempFile(".osc.gz");
+            var writer = new XmlChangeWriter(changeFile, CompressionMethod.GZip);
+            writer.initialize(null);
+            for (var entity : createEntities()) {
+                long id = entity.getEntity().getId();
+                if (entity instanceof NodeContainer node && id % 7 == 0) {
+                    writer.process(new ChangeContainer(new NodeContainer(createNode(id, 2)),
+                        id % 3 == 0 ? ChangeAction.Delete : ChangeAction.Modify));
+                } else if (entity instanceof WayContainer && id % 5 == 0) {
+                    writer.process(new ChangeContainer(entity, ChangeAction.Modify));
+                }
+            }
+            for (long id = GRID_SIZE * GRID_SIZE + 1; id <= GRID_SIZE * GRID_SIZE + 2000; id++) {
+                writer.process(new ChangeContainer(new NodeContainer(createNode(id, 1)), ChangeAction.Create));
+            }
+            writer.complete();
+            writer.close();
+        }
+        return changeFile;
+    }
+
+    /**
+     * The entities of the extract, in the order of a pbf file.
+     */
+    static List<EntityContainer> createEntities() {
+        var entities = new ArrayList<EntityContainer>();
+        for (long id = 1; id <= GRID_SIZE * GRID_SIZE; id++) {
+            entities.add(new NodeContainer(createNode(id, 1)));
+        }
+        long wayId = 0;
+        for (int row = 0; row < GRID_SIZE; row++) {
+            for (int column = 0; column < GRID_SIZE; column += WAY_LENGTH) {
+                var wayNodes = new ArrayList<WayNode>();
+                for (int i = 0; i < WAY_LENGTH; i++) {
+                    wayNodes.add(new WayNode((long) row * GRID_SIZE + column + i + 1));
+                }
+                wayId++;
+                var tags = List.of(new Tag("highway", "residential"), new Tag("name", "Street " + wayId));
+                entities.add(new WayContainer(new Way(createEntityData(wayId, 1, tags), wayNodes)));
+            }
+        }
+        for (long relationId = 1; relationId * RELATION_SIZE <= wayId; relationId++) {
+            var members = new ArrayList<RelationMember>();
+            for (int i = 0; i < RELATION_SIZE; i++) {
+                members.add(new RelationMember((relationId - 1) * RELATION_SIZE + i + 1, EntityType.Way,
+                    i == 0 ? "start" : ""));
+            }
+            var tags = List.of(new Tag("type", "route"), new Tag("route", "bus"), new Tag("ref", "" + relationId));
+            entities.add(new RelationContainer(new Relation(createEntityData(relationId, 1, tags), members)));
+        }
+        return entities;
+    }
+
+    private static Node createNode(long id, int version) {
+        List<Tag> tags = id % 10 == 0
+            ? List.of(new Tag("amenity", "bench"), new Tag("backrest", version == 1 ? "yes" : "no"))
+            : List.of();
+        double latitude = 52.0 + (id - 1) / GRID_SIZE * 0.0001;
+        double longitude = 5.0 + (id - 1) % GRID_SIZE * 0.0001;
+        return new Node(createEntityData(id, version, tags), latitude, longitude);
+    }
+
+    private static CommonEntityData createEntityData(long id, int version, List<Tag> tags) {
+        var user = new OsmUser((int) (id % 50) + 1, "user" + (id % 50 + 1));
+        return new CommonEntityData(id, version, new Date(BASE_TIME + id * 1000), user, 1000 + id / 100, tags);
+    }
+
+    private static File createTempFile(String suffix) {
+        try {
+            var file = Files.createTempFile("benchmark", suffix).toFile();
+            file.deleteOnExit();
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create the benchmark data.", e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package nl.osmdata.benchmark;
+
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import nl.osmdata.copy.CopyFormat;
+import nl.osmdata.copy.CopyTarget;
+import nl.osmdata.copy.RowWriter;
+
+/**
+ * Copy target that encodes the rows and only counts the bytes.
+ */
+class DiscardingCopyTarget implements CopyTarget {
+    private final CopyFormat format;
+    private final Map<String, RowWriter> writers = new HashMap<>();
+    private long bytes = 0;
+
+    DiscardingCopyTarget(CopyFormat format) {
+        super();
+        this.format = format;
+    }
+
+    @Override
+    public synchronized RowWriter getRowWriter(String tableName) {
+        return writers.computeIfAbsent(tableName, table -> format.createRowWriter(new OutputStream() {
+            @Override
+            public void write(int b) {
+                bytes++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                bytes += len;
+            }
+        }));
+    }
+
+    @Override
+    public CopyFormat getFormat() {
+        return format;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+}
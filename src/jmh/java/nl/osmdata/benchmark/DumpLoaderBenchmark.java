@@ -0,0 +1,81 @@
+package nl.osmdata.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.osmdata.DumpLoader;
+import nl.osmdata.LoadOptions;
+import nl.osmdata.copy.CopyFormat;
+import nl.osmdata.snapshot.SnapshotPbfDumpWriter;
+import nl.osmdata.snapshot.SnapshotSchemaHelper;
+
+/**
+ * COPY the dump files of the extract into a local Postgres database.
+ *
+ * The database is given with -Dbenchmark.db.url=jdbc:postgresql://localhost/osm_benchmark,
+ * -Dbenchmark.db.user and -Dbenchmark.db.password. The database needs the hstore and
+ * postgis extensions. The tables of the snapshot schema in it are dropped and recreated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DumpLoaderBenchmark {
+    @Param({"TEXT", "BINARY"})
+    private CopyFormat copyFormat;
+    @Param({"1", "4"})
+    private int loadThreads;
+
+    private File dumpFolder;
+    private DumpLoader dumpLoader;
+
+    @Setup
+    public void setup() throws IOException {
+        var dbUrl = System.getProperty("benchmark.db.url");
+        if (dbUrl == null) {
+            throw new IllegalStateException("Set -Dbenchmark.db.url to run the DumpLoader benchmark.");
+        }
+        var properties = new Properties();
+        properties.setProperty("user", System.getProperty("benchmark.db.user", "osm"));
+        properties.setProperty("password", System.getProperty("benchmark.db.password", "osm"));
+        var options = new LoadOptions();
+        options.setCopyFormat(copyFormat);
+        options.setNativeDecoder(true);
+        options.setLoadThreads(loadThreads);
+        options.setLoadChunkSize(1024 * 1024);
+        dumpFolder = Files.createTempDirectory("benchmark").toFile();
+        new SnapshotPbfDumpWriter(options).writeDump(BenchmarkData.getExtract(), dumpFolder);
+        dumpLoader = new DumpLoader(dbUrl, properties, new SnapshotSchemaHelper(), options);
+    }
+
+    @Benchmark
+    public void loadTables() {
+        dumpLoader.loadTables(dumpFolder);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (var file : dumpFolder.listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(dumpFolder.toPath());
+    }
+}
@@ -0,0 +1,75 @@
+package nl.osmdata.benchmark;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.xml.common.CompressionMethod;
+import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
+
+import nl.osmdata.change.OscReader;
+
+/**
+ * Parse a gzipped change file with the Osmosis XmlChangeReader and with the OscReader.
+ * Run with -prof gc to compare the bytes the readers allocate per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OscParseBenchmark {
+    @Param({"xml", "native"})
+    private String reader;
+
+    private File changeFile;
+
+    @Setup
+    public void setup() {
+        changeFile = BenchmarkData.getChangeFile();
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        var changeReader = reader.equals("xml")
+            ? new XmlChangeReader(changeFile, false, CompressionMethod.GZip)
+            : new OscReader(changeFile, CompressionMethod.GZip);
+        changeReader.setChangeSink(new ChangeSink() {
+            @Override
+            public void initialize(Map<String, Object> metaData) {
+                // Nothing to initialize
+            }
+
+            @Override
+            public void process(ChangeContainer change) {
+                blackhole.consume(change);
+            }
+
+            @Override
+            public void complete() {
+                // Nothing to complete
+            }
+
+            @Override
+            public void close() {
+                // Nothing to release
+            }
+        });
+        changeReader.run();
+    }
+}
@@ -0,0 +1,31 @@
+package nl.osmdata.benchmark;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.osmdata.geofabrik.GeofabrikService;
+import nl.osmdata.geofabrik.UpdateState;
+
+/**
+ * Parse a replication state file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseStateBenchmark {
+
+    @Benchmark
+    public UpdateState parseState() {
+        return GeofabrikService.parseState(new StringReader(BenchmarkData.STATE));
+    }
+}
@@ -0,0 +1,60 @@
+package nl.osmdata.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.osmdata.LoadOptions;
+import nl.osmdata.PbfDumpWriter;
+import nl.osmdata.copy.CopyFormat;
+import nl.osmdata.pgsimple.SimplePbfDumpWriter;
+import nl.osmdata.snapshot.SnapshotPbfDumpWriter;
+
+/**
+ * Decode the extract into COPY rows with the dump writers of both schemas, with the
+ * Osmosis pbf reader and with the native block decoder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PbfDecodeBenchmark {
+    @Param({"simple", "snapshot"})
+    private String schema;
+    @Param({"false", "true"})
+    private boolean nativeDecoder;
+    @Param({"TEXT", "BINARY"})
+    private CopyFormat copyFormat;
+
+    private File extract;
+    private PbfDumpWriter dumpWriter;
+
+    @Setup
+    public void setup() {
+        extract = BenchmarkData.getExtract();
+        var options = new LoadOptions();
+        options.setNativeDecoder(nativeDecoder);
+        options.setCopyFormat(copyFormat);
+        dumpWriter = schema.equals("simple") ? new SimplePbfDumpWriter(options) : new SnapshotPbfDumpWriter(options);
+    }
+
+    @Benchmark
+    public long decode() {
+        var target = new DiscardingCopyTarget(copyFormat);
+        dumpWriter.streamDump(extract, target);
+        return target.getBytes();
+    }
+}
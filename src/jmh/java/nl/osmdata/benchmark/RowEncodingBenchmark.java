@@ -0,0 +1,57 @@
+package nl.osmdata.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+
+import nl.osmdata.copy.CopyFormat;
+import nl.osmdata.copy.EntityCopySink;
+import nl.osmdata.pgsimple.SimpleCopySink;
+import nl.osmdata.snapshot.SnapshotCopySink;
+
+/**
+ * Encode decoded entities as COPY rows with the sinks of both schemas, without the
+ * decoding of the pbf file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RowEncodingBenchmark {
+    @Param({"simple", "snapshot"})
+    private String schema;
+    @Param({"TEXT", "BINARY"})
+    private CopyFormat copyFormat;
+
+    private List<EntityContainer> entities;
+
+    @Setup
+    public void setup() {
+        entities = BenchmarkData.createEntities();
+    }
+
+    @Benchmark
+    public long encode() {
+        var target = new DiscardingCopyTarget(copyFormat);
+        EntityCopySink sink = schema.equals("simple") ? new SimpleCopySink(target) : new SnapshotCopySink(target);
+        for (var entity : entities) {
+            sink.process(entity);
+        }
+        sink.complete();
+        return target.getBytes();
+    }
+}
@@ -0,0 +1,122 @@
+package nl.osmdata.synthetic;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server for a folder with the layout of the Geofabrik download server.
+ *
+ * Files are served with GET and HEAD. Single byte ranges are supported, so the pbf
+ * downloader uses its concurrent range requests like it does against Geofabrik.
+ */
+public class GeofabrikStandIn implements AutoCloseable {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private Logger logger = LoggerFactory.getLogger(GeofabrikStandIn.class);
+
+    private final Path root;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(16);
+
+    /**
+     * @param root The folder with the continent folders
+     * @param port The port to listen on, or 0 for a free port
+     */
+    public GeofabrikStandIn(Path root, int port) {
+        super();
+        this.root = root.toAbsolutePath().normalize();
+        try {
+            server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not start the server on port %d.", port), e);
+        }
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Serving {} on http://{}", root, getServerRoot());
+    }
+
+    /**
+     * @return The host and port of the server, the value for geofabrik.server.root
+     */
+    public String getServerRoot() {
+        return "localhost:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var method = exchange.getRequestMethod();
+            var file = root.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!file.startsWith(root) || !Files.isRegularFile(file)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            long length = Files.size(file);
+            long start = 0;
+            long end = length - 1;
+            int status = 200;
+            var range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                var matcher = RANGE.matcher(range);
+                if (!matcher.matches() || Long.parseLong(matcher.group(1)) >= length) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                start = Long.parseLong(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) {
+                    end = Math.min(end, Long.parseLong(matcher.group(2)));
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", String.format("bytes %d-%d/%d", start, end, length));
+            }
+            var headers = exchange.getResponseHeaders();
+            headers.set("Accept-Ranges", "bytes");
+            headers.set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                Files.getLastModifiedTime(file).toInstant().atZone(ZoneOffset.UTC)));
+            if (method.equals("HEAD")) {
+                headers.set("Content-Length", Long.toString(length));
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            if (length == 0) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, end - start + 1);
+            try (var channel = FileChannel.open(file)) {
+                var out = Channels.newChannel(exchange.getResponseBody());
+                long position = start;
+                while (position <= end) {
+                    position += channel.transferTo(position, end - position + 1, out);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,169 @@
+package nl.osmdata.synthetic;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import jakarta.inject.Inject;
+import nl.osmdata.DumpLoader;
+import nl.osmdata.LoadOptions;
+import nl.osmdata.OsmCountryDownloader;
+import nl.osmdata.geofabrik.Country;
+import nl.osmdata.geofabrik.GeofabrikChangeSet;
+import nl.osmdata.geofabrik.GeofabrikChangeSetRepository;
+import nl.osmdata.geofabrik.GeofabrikService;
+import nl.osmdata.metrics.MetricsSummary;
+import nl.osmdata.snapshot.SnapshotPbfDumpWriter;
+import nl.osmdata.snapshot.SnapshotSchemaHelper;
+
+/**
+ * End to end load test with synthetic data.
+ *
+ * For every scale a synthetic country is generated and served by a {@link GeofabrikStandIn}.
+ * The extract is loaded with the OsmCountryDownloader and then updated with all change sets
+ * by the GeofabrikService. The throughput of both stages is reported per scale, and the
+ * metrics of every scale are written to harness-&lt;scale&gt;x.json.
+ *
+ * The database is given with the usual spring.datasource properties. It needs the hstore
+ * and postgis extensions. The tables of the snapshot schema in it are dropped and recreated,
+ * so use a scratch database.
+ *
+ * The harness is part of the benchmark sources, so it is only built with the jmh profile.
+ * Usage: mvn -Pjmh compile exec:java -Dexec.mainClass=nl.osmdata.synthetic.LoadHarness
+ *     -Dexec.args="--spring.datasource.url=jdbc:postgresql://localhost/osm_test
+ *     --spring.datasource.username=osm --spring.datasource.password=osm [--harness.scales=1,10,100]"
+ *
+ * The class is deliberately not a @Configuration, so the component scan of the updater
+ * application doesn't pick it up.
+ */
+@EnableAutoConfiguration
+@ComponentScan(basePackageClasses = GeofabrikService.class)
+@EnableJpaRepositories(basePackageClasses = GeofabrikChangeSetRepository.class)
+@EntityScan(basePackageClasses = GeofabrikChangeSet.class)
+public class LoadHarness {
+    private static final String CONTINENT = "synthetic";
+
+    private Logger logger = LoggerFactory.getLogger(LoadHarness.class);
+
+    @Value("${harness.scales:1,10,100}")
+    private String scales;
+    @Value("${harness.output:.}")
+    private Path outputFolder;
+    @Value("${geofabrik.server.root}")
+    private String serverRoot;
+    @Value("${spring.datasource.url}")
+    private String datasourceUrl;
+    @Value("${spring.datasource.username}")
+    private String username;
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Inject
+    private GeofabrikService service;
+
+    @Inject
+    private GeofabrikChangeSetRepository changeSetRepository;
+
+    public static void main(String[] args) throws IOException {
+        var root = Files.createTempDirectory("synthetic");
+        try (var standIn = new GeofabrikStandIn(root, 0);
+                var context = new SpringApplicationBuilder(LoadHarness.class)
+                    .web(WebApplicationType.NONE)
+                    .properties(
+                        "geofabrik.server.root=" + standIn.getServerRoot(),
+                        "geofabrik.update.state_file=state.txt",
+                        "temp_folder=" + root.resolve("downloads"),
+                        "spring.jpa.hibernate.ddl-auto=update")
+                    .run(args)) {
+            context.getBean(LoadHarness.class).run(root);
+        }
+    }
+
+    /**
+     * Run the load test at all scales.
+     *
+     * @param root The root folder of the stand-in server
+     */
+    public void run(Path root) {
+        try {
+            Files.createDirectories(outputFolder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not create folder %s.", outputFolder), e);
+        }
+        var results = new ArrayList<String>();
+        for (var value : scales.split(",")) {
+            int scale = Integer.parseInt(value.trim());
+            results.add(run(root, scale));
+        }
+        logger.info("Results:\n{}\n{}", String.format("%6s %10s %10s %10s %12s %12s %10s %12s %12s",
+            "scale", "entities", "pbf MB", "load s", "entities/s", "changes", "update s", "changes/s",
+            "change sets"), String.join("\n", results));
+    }
+
+    @SuppressWarnings("try")
+    private String run(Path root, int scale) {
+        var spec = new SyntheticDataSpec().scaled(scale);
+        var country = new Country(CONTINENT, scale + "x", null);
+        logger.info("Generating the data for scale {}x", scale);
+        long changes = new SyntheticDataGenerator(spec).writeCountry(root, country.getContinent(), country.getCountry());
+        var extract = SyntheticDataGenerator.getExtractPath(root, country.getContinent(), country.getCountry());
+        long entities = spec.getNodes() + spec.getWays() + spec.getRelations();
+        Duration loadTime;
+        Duration updateTime;
+        try (var summary = new MetricsSummary(outputFolder.resolve(String.format("harness-%dx.json", scale)))) {
+            var start = Instant.now();
+            load(String.format("http://%s/%s", serverRoot, root.relativize(extract)));
+            loadTime = Duration.between(start, Instant.now());
+            resetChangeSets(country);
+            start = Instant.now();
+            service.updateDatabase(country, service.fetchCountryState(country));
+            updateTime = Duration.between(start, Instant.now());
+        }
+        return String.format("%5dx %10d %10.1f %10.1f %12.0f %12d %10.1f %12.0f %12d", scale, entities,
+            extract.toFile().length() / 1e6, seconds(loadTime), entities / seconds(loadTime), changes,
+            seconds(updateTime), changes / seconds(updateTime), spec.getChangeSets());
+    }
+
+    private void load(String url) {
+        var options = new LoadOptions();
+        options.setStreaming(true);
+        options.setNativeDecoder(true);
+        var properties = new Properties();
+        properties.setProperty("user", username);
+        properties.setProperty("password", password);
+        var dumpLoader = new DumpLoader(datasourceUrl, properties, new SnapshotSchemaHelper(), options);
+        new OsmCountryDownloader(new SnapshotPbfDumpWriter(options), dumpLoader, options).download(url);
+    }
+
+    /**
+     * Forget the change sets of an earlier run. The first update then starts at the
+     * replication baseline of the extract.
+     */
+    private void resetChangeSets(Country country) {
+        for (var changeSet : changeSetRepository.findAll()) {
+            if (changeSet.getContinent().equals(country.getContinent())
+                    && changeSet.getCountry().equals(country.getCountry())) {
+                changeSetRepository.delete(changeSet);
+            }
+        }
+    }
+
+    private static double seconds(Duration duration) {
+        return Math.max(duration.toMillis(), 1) / 1000.0;
+    }
+}
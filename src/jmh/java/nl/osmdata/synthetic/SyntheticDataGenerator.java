@@ -0,0 +1,304 @@
+package nl.osmdata.synthetic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.RelationContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.xml.common.CompressionMethod;
+import org.openstreetmap.osmosis.xml.v0_6.XmlChangeWriter;
+
+import nl.osmdata.pbf.PbfFileWriter;
+
+/**
+ * Generate a synthetic extract and a sequence of replication change sets for it.
+ *
+ * The files are written in the layout of the Geofabrik download server:
+ * {@code <continent>/<country>-latest.osm.pbf} and
+ * {@code <continent>/<country>-updates/000/000/001.osc.gz} with a state file next to
+ * every change set and a state.txt with the latest sequence number. The extract is the
+ * state of sequence number 0.
+ *
+ * The ways only refer to nodes of the extract and the relations to ways of the extract,
+ * so the data stays consistent while it is updated. The change sets modify nodes, ways
+ * and relations of the extract, create new nodes and delete nodes that were created by
+ * an earlier change set.
+ */
+public class SyntheticDataGenerator {
+    // The time of the extract, the change sets follow at one minute intervals
+    private static final long BASE_TIME = 1704067200000L;
+    private static final long CHANGE_SET_INTERVAL = 60_000L;
+    // The entities of the extract were edited in the year before the extract
+    private static final long EXTRACT_PERIOD = 365L * 24 * 3600 * 1000;
+    private static final int USERS = 1000;
+    private static final DateTimeFormatter STATE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH\\:mm\\:ss'Z'")
+        .withZone(ZoneOffset.UTC);
+
+    private static final String[][] NODE_TAGS = {
+        {"amenity", "bench"}, {"amenity", "waste_basket"}, {"amenity", "bicycle_parking"},
+        {"amenity", "post_box"}, {"shop", "bakery"}, {"shop", "supermarket"}, {"natural", "tree"},
+        {"highway", "street_lamp"}, {"highway", "crossing"}, {"barrier", "bollard"}};
+    private static final String[] HIGHWAYS = {"residential", "service", "footway", "unclassified", "tertiary",
+        "cycleway"};
+
+    private final SyntheticDataSpec spec;
+    private final double[] clusterLongitudes;
+    private final double[] clusterLatitudes;
+
+    public SyntheticDataGenerator(SyntheticDataSpec spec) {
+        super();
+        this.spec = spec;
+        var random = new SplittableRandom(spec.getSeed());
+        clusterLongitudes = new double[spec.getClusters()];
+        clusterLatitudes = new double[spec.getClusters()];
+        for (int i = 0; i < spec.getClusters(); i++) {
+            clusterLongitudes[i] = between(random, spec.getMinLongitude(), spec.getMaxLongitude());
+            clusterLatitudes[i] = between(random, spec.getMinLatitude(), spec.getMaxLatitude());
+        }
+    }
+
+    /**
+     * Write the extract and the change sets of a country.
+     *
+     * @param root The root folder of the server
+     * @return The total number of changes
+     */
+    public long writeCountry(Path root, String continent, String country) {
+        var extract = getExtractPath(root, continent, country);
+        try {
+            Files.createDirectories(extract.getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not create folder %s.", extract.getParent()), e);
+        }
+        writeExtract(extract.toFile());
+        return writeChangeSets(root.resolve(continent).resolve(country + "-updates"));
+    }
+
+    /**
+     * @return The path of the extract of a country, relative to the root of the server
+     */
+    public static Path getExtractPath(Path root, String continent, String country) {
+        return root.resolve(continent).resolve(country + "-latest.osm.pbf");
+    }
+
+    /**
+     * Write the nodes, ways and relations of the extract to a pbf file.
+     */
+    public void writeExtract(File pbfFile) {
+        var random = new SplittableRandom(spec.getSeed());
+        var writer = new PbfFileWriter(pbfFile);
+        writer.setReplicationTimestamp(Instant.ofEpochMilli(BASE_TIME));
+        try {
+            writer.initialize(null);
+            for (long id = 1; id <= spec.getNodes(); id++) {
+                long time = BASE_TIME - random.nextLong(EXTRACT_PERIOD);
+                writer.process(new NodeContainer(createNode(random, id, 1, time)));
+            }
+            for (long id = 1; id <= spec.getWays(); id++) {
+                long time = BASE_TIME - random.nextLong(EXTRACT_PERIOD);
+                writer.process(new WayContainer(createWay(random, id, 1, time)));
+            }
+            for (long id = 1; id <= spec.getRelations(); id++) {
+                long time = BASE_TIME - random.nextLong(EXTRACT_PERIOD);
+                writer.process(new RelationContainer(createRelation(random, id, 1, time)));
+            }
+            writer.complete();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Write the change sets and their state files, and a state.txt for the last change set.
+     *
+     * @param updatesFolder The folder of the country updates, like europe/netherlands-updates
+     * @return The total number of changes
+     */
+    public long writeChangeSets(Path updatesFolder) {
+        long changes = 0;
+        long nextNodeId = spec.getNodes() + 1;
+        var createdNodes = new ArrayList<Long>();
+        for (int sequenceNumber = 1; sequenceNumber <= spec.getChangeSets(); sequenceNumber++) {
+            var random = new SplittableRandom(spec.getSeed() * 31 + sequenceNumber);
+            long time = BASE_TIME + sequenceNumber * CHANGE_SET_INTERVAL;
+            int version = sequenceNumber + 1;
+            var folder = updatesFolder.resolve(String.format("%03d/%03d", sequenceNumber / 1_000_000,
+                sequenceNumber / 1000 % 1000));
+            var changeFile = folder.resolve(String.format("%03d.osc.gz", sequenceNumber % 1000));
+            try {
+                Files.createDirectories(folder);
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Could not create folder %s.", folder), e);
+            }
+            var writer = new XmlChangeWriter(changeFile.toFile(), CompressionMethod.GZip);
+            var changedNodes = new HashSet<Long>();
+            var changedWays = new HashSet<Long>();
+            var changedRelations = new HashSet<Long>();
+            try {
+                writer.initialize(null);
+                for (int i = 0; i < spec.getChangesPerChangeSet(); i++) {
+                    double kind = random.nextDouble();
+                    if (kind < 0.6) {
+                        long id = 1 + random.nextLong(spec.getNodes());
+                        if (changedNodes.add(id)) {
+                            writer.process(new ChangeContainer(new NodeContainer(createNode(random, id, version, time)),
+                                ChangeAction.Modify));
+                        }
+                    } else if (kind < 0.9 || createdNodes.isEmpty()) {
+                        long id = nextNodeId++;
+                        createdNodes.add(id);
+                        changedNodes.add(id);
+                        writer.process(new ChangeContainer(new NodeContainer(createNode(random, id, 1, time)),
+                            ChangeAction.Create));
+                    } else if (kind < 0.95) {
+                        int index = random.nextInt(createdNodes.size());
+                        long id = createdNodes.get(index);
+                        if (changedNodes.add(id)) {
+                            createdNodes.set(index, createdNodes.get(createdNodes.size() - 1));
+                            createdNodes.remove(createdNodes.size() - 1);
+                            writer.process(new ChangeContainer(new NodeContainer(createNode(random, id, version, time)),
+                                ChangeAction.Delete));
+                        }
+                    } else if (kind < 0.98 || spec.getRelations() == 0) {
+                        long id = 1 + random.nextLong(spec.getWays());
+                        if (changedWays.add(id)) {
+                            writer.process(new ChangeContainer(new WayContainer(createWay(random, id, version, time)),
+                                ChangeAction.Modify));
+                        }
+                    } else {
+                        long id = 1 + random.nextLong(spec.getRelations());
+                        if (changedRelations.add(id)) {
+                            writer.process(new ChangeContainer(new RelationContainer(
+                                createRelation(random, id, version, time)), ChangeAction.Modify));
+                        }
+                    }
+                }
+                writer.complete();
+            } finally {
+                writer.close();
+            }
+            changes += changedNodes.size() + changedWays.size() + changedRelations.size();
+            writeState(folder.resolve(String.format("%03d.state.txt", sequenceNumber % 1000)), sequenceNumber, time);
+        }
+        writeState(updatesFolder.resolve("state.txt"), spec.getChangeSets(),
+            BASE_TIME + spec.getChangeSets() * CHANGE_SET_INTERVAL);
+        return changes;
+    }
+
+    private static void writeState(Path stateFile, int sequenceNumber, long time) {
+        var state = String.format("#%s%nsequenceNumber=%d%ntimestamp=%s%n", Instant.ofEpochMilli(time),
+            sequenceNumber, STATE_TIMESTAMP.format(Instant.ofEpochMilli(time)));
+        try {
+            Files.createDirectories(stateFile.getParent());
+            Files.writeString(stateFile, state);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not write state file %s.", stateFile), e);
+        }
+    }
+
+    private Node createNode(SplittableRandom random, long id, int version, long time) {
+        double longitude;
+        double latitude;
+        if (spec.getClusters() > 0) {
+            // The nodes of a cluster have consecutive ids, so the nodes of a way are close together
+            int cluster = id <= spec.getNodes() ? (int) ((id - 1) * spec.getClusters() / spec.getNodes())
+                : random.nextInt(spec.getClusters());
+            longitude = clusterLongitudes[cluster] + random.nextGaussian() * spec.getClusterRadius();
+            latitude = clusterLatitudes[cluster] + random.nextGaussian() * spec.getClusterRadius();
+        } else {
+            longitude = between(random, spec.getMinLongitude(), spec.getMaxLongitude());
+            latitude = between(random, spec.getMinLatitude(), spec.getMaxLatitude());
+        }
+        longitude = Math.min(Math.max(longitude, spec.getMinLongitude()), spec.getMaxLongitude());
+        latitude = Math.min(Math.max(latitude, spec.getMinLatitude()), spec.getMaxLatitude());
+        var tags = new ArrayList<Tag>();
+        int tagCount = count(random, spec.getTagsPerNode());
+        for (int i = 0; i < tagCount; i++) {
+            var tag = NODE_TAGS[random.nextInt(NODE_TAGS.length)];
+            tags.add(new Tag(tag[0], tag[1]));
+        }
+        return new Node(createEntityData(random, id, version, time, tags), latitude, longitude);
+    }
+
+    private Way createWay(SplittableRandom random, long id, int version, long time) {
+        int length = Math.min(2 + random.nextInt(Math.max(1, 2 * spec.getNodesPerWay() - 3)), (int) spec.getNodes());
+        long first = 1 + random.nextLong(spec.getNodes() - length + 1);
+        boolean building = random.nextInt(3) == 0 && length >= 3;
+        var wayNodes = new ArrayList<WayNode>(length + 1);
+        for (int i = 0; i < length; i++) {
+            wayNodes.add(new WayNode(first + i));
+        }
+        List<Tag> tags;
+        if (building) {
+            wayNodes.add(new WayNode(first));
+            tags = List.of(new Tag("building", "yes"));
+        } else {
+            tags = List.of(new Tag("highway", HIGHWAYS[random.nextInt(HIGHWAYS.length)]),
+                new Tag("name", "Street " + id));
+        }
+        return new Way(createEntityData(random, id, version, time, tags), wayNodes);
+    }
+
+    private Relation createRelation(SplittableRandom random, long id, int version, long time) {
+        int size = 1 + random.nextInt(Math.max(1, 2 * spec.getMembersPerRelation() - 1));
+        boolean multipolygon = random.nextBoolean();
+        var members = new ArrayList<RelationMember>(size);
+        for (int i = 0; i < size; i++) {
+            long wayId = 1 + random.nextLong(Math.max(1, spec.getWays()));
+            var role = multipolygon ? (i == 0 ? "outer" : "inner") : "";
+            members.add(new RelationMember(wayId, EntityType.Way, role));
+        }
+        var tags = multipolygon
+            ? List.of(new Tag("type", "multipolygon"), new Tag("landuse", "residential"))
+            : List.of(new Tag("type", "route"), new Tag("route", "bus"), new Tag("ref", Long.toString(id)));
+        return new Relation(createEntityData(random, id, version, time, tags), members);
+    }
+
+    private static CommonEntityData createEntityData(SplittableRandom random, long id, int version, long time,
+            List<Tag> tags) {
+        int userId = 1 + random.nextInt(USERS);
+        // A changeset per 10 seconds
+        long changesetId = 1 + (time - BASE_TIME + EXTRACT_PERIOD) / 10_000;
+        return new CommonEntityData(id, version, new Date(time), new OsmUser(userId, "user" + userId), changesetId,
+            tags);
+    }
+
+    /**
+     * A random count with the given average.
+     */
+    private static int count(SplittableRandom random, double average) {
+        double p = average / (1 + average);
+        int count = 0;
+        while (random.nextDouble() < p) {
+            count++;
+        }
+        return count;
+    }
+
+    private static double between(SplittableRandom random, double min, double max) {
+        return min + random.nextDouble() * (max - min);
+    }
+}
@@ -0,0 +1,81 @@
+package nl.osmdata.synthetic;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The size and shape of a synthetic data set. The defaults give a data set of about
+ * the size of a small country region.
+ */
+@Getter
+@Setter
+public class SyntheticDataSpec {
+    private long nodes = 100_000;
+    private long ways = 12_000;
+    private long relations = 500;
+
+    /**
+     * The average number of nodes of a way. The lengths vary between 2 and twice the average.
+     */
+    private int nodesPerWay = 8;
+
+    /**
+     * The average number of members of a relation.
+     */
+    private int membersPerRelation = 12;
+
+    /**
+     * The average number of tags of a node. Ways and relations have at least one tag.
+     */
+    private double tagsPerNode = 0.3;
+
+    /**
+     * The area of the data, in degrees.
+     */
+    private double minLongitude = 3.3;
+    private double minLatitude = 50.7;
+    private double maxLongitude = 7.2;
+    private double maxLatitude = 53.6;
+
+    /**
+     * The number of clusters the nodes are spread over, like the towns of a country.
+     * With 0 clusters the nodes are spread evenly over the area.
+     */
+    private int clusters = 50;
+
+    /**
+     * The standard deviation of the distance to the center of a cluster, in degrees.
+     */
+    private double clusterRadius = 0.05;
+
+    private int changeSets = 10;
+    private int changesPerChangeSet = 1000;
+
+    /**
+     * The seed of the random generator. The same seed gives the same data.
+     */
+    private long seed = 1;
+
+    /**
+     * @return A copy of this spec with factor times as many entities and changes
+     */
+    public SyntheticDataSpec scaled(int factor) {
+        var spec = new SyntheticDataSpec();
+        spec.nodes = nodes * factor;
+        spec.ways = ways * factor;
+        spec.relations = relations * factor;
+        spec.nodesPerWay = nodesPerWay;
+        spec.membersPerRelation = membersPerRelation;
+        spec.tagsPerNode = tagsPerNode;
+        spec.minLongitude = minLongitude;
+        spec.minLatitude = minLatitude;
+        spec.maxLongitude = maxLongitude;
+        spec.maxLatitude = maxLatitude;
+        spec.clusters = clusters;
+        spec.clusterRadius = clusterRadius;
+        spec.changeSets = changeSets;
+        spec.changesPerChangeSet = changesPerChangeSet * factor;
+        spec.seed = seed;
+        return spec;
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * Synthetic OSM data for load tests: a generator for pbf extracts and replication change
+ * sets, a local stand-in for the Geofabrik download server and a harness that loads and
+ * updates a database at several scales.
+ */
+package nl.osmdata.synthetic;
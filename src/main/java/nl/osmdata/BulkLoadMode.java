@@ -0,0 +1,27 @@
+package nl.osmdata;
+
+/**
+ * How the bulk loaded tables deal with the write-ahead log.
+ */
+public enum BulkLoadMode {
+    /**
+     * Ordinary logged tables. Every row that is copied is also written to the WAL.
+     */
+    LOGGED,
+    /**
+     * The tables are created as UNLOGGED tables and switched to LOGGED after
+     * the primary keys and indexes have been built.
+     */
+    UNLOGGED,
+    /**
+     * The tables are created as UNLOGGED tables and stay that way. Only suitable
+     * when the data can be rebuilt, as the tables are emptied after a server crash
+     * and are not replicated to standby servers.
+     */
+    UNLOGGED_PERMANENT,
+    /**
+     * Every table is truncated and loaded with COPY FREEZE in a single transaction.
+     * The rows are written frozen, and with wal_level=minimal the WAL is skipped.
+     */
+    FREEZE
+}
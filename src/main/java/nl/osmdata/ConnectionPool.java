@@ -0,0 +1,58 @@
+package nl.osmdata;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * A fixed set of connections shared by the worker threads of a bulk operation.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final List<Connection> connections = new ArrayList<>();
+    private final BlockingQueue<Connection> available;
+
+    public ConnectionPool(int size, Supplier<Connection> connectionFactory) {
+        super();
+        this.available = new ArrayBlockingQueue<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                var conn = connectionFactory.get();
+                connections.add(conn);
+                available.add(conn);
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public List<Connection> getConnections() {
+        return connections;
+    }
+
+    /**
+     * Wait for a free connection.
+     */
+    public Connection take() throws InterruptedException {
+        return available.take();
+    }
+
+    public void release(Connection conn) {
+        available.add(conn);
+    }
+
+    @Override
+    public void close() {
+        for (Connection conn : connections) {
+            try {
+                conn.close();
+            } catch (@SuppressWarnings("unused") SQLException e) {
+                // The connection is no longer used
+            }
+        }
+    }
+}
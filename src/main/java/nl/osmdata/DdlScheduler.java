@@ -0,0 +1,91 @@
+package nl.osmdata;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.osmdata.metrics.OsmMetrics;
+
+/**
+ * Execute primary key and index statements over the connections of a pool.
+ *
+ * Adding a primary key takes an exclusive lock on its table, which would block the
+ * other index builds on that table. The primary keys are therefore built as unique
+ * indexes first. These build at the same time as the other indexes, also on the
+ * same table. When all indexes of a table are ready, the unique index is turned into
+ * the primary key, which only takes a moment.
+ */
+public class DdlScheduler {
+    private Logger logger = LoggerFactory.getLogger(DdlScheduler.class);
+
+    private final ConnectionPool pool;
+
+    public DdlScheduler(ConnectionPool pool) {
+        super();
+        this.pool = pool;
+    }
+
+    public void execute(List<DdlStatement> statements) {
+        ExecutorService executor = Executors.newFixedThreadPool(pool.getConnections().size());
+        try {
+            Map<String, List<CompletableFuture<Void>>> indexBuilds = new LinkedHashMap<>();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (DdlStatement statement : statements) {
+                var sql = statement.isPrimaryKey() ? statement.getUniqueIndexSql() : statement.getSql();
+                var future = CompletableFuture.runAsync(() -> execute(statement, sql, "Created index"), executor);
+                indexBuilds.computeIfAbsent(statement.getTable(), table -> new ArrayList<>()).add(future);
+                futures.add(future);
+            }
+            for (DdlStatement statement : statements) {
+                if (statement.isPrimaryKey()) {
+                    var tableBuilds = indexBuilds.get(statement.getTable());
+                    futures.add(CompletableFuture.allOf(tableBuilds.toArray(new CompletableFuture<?>[0]))
+                        .thenRunAsync(() -> execute(statement, statement.getAttachPrimaryKeySql(), "Added primary key"), executor));
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Couldn't create the Postgresql primary keys and indexes", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void execute(DdlStatement statement, String sql, String action) {
+        Connection conn = null;
+        try {
+            conn = pool.take();
+            try (Statement stmt = conn.createStatement()) {
+                Instant start = Instant.now();
+                stmt.execute(sql);
+                var timeElapsed = Duration.between(start, Instant.now());
+                OsmMetrics.indexTime(statement.getTable(), statement.getName()).record(timeElapsed);
+                logger.info("{} '{}' on '{}' in {} ms", action, statement.getName(), statement.getTable(),
+                    timeElapsed.toMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (SQLException e) {
+            throw new CompletionException(new RuntimeException(String.format(
+                "Couldn't create %s", statement.getName()), e));
+        } finally {
+            if (conn != null) {
+                pool.release(conn);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package nl.osmdata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A single primary key or index statement from the DDL of a SchemaHelper.
+ */
+public class DdlStatement {
+    private static final Pattern PRIMARY_KEY = Pattern.compile(
+            "ALTER\\s+TABLE\\s+(?:ONLY\\s+)?(\\w+)\\s+ADD\\s+CONSTRAINT\\s+(\\w+)\\s+PRIMARY\\s+KEY\\s*(\\([^)]*\\))",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern INDEX = Pattern.compile(
+            "CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(\\w+)\\s+ON\\s+(?:ONLY\\s+)?(\\w+)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final String name;
+    private final String table;
+    private final String sql;
+    private final boolean primaryKey;
+    private final String columns;
+
+    public DdlStatement(String name, String table, String sql) {
+        this(name, table, sql, null);
+    }
+
+    public DdlStatement(String name, String table, String sql, String primaryKeyColumns) {
+        super();
+        this.name = name;
+        this.table = table;
+        this.sql = sql;
+        this.primaryKey = primaryKeyColumns != null;
+        this.columns = primaryKeyColumns;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public boolean isPrimaryKey() {
+        return primaryKey;
+    }
+
+    /**
+     * The index that backs a primary key. Unlike adding the primary key itself,
+     * building this index doesn't block the other index builds on the table.
+     */
+    public String getUniqueIndexSql() {
+        return String.format("CREATE UNIQUE INDEX %s ON %s %s", name, table, columns);
+    }
+
+    /**
+     * Turn the index that was created with getUniqueIndexSql into the primary key.
+     */
+    public String getAttachPrimaryKeySql() {
+        return String.format("ALTER TABLE ONLY %s ADD CONSTRAINT %s PRIMARY KEY USING INDEX %s", table, name, name);
+    }
+
+    /**
+     * Split a DDL script with primary key and index definitions in separate statements.
+     * Comment lines are removed.
+     *
+     * @param ddl The DDL script
+     * @return The statements in the order of the script
+     */
+    public static List<DdlStatement> split(String ddl) {
+        var statements = new ArrayList<DdlStatement>();
+        var sql = new StringBuilder();
+        for (String line : ddl.split("\n")) {
+            var trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            sql.append(trimmed);
+            if (trimmed.endsWith(";")) {
+                statements.add(parse(sql.toString()));
+                sql.setLength(0);
+            } else {
+                sql.append(' ');
+            }
+        }
+        if (sql.length() > 0) {
+            statements.add(parse(sql.toString().trim()));
+        }
+        return statements;
+    }
+
+    private static DdlStatement parse(String sql) {
+        Matcher matcher = PRIMARY_KEY.matcher(sql);
+        if (matcher.find()) {
+            return new DdlStatement(matcher.group(2), matcher.group(1), sql, matcher.group(3));
+        }
+        matcher = INDEX.matcher(sql);
+        if (matcher.find()) {
+            return new DdlStatement(matcher.group(1), matcher.group(2), sql);
+        }
+        throw new IllegalArgumentException(String.format("Unsupported DDL statement: %s", sql));
+    }
+}
@@ -1,64 +1,225 @@
 package nl.osmdata;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.Types;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.postgresql.copy.CopyManager;
 import org.postgresql.core.BaseConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.osmdata.copy.CopyFormat;
+import nl.osmdata.copy.CopyStreamTarget;
+import nl.osmdata.copy.FileRegion;
+import nl.osmdata.metrics.OsmMetrics;
+
 /*
  * Write the data for a Postgresql schema to the database
  */
 public class DumpLoader {
+    private static final String SHADOW_SUFFIX = "_load";
+    private static final String OLD_SUFFIX = "_old";
+
     private Logger logger = LoggerFactory.getLogger(DumpLoader.class);
     
     private final String dbUrl;
     private final Properties properties;
     private Connection conn;
     private final SchemaHelper schemaHelper;
+    private final LoadOptions options;
+    // The schema the tables are written to, the shadow schema during a blue/green load
+    private String loadSchema;
+    // The replication state of the extract that is loaded, written at the end of the load
+    private ReplicationBaseline baseline;
     
     public DumpLoader(String dbUrl, Properties properties, SchemaHelper schemaHelper) {
+        this(dbUrl, properties, schemaHelper, new LoadOptions());
+    }
+
+    public DumpLoader(String dbUrl, Properties properties, SchemaHelper schemaHelper, LoadOptions options) {
         super();
         this.dbUrl = dbUrl;
         this.properties = properties;
-        this.schemaHelper=schemaHelper;
+        this.schemaHelper = schemaHelper.project(options.getProjection());
+        this.options = options;
+        if (options.isBlueGreen() && options.getSchema() == null) {
+            throw new IllegalArgumentException("A blue/green load requires a schema.");
+        }
+        this.loadSchema = options.isBlueGreen() ? options.getSchema() + SHADOW_SUFFIX : options.getSchema();
     }
 
     public void load(File sourcePath) {
         conn = createConnection();
+        createLoadSchema();
         createSchema();
         writeTables(sourcePath);
-        createPrimaryKeys();
-        createSimpleIndexes();
-        createGeoIndexes();
+        createKeysAndIndexes();
+        if (options.getBulkLoadMode() == BulkLoadMode.UNLOGGED) {
+            setTablesLogged();
+        }
+        executeFinalDdlTasks();
+        writeReplicationBaseline();
+        if (options.isBlueGreen()) {
+            swapSchema();
+        }
+    }
+
+    /**
+     * Create the tables and copy the dump files, without the keys, indexes and final
+     * tasks. This is the COPY part of {@link #load(File)}.
+     */
+    public void loadTables(File sourcePath) {
+        conn = createConnection();
+        try {
+            createLoadSchema();
+            createSchema();
+            writeTables(sourcePath);
+        } finally {
+            try {
+                conn.close();
+            } catch (@SuppressWarnings("unused") SQLException e) {
+                // The tables are loaded already
+            }
+        }
+    }
+
+    /**
+     * Load the data straight from a pbf file, without intermediate dump files.
+     * 
+     * @param pbfFile The pbf file to load
+     * @param dumpWriter The dump writer that decodes the pbf file into table rows
+     */
+    public void load(File pbfFile, PbfDumpWriter dumpWriter) {
+        conn = createConnection();
+        createLoadSchema();
+        createSchema();
+        streamTables(pbfFile, dumpWriter);
+        createKeysAndIndexes();
+        if (options.getBulkLoadMode() == BulkLoadMode.UNLOGGED) {
+            setTablesLogged();
+        }
         executeFinalDdlTasks();
+        writeReplicationBaseline();
+        if (options.isBlueGreen()) {
+            swapSchema();
+        }
+    }
+
+    /**
+     * Set the replication state of the extract that is loaded next, so the updater knows
+     * where to start. It is written to the loaded schema at the end of the load, before a
+     * blue/green swap, so the live schema always has the baseline of its data.
+     *
+     * @param timestamp The replication timestamp of the extract
+     * @param sequenceNumber The replication sequence number of the extract, or null if unknown
+     * @param pbfSize The size of the extract
+     * @param loadStart The start of the download and load of the extract
+     */
+    public void setReplicationBaseline(Instant timestamp, Long sequenceNumber, long pbfSize, Instant loadStart) {
+        this.baseline = new ReplicationBaseline(timestamp, sequenceNumber, pbfSize, loadStart);
+    }
+
+    private void writeReplicationBaseline() {
+        if (baseline == null) {
+            return;
+        }
+        try {
+            // The updater must never see an empty table between the delete and the insert
+            conn.setAutoCommit(false);
+            try (var delete = conn.createStatement();
+                    var stmt = conn.prepareStatement(
+                        "INSERT INTO replication_baseline (tstamp, sequence_number, pbf_size, load_seconds) VALUES (?, ?, ?, ?)")) {
+                delete.execute("DELETE FROM replication_baseline");
+                stmt.setObject(1, LocalDateTime.ofInstant(baseline.timestamp, ZoneOffset.UTC));
+                if (baseline.sequenceNumber == null) {
+                    stmt.setNull(2, Types.BIGINT);
+                } else {
+                    stmt.setLong(2, baseline.sequenceNumber);
+                }
+                stmt.setLong(3, baseline.pbfSize);
+                stmt.setDouble(4, Duration.between(baseline.loadStart, Instant.now()).toMillis() / 1000.0);
+                stmt.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Couldn't write the replication baseline.", e);
+        }
+        logger.info("Recorded replication timestamp {} and sequence number {} of the extract", baseline.timestamp,
+            baseline.sequenceNumber);
     }
 
     private Connection createConnection() {
         try {
-            return DriverManager.getConnection(dbUrl, properties);
+            var connection = DriverManager.getConnection(dbUrl, properties);
+            if (loadSchema != null) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute(String.format("SET search_path TO %s, public", quote(loadSchema)));
+                }
+            }
+            return connection;
         } catch (SQLException e) {
             throw new RuntimeException(String.format(
                 "Could not create connection to database %s for user %s.", dbUrl, properties.get("user")), e);
         }
     }
     
+    /**
+     * Create the schema the tables are written to. A shadow schema of an earlier,
+     * failed, blue/green load is dropped first.
+     */
+    private void createLoadSchema() {
+        if (loadSchema == null) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            if (options.isBlueGreen()) {
+                stmt.execute(String.format("DROP SCHEMA IF EXISTS %s CASCADE", quote(loadSchema)));
+            }
+            stmt.execute(String.format("CREATE SCHEMA IF NOT EXISTS %s", quote(loadSchema)));
+        } catch (SQLException e) {
+            throw new RuntimeException(String.format("Couldn't create the Postgresql schema %s.", loadSchema), e);
+        }
+    }
+
     private void createSchema() {
         try {
-            String ddl = schemaHelper.getBasicSchemaDdl();
+            String ddl = isUnlogged() ? schemaHelper.getUnloggedSchemaDdl() : schemaHelper.getBasicSchemaDdl();
+            if (loadSchema != null) {
+                // Public is on the search path too, so an unqualified drop could hit a table there
+                ddl = ddl.replace("DROP TABLE IF EXISTS ", "DROP TABLE IF EXISTS " + quote(loadSchema) + ".")
+                    .replace("DROP FUNCTION IF EXISTS ", "DROP FUNCTION IF EXISTS " + quote(loadSchema) + ".");
+            }
             try (Statement stmt = conn.createStatement()) {
                 stmt.execute(ddl);
             }
@@ -67,39 +228,312 @@ public class DumpLoader {
         }
     }
     
+    /**
+     * Replace the schema with the loaded shadow schema. Both renames are done in one
+     * transaction, so readers see either the old or the new tables. The tables are analyzed
+     * first, so the first queries on the new tables have statistics.
+     * The old schema is dropped on a background thread, as soon as the last reader of
+     * its tables is done.
+     */
+    private void swapSchema() {
+        var schema = options.getSchema();
+        var oldSchema = schema + OLD_SUFFIX;
+        try {
+            try (Statement stmt = conn.createStatement()) {
+                Instant start = Instant.now();
+                for (String table : schemaHelper.getTables()) {
+                    stmt.execute(String.format("ANALYZE %s", table));
+                }
+                logger.info("Analyzed the tables in {} s", Duration.between(start, Instant.now()).getSeconds());
+                stmt.execute(String.format("DROP SCHEMA IF EXISTS %s CASCADE", quote(oldSchema)));
+            }
+            conn.setAutoCommit(false);
+            try (var stmt = conn.prepareStatement("SELECT 1 FROM pg_namespace WHERE nspname = ?")) {
+                stmt.setString(1, schema);
+                boolean exists;
+                try (var result = stmt.executeQuery()) {
+                    exists = result.next();
+                }
+                try (Statement rename = conn.createStatement()) {
+                    if (exists) {
+                        rename.execute(String.format("ALTER SCHEMA %s RENAME TO %s", quote(schema), quote(oldSchema)));
+                    }
+                    rename.execute(String.format("ALTER SCHEMA %s RENAME TO %s", quote(loadSchema), quote(schema)));
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            loadSchema = schema;
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(String.format("SET search_path TO %s, public", quote(loadSchema)));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(String.format("Couldn't swap the schema %s with the loaded schema.", schema), e);
+        }
+        logger.info("Swapped the loaded tables into schema {}", schema);
+        var dropThread = new Thread(() -> dropSchema(oldSchema), "drop-" + oldSchema);
+        dropThread.start();
+    }
+
+    private void dropSchema(String schema) {
+        try (var connection = createConnection(); Statement stmt = connection.createStatement()) {
+            Instant start = Instant.now();
+            stmt.execute(String.format("DROP SCHEMA IF EXISTS %s CASCADE", quote(schema)));
+            logger.info("Dropped the old schema {} in {} s", schema, Duration.between(start, Instant.now()).getSeconds());
+        } catch (SQLException | RuntimeException e) {
+            logger.warn("Couldn't drop the old schema {}, it is dropped by the next load: {}", schema, e.getMessage());
+        }
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
     private void writeTables(File sourcePath) {
+        if (options.getLoadThreads() > 1) {
+            writeTablesParallel(sourcePath);
+            return;
+        }
         schemaHelper.getTables().forEach(table -> {
             try {
                 Instant start = Instant.now();
                 long rows = writeTable(sourcePath, table);
-                long timeElapsed = Duration.between(start, Instant.now()).toMillis();
-                logger.info("Loaded table '{}' ({} rows) in {} ms", table, rows, timeElapsed);
+                var timeElapsed = Duration.between(start, Instant.now());
+                long bytes = new File(sourcePath, options.getCopyFormat().getFileName(table)).length();
+                OsmMetrics.recordLoad(table, rows, bytes, timeElapsed);
+                logger.info("Loaded table '{}' ({} rows) in {} ms", table, rows, timeElapsed.toMillis());
             } catch (IOException | SQLException e) {
                 throw new RuntimeException("Couldn't write the Postgresql database tables.", e);
             }
         });
     }
     
+    /**
+     * Load the dump files over a pool of connections. Large files are split in
+     * chunks that are copied at the same time.
+     */
+    private void writeTablesParallel(File sourcePath) {
+        int threads = options.getLoadThreads();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (var pool = new ConnectionPool(threads, this::createConnection)) {
+            var chunks = new ArrayList<TableChunk>();
+            for (String table : schemaHelper.getTables()) {
+                var file = new File(sourcePath, options.getCopyFormat().getFileName(table));
+                // Binary files have no row separators to split on and a frozen
+                // table has to be loaded in a single transaction
+                var regions = options.getCopyFormat() == CopyFormat.TEXT && !isFreeze()
+                        ? FileRegion.split(file, options.getLoadChunkSize())
+                        : List.of(new FileRegion(file, 0, file.length()));
+                var tableLoad = new TableLoad(table, regions.size());
+                regions.forEach(region -> chunks.add(new TableChunk(tableLoad, region)));
+            }
+            // Start with the largest chunks to keep all connections busy until the end
+            chunks.sort(Comparator.comparingLong((TableChunk chunk) -> chunk.region.getLength()).reversed());
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (TableChunk chunk : chunks) {
+                futures.add(CompletableFuture.runAsync(() -> writeChunk(chunk, pool), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't write the Postgresql database tables.", e);
+        } catch (CompletionException e) {
+            throw new RuntimeException("Couldn't write the Postgresql database tables.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void writeChunk(TableChunk chunk, ConnectionPool pool) {
+        Connection connection = null;
+        try {
+            connection = pool.take();
+            chunk.tableLoad.start();
+            String sql = getCopySql(chunk.tableLoad.table);
+            var mgr = new CopyManager((BaseConnection)connection);
+            beginTableLoad(connection, chunk.tableLoad.table);
+            try (var in = chunk.region.openStream()) {
+                chunk.tableLoad.addRows(mgr.copyIn(sql, in));
+                chunk.tableLoad.bytes.addAndGet(chunk.region.getLength());
+            }
+            completeTableLoad(connection);
+            if (chunk.tableLoad.chunkDone()) {
+                var timeElapsed = Duration.between(chunk.tableLoad.start, Instant.now());
+                OsmMetrics.recordLoad(chunk.tableLoad.table, chunk.tableLoad.rows.get(), chunk.tableLoad.bytes.get(),
+                    timeElapsed);
+                logger.info("Loaded table '{}' ({} rows) in {} ms", chunk.tableLoad.table, chunk.tableLoad.rows.get(),
+                    timeElapsed.toMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (IOException | SQLException e) {
+            throw new CompletionException(new RuntimeException(String.format(
+                "Could not create Postgresql table %s from dump file.", chunk.tableLoad.table), e));
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+    }
+
+    private void streamTables(File pbfFile, PbfDumpWriter dumpWriter) {
+        try (var target = new CopyStreamTarget(schemaHelper.getTables(), options.getCopyFormat(),
+                isFreeze(), this::createConnection)) {
+            try {
+                Instant start = Instant.now();
+                dumpWriter.streamDump(pbfFile, target);
+                OsmMetrics.decodeTime().record(Duration.between(start, Instant.now()));
+                target.complete();
+            } catch (IOException | RuntimeException e) {
+                target.abort();
+                throw new RuntimeException("Couldn't stream the Postgresql database tables.", e);
+            }
+            target.getStreams().forEach(stream -> {
+                OsmMetrics.recordLoad(stream.getTableName(), stream.getRows(), stream.getBytes(),
+                    Duration.ofMillis(stream.getTimeElapsed()));
+                logger.info("Loaded table '{}' ({} rows) in {} ms", stream.getTableName(), stream.getRows(), stream.getTimeElapsed());
+            });
+        }
+    }
+    
     private long writeTable(File sourcePath, String tableName) throws FileNotFoundException, IOException, SQLException {
-        File inputDataFile = new File(sourcePath, tableName + ".txt");
-        String sql = String.format("COPY %s FROM stdin", tableName);
+        var format = options.getCopyFormat();
+        File inputDataFile = new File(sourcePath, format.getFileName(tableName));
+        String sql = getCopySql(tableName);
         BaseConnection pgcon = (BaseConnection)conn;
         CopyManager mgr = new CopyManager(pgcon);
-        try (Reader in = new BufferedReader(new FileReader(inputDataFile))) {
-            return mgr.copyIn(sql, in);
-        } catch (SQLException e) {
-            throw new RuntimeException(String.format("Could not create Postgresql table %s from dump file.", tableName), e);
+        beginTableLoad(conn, tableName);
+        long rows;
+        if (format == CopyFormat.BINARY) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(inputDataFile))) {
+                rows = mgr.copyIn(sql, in);
+            } catch (SQLException e) {
+                throw new RuntimeException(String.format("Could not create Postgresql table %s from dump file.", tableName), e);
+            }
+        } else {
+            try (Reader in = new BufferedReader(new FileReader(inputDataFile))) {
+                rows = mgr.copyIn(sql, in);
+            } catch (SQLException e) {
+                throw new RuntimeException(String.format("Could not create Postgresql table %s from dump file.", tableName), e);
+            }
+        }
+        completeTableLoad(conn);
+        return rows;
+    }
+
+    private boolean isUnlogged() {
+        return options.getBulkLoadMode() == BulkLoadMode.UNLOGGED
+                || options.getBulkLoadMode() == BulkLoadMode.UNLOGGED_PERMANENT;
+    }
+
+    private boolean isFreeze() {
+        return options.getBulkLoadMode() == BulkLoadMode.FREEZE;
+    }
+
+    private String getCopySql(String tableName) {
+        var format = options.getCopyFormat();
+        return isFreeze() ? format.getCopyFreezeSql(tableName) : format.getCopySql(tableName);
+    }
+
+    /**
+     * For a frozen load, truncate the table in a new transaction so the following COPY
+     * can use the FREEZE option.
+     */
+    private void beginTableLoad(Connection connection, String tableName) throws SQLException {
+        if (isFreeze()) {
+            connection.setAutoCommit(false);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(String.format("TRUNCATE %s", tableName));
+            }
+        }
+    }
+
+    private void completeTableLoad(Connection connection) throws SQLException {
+        if (isFreeze()) {
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Switch the UNLOGGED tables to LOGGED. This writes the tables and their indexes
+     * to the WAL in one pass.
+     */
+    private void setTablesLogged() {
+        for (String table : schemaHelper.getTables()) {
+            try (Statement stmt = conn.createStatement()) {
+                Instant start = Instant.now();
+                stmt.execute(String.format("ALTER TABLE %s SET LOGGED", table));
+                logger.info("Set table '{}' to logged in {} ms", table, Duration.between(start, Instant.now()).toMillis());
+            } catch (SQLException e) {
+                throw new RuntimeException(String.format("Couldn't set table %s to logged", table), e);
+            }
         }
     }
     
 
+    private void createKeysAndIndexes() {
+        if (options.getIndexThreads() > 1) {
+            buildKeysAndIndexesConcurrently();
+        } else {
+            configureMaintenanceSession(conn);
+            createPrimaryKeys();
+            createSimpleIndexes();
+            createGeoIndexes();
+        }
+    }
+
+    /**
+     * Split the primary key and index DDL in separate statements and build them
+     * at the same time over a pool of connections.
+     */
+    private void buildKeysAndIndexesConcurrently() {
+        var statements = new ArrayList<DdlStatement>();
+        statements.addAll(DdlStatement.split(schemaHelper.getCreatePrimaryKeysDdl()));
+        statements.addAll(DdlStatement.split(schemaHelper.getCreateSimpleIndexesDdl()));
+        statements.addAll(DdlStatement.split(schemaHelper.getCreateGeoIndexesDdl()));
+        Instant start = Instant.now();
+        try (var pool = new ConnectionPool(options.getIndexThreads(), this::createMaintenanceConnection)) {
+            new DdlScheduler(pool).execute(statements);
+        }
+        logger.info("Created primary keys and indexes in {} s", Duration.between(start, Instant.now()).getSeconds());
+    }
+
+    private Connection createMaintenanceConnection() {
+        var connection = createConnection();
+        configureMaintenanceSession(connection);
+        return connection;
+    }
+
+    /**
+     * Apply the memory and parallel worker settings for index builds to a session.
+     */
+    private void configureMaintenanceSession(Connection connection) {
+        try (Statement stmt = connection.createStatement()) {
+            if (options.getMaintenanceWorkMem() != null) {
+                stmt.execute(String.format("SET maintenance_work_mem = '%s'", options.getMaintenanceWorkMem()));
+            }
+            if (options.getMaxParallelMaintenanceWorkers() != null) {
+                stmt.execute(String.format("SET max_parallel_maintenance_workers = %d", options.getMaxParallelMaintenanceWorkers()));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Couldn't configure the Postgresql maintenance settings", e);
+        }
+    }
+
     private void createPrimaryKeys() {
         try {
             String ddl = schemaHelper.getCreatePrimaryKeysDdl();
             try (Statement stmt = conn.createStatement()) {
                 Instant start = Instant.now();
                 stmt.execute(ddl);
-                logger.info("Created primary keys in {} s", Duration.between(start, Instant.now()).getSeconds());
+                var timeElapsed = Duration.between(start, Instant.now());
+                OsmMetrics.indexTime("all", "primary_keys").record(timeElapsed);
+                logger.info("Created primary keys in {} s", timeElapsed.getSeconds());
             }
         } catch (SQLException e) {
             throw new RuntimeException("Couldn't create the Postgresql primary keys", e);
@@ -112,7 +546,9 @@ public class DumpLoader {
             try (Statement stmt = conn.createStatement()) {
                 Instant start = Instant.now();
                 stmt.execute(ddl);
-                logger.info("Created simple indexes in {} s", Duration.between(start, Instant.now()).getSeconds());
+                var timeElapsed = Duration.between(start, Instant.now());
+                OsmMetrics.indexTime("all", "simple_indexes").record(timeElapsed);
+                logger.info("Created simple indexes in {} s", timeElapsed.getSeconds());
             }
         } catch (SQLException e) {
             throw new RuntimeException("Couldn't create the Postgresql simple indexes", e);
@@ -125,7 +561,9 @@ public class DumpLoader {
             try (Statement stmt = conn.createStatement()) {
                 Instant start = Instant.now();
                 stmt.execute(ddl);
-                logger.info("Created geo indexes in {} s", Duration.between(start, Instant.now()).getSeconds());
+                var timeElapsed = Duration.between(start, Instant.now());
+                OsmMetrics.indexTime("all", "geo_indexes").record(timeElapsed);
+                logger.info("Created geo indexes in {} s", timeElapsed.getSeconds());
             }
         } catch (SQLException e) {
             throw new RuntimeException("Couldn't create the Postgresql geo index(es)", e);
@@ -145,4 +583,58 @@ public class DumpLoader {
         }
     }
 
+    /**
+     * Progress of a table that is loaded in one or more chunks.
+     */
+    private static class TableLoad {
+        private final String table;
+        private final AtomicInteger remaining;
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private Instant start;
+
+        TableLoad(String table, int chunks) {
+            this.table = table;
+            this.remaining = new AtomicInteger(chunks);
+        }
+
+        synchronized void start() {
+            if (start == null) {
+                start = Instant.now();
+            }
+        }
+
+        void addRows(long count) {
+            rows.addAndGet(count);
+        }
+
+        boolean chunkDone() {
+            return remaining.decrementAndGet() == 0;
+        }
+    }
+
+    private static class TableChunk {
+        private final TableLoad tableLoad;
+        private final FileRegion region;
+
+        TableChunk(TableLoad tableLoad, FileRegion region) {
+            this.tableLoad = tableLoad;
+            this.region = region;
+        }
+    }
+
+    private static class ReplicationBaseline {
+        private final Instant timestamp;
+        private final Long sequenceNumber;
+        private final long pbfSize;
+        private final Instant loadStart;
+
+        public ReplicationBaseline(Instant timestamp, Long sequenceNumber, long pbfSize, Instant loadStart) {
+            super();
+            this.timestamp = timestamp;
+            this.sequenceNumber = sequenceNumber;
+            this.pbfSize = pbfSize;
+            this.loadStart = loadStart;
+        }
+    }
 }
@@ -0,0 +1,150 @@
+package nl.osmdata;
+
+import java.io.File;
+
+import lombok.Getter;
+import lombok.Setter;
+import nl.osmdata.copy.CopyFormat;
+import nl.osmdata.extract.Area;
+import nl.osmdata.store.NodeStoreType;
+
+/**
+ * Settings that control how an OSM extract is turned into a Postgresql database.
+ * The defaults reproduce the original behaviour: dump files in a temporary
+ * folder, loaded table by table.
+ */
+@Getter
+@Setter
+public class LoadOptions {
+    /**
+     * Feed the decoded rows directly into COPY streams instead of writing
+     * intermediate dump files.
+     */
+    private boolean streaming = false;
+
+    /**
+     * The COPY format of the table data. The binary format saves the server from parsing
+     * timestamps, hstore literals, arrays and geometries.
+     * The TEXT dump files are written by Osmosis, the BINARY ones by the project's own sinks.
+     */
+    private CopyFormat copyFormat = CopyFormat.TEXT;
+
+    /**
+     * How the bulk loaded tables are created and filled with regard to the WAL.
+     */
+    private BulkLoadMode bulkLoadMode = BulkLoadMode.LOGGED;
+
+    /**
+     * The store for the node locations that are needed to build way geometries.
+     * The MAPPED store is used by the project's own sinks, so selecting it also
+     * writes the snapshot dump files with those sinks. The pgsimple schema has no way
+     * geometries and keeps no node locations.
+     */
+    private NodeStoreType nodeStoreType = NodeStoreType.TEMP_FILE;
+
+    /**
+     * Build the bbox and linestring columns of the ways of the snapshot schema from the node
+     * locations, so spatial queries on ways don't have to join the nodes. The schema helper
+     * must be created with way geometries too. The project's own sinks use the MAPPED
+     * store for the node locations, the Osmosis dump writer the nodeStoreType.
+     * Replication must maintain the geometries as well.
+     */
+    private boolean wayGeometries = false;
+
+    /**
+     * The number of concurrent range requests that download the pbf file.
+     */
+    private int downloadConnections = 4;
+
+    /**
+     * Directory of the persistent download cache. Without a cache directory, the pbf
+     * file is downloaded again into the temporary directory on every run.
+     */
+    private File downloadCacheDir;
+
+    /**
+     * The size budget of the download cache in bytes.
+     */
+    private long downloadCacheSize = 20L * 1024 * 1024 * 1024;
+
+    /**
+     * Decode the pbf file with the project's own block decoder, which encodes the
+     * rows straight from the decoded blocks. Selecting it also writes the dump
+     * files with the project's own sinks.
+     */
+    private boolean nativeDecoder = false;
+
+    /**
+     * The number of threads that decode the pbf file.
+     */
+    private int decoderThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The number of connections that load dump files at the same time.
+     * A value of 1 loads the tables one after another over a single connection.
+     */
+    private int loadThreads = 1;
+
+    /**
+     * Dump files larger than this size (in bytes) are split in chunks that are
+     * loaded concurrently. Only used when loadThreads is larger than 1.
+     */
+    private long loadChunkSize = 256L * 1024 * 1024;
+
+    /**
+     * The number of connections that build primary keys and indexes at the same time.
+     * A value of 1 executes the DDL scripts one after another.
+     */
+    private int indexThreads = 1;
+
+    /**
+     * Value for the maintenance_work_mem setting of the index build sessions, e.g. '2GB'.
+     * The server default is used when not set.
+     */
+    private String maintenanceWorkMem;
+
+    /**
+     * Value for the max_parallel_maintenance_workers setting of the index build sessions.
+     * The server default is used when not set.
+     */
+    private Integer maxParallelMaintenanceWorkers;
+
+    /**
+     * Only load the part of the extract in this area, a BoundingBox or a Polygon.
+     * The whole extract is loaded when not set.
+     */
+    private Area extractArea;
+
+    /**
+     * Keep all nodes of the ways in the extract area, also the nodes outside the area.
+     */
+    private boolean completeWays = false;
+
+    /**
+     * The data that is stored: with or without the metadata columns and the users table,
+     * and which tags. A profile other than the full one writes the dump files with the
+     * project's own sinks. Replication must use the same profile.
+     */
+    private ProjectionProfile projection = ProjectionProfile.FULL;
+
+    /**
+     * The schema to load into. The tables are created in the default schema of the
+     * connection when not set.
+     */
+    private String schema;
+
+    /**
+     * Load into a shadow schema and swap it with the schema in a single transaction when
+     * the keys and indexes are complete. Readers of the schema never see missing or
+     * half-loaded tables, and aggressive bulk load modes only affect the shadow schema.
+     * The previous schema is dropped in the background, with the views that depend on
+     * its tables. Requires a schema.
+     */
+    private boolean blueGreen = false;
+
+    /**
+     * JSON file for a summary of the metrics of the run, like the rows/s per table.
+     * No summary is written when not set.
+     */
+    private File metricsSummaryFile;
+}
@@ -1,5 +1,6 @@
 package nl.osmdata;
 
+import java.io.File;
 import java.util.Properties;
 
 import nl.osmdata.pgsimple.SimplePbfDumpWriter;
@@ -13,8 +14,12 @@ public class NLSimpleDownloader {
         var properties = new Properties();
         properties.setProperty("user", "nlgis");
         properties.setProperty("password", "nlgis");
-        DumpLoader dumpLoader = new DumpLoader(dbUrl, properties, new SimpleSchemaHelper());
-        var downloader = new OsmCountryDownloader(new SimplePbfDumpWriter(), dumpLoader);
+        var options = new LoadOptions();
+        options.setStreaming(true);
+        options.setNativeDecoder(true);
+        options.setDownloadCacheDir(new File(System.getProperty("user.home"), ".cache/osmdata"));
+        DumpLoader dumpLoader = new DumpLoader(dbUrl, properties, new SimpleSchemaHelper(), options);
+        var downloader = new OsmCountryDownloader(new SimplePbfDumpWriter(options), dumpLoader, options);
         downloader.download(url);
     }
 }
@@ -1,5 +1,6 @@
 package nl.osmdata;
 
+import java.io.File;
 import java.util.Properties;
 
 import nl.osmdata.snapshot.SnapshotPbfDumpWriter;
@@ -13,8 +14,12 @@ public class NLSnapshotDownloader {
         var properties = new Properties();
         properties.setProperty("user", "nlgis");
         properties.setProperty("password", "nlgis");
-        DumpLoader dumpLoader = new DumpLoader(dbUrl, properties, new SnapshotSchemaHelper());
-        var downloader = new OsmCountryDownloader(new SnapshotPbfDumpWriter(), dumpLoader);
+        var options = new LoadOptions();
+        options.setStreaming(true);
+        options.setNativeDecoder(true);
+        options.setDownloadCacheDir(new File(System.getProperty("user.home"), ".cache/osmdata"));
+        DumpLoader dumpLoader = new DumpLoader(dbUrl, properties, new SnapshotSchemaHelper(), options);
+        var downloader = new OsmCountryDownloader(new SnapshotPbfDumpWriter(options), dumpLoader, options);
         downloader.download(url);
     }
 }
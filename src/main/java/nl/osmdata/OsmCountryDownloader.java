@@ -10,26 +10,99 @@ import java.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import nl.osmdata.extract.ExtractFilter;
+import nl.osmdata.metrics.MetricsSummary;
+import nl.osmdata.metrics.OsmMetrics;
+import nl.osmdata.pbf.ParallelPbfReader;
+
 public class OsmCountryDownloader {
     private Logger logger = LoggerFactory.getLogger(OsmCountryDownloader.class);
     
     private File tempDir;
     private final PbfDumpWriter dumpWriter;
     private final DumpLoader dumpLoader;
+    private final LoadOptions options;
 
 
     public OsmCountryDownloader(PbfDumpWriter dumpWriter, DumpLoader dumpLoader) {
+        this(dumpWriter, dumpLoader, new LoadOptions());
+    }
+
+    public OsmCountryDownloader(PbfDumpWriter dumpWriter, DumpLoader dumpLoader, LoadOptions options) {
         super();
         this.dumpWriter = dumpWriter;
         this.dumpLoader = dumpLoader;
+        this.options = options;
     }
 
+    @SuppressWarnings("try")
     public void download(String url) {
+        if (options.getMetricsSummaryFile() != null) {
+            try (var summary = new MetricsSummary(options.getMetricsSummaryFile().toPath())) {
+                load(url);
+            }
+        } else {
+            load(url);
+        }
+    }
+
+    /**
+     * Load a pbf file that was downloaded already.
+     *
+     * @param pbfFile The pbf file
+     * @param start The start of the download, the load time of the replication baseline
+     *     includes the download
+     */
+    @SuppressWarnings("try")
+    public void load(File pbfFile, Instant start) {
+        if (options.getMetricsSummaryFile() != null) {
+            try (var summary = new MetricsSummary(options.getMetricsSummaryFile().toPath())) {
+                loadDownloaded(pbfFile, start);
+            }
+        } else {
+            loadDownloaded(pbfFile, start);
+        }
+    }
+
+    private void loadDownloaded(File pbfFile, Instant start) {
+        tempDir = createTempDir();
+        loadPbfFile(pbfFile, start);
+    }
+
+    private void load(String url) {
+        var start = Instant.now();
         tempDir = createTempDir();
 //        tempDir = new File("/tmp/osmdata7836210196246711327");
         File pbfFile = downloadPbfFile(url);
-        createPostgresDumpfiles(pbfFile);
-        loadDumpFiles();
+        loadPbfFile(pbfFile, start);
+    }
+
+    private void loadPbfFile(File pbfFile, Instant start) {
+        setReplicationBaseline(pbfFile, start);
+        var loadFile = options.getExtractArea() != null ? filterPbfFile(pbfFile) : pbfFile;
+        if (options.isStreaming()) {
+            streamPbfFile(loadFile);
+        } else {
+            createPostgresDumpfiles(loadFile);
+            loadDumpFiles();
+        }
+    }
+
+    /**
+     * Pass the replication timestamp from the pbf header to the loader, which records it
+     * in the database. The updater uses it to find the first change set that isn't included
+     * in the extract yet, and the size and load time to estimate the cost of a reload.
+     */
+    private void setReplicationBaseline(File pbfFile, Instant start) {
+        var header = ParallelPbfReader.readHeader(pbfFile);
+        if (!header.hasOsmosisReplicationTimestamp()) {
+            logger.warn("The pbf file has no replication timestamp, the updater can't find its first change set");
+            return;
+        }
+        var timestamp = Instant.ofEpochSecond(header.getOsmosisReplicationTimestamp());
+        var sequenceNumber = header.hasOsmosisReplicationSequenceNumber()
+                ? Long.valueOf(header.getOsmosisReplicationSequenceNumber()) : null;
+        dumpLoader.setReplicationBaseline(timestamp, sequenceNumber, pbfFile.length(), start);
     }
 
     // Create a directory for temporary data
@@ -56,7 +129,13 @@ public class OsmCountryDownloader {
         File pbfFile = null;
         try {
             Instant start = Instant.now();
-            var pbfDownloader = new PbfDownloader();
+            var pbfDownloader = new PbfDownloader(options.getDownloadConnections());
+            if (options.getDownloadCacheDir() != null) {
+                var cache = new PbfCache(options.getDownloadCacheDir(), options.getDownloadCacheSize(), pbfDownloader);
+                pbfFile = cache.get(new URL(url));
+                logger.info("Got pbf file from the download cache in {}s", Duration.between(start, Instant.now()).getSeconds());
+                return pbfFile;
+            }
             pbfFile = File.createTempFile("osmdata", ".pbf", tempDir); 
             pbfDownloader.download(new URL(url), pbfFile);
             logger.info("Downloaded pbf file in {}s", Duration.between(start, Instant.now()).getSeconds());
@@ -66,14 +145,30 @@ public class OsmCountryDownloader {
         }
      }
 
-    
+
+    /**
+     * Write the part of the pbf file in the extract area to a smaller pbf file, which is
+     * loaded instead.
+     */
+    private File filterPbfFile(File pbfFile) {
+        Instant start = Instant.now();
+        var filteredFile = new File(tempDir, "extract.osm.pbf");
+        ExtractFilter.filter(pbfFile, filteredFile, options.getExtractArea(), options.isCompleteWays(),
+            options.getDecoderThreads());
+        logger.info("Filtered the pbf file from {} to {} MB in {}s", pbfFile.length() >> 20, filteredFile.length() >> 20,
+            Duration.between(start, Instant.now()).getSeconds());
+        return filteredFile;
+    }
+
     /**
      * Create a set of txt file that can be read by the Postgresql database server
      */
     private void createPostgresDumpfiles(File pbfFile) {
         Instant start = Instant.now();
         dumpWriter.writeDump(pbfFile, tempDir);
-        logger.info("Created postgres dump file in {}s", Duration.between(start, Instant.now()).getSeconds());
+        var timeElapsed = Duration.between(start, Instant.now());
+        OsmMetrics.decodeTime().record(timeElapsed);
+        logger.info("Created postgres dump file in {}s", timeElapsed.getSeconds());
     }
 
     private void loadDumpFiles() {
@@ -81,4 +176,13 @@ public class OsmCountryDownloader {
         dumpLoader.load(tempDir);
         logger.info("Loaded dump files to server in {}s", Duration.between(start, Instant.now()).getSeconds());
     }
+
+    /**
+     * Decode the pbf file and stream the rows directly to the server
+     */
+    private void streamPbfFile(File pbfFile) {
+        Instant start = Instant.now();
+        dumpLoader.load(pbfFile, dumpWriter);
+        logger.info("Streamed pbf file to server in {}s", Duration.between(start, Instant.now()).getSeconds());
+    }
 }
@@ -1,14 +1,20 @@
 package nl.osmdata;
 
+import java.nio.file.Path;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 
 import jakarta.inject.Inject;
-import nl.osmdata.geofabrik.GeofabrikService;
+import nl.osmdata.geofabrik.ReplicationDaemon;
+import nl.osmdata.geofabrik.UpdateOrchestrator;
+import nl.osmdata.metrics.MetricsSummary;
+import nl.osmdata.metrics.PrometheusEndpoint;
 
 @SpringBootApplication
 @EnableJpaRepositories
@@ -18,7 +24,21 @@ public class OsmDatabaseUpdater implements CommandLineRunner {
             .getLogger(OsmDatabaseUpdater.class);
 
     @Inject
-    private GeofabrikService service;
+    private UpdateOrchestrator orchestrator;
+
+    @Inject
+    private ReplicationDaemon daemon;
+
+    @Value("${geofabrik.daemon.enabled:false}")
+    private boolean daemonMode;
+
+    // Port of the Prometheus endpoint in daemon mode
+    @Value("${metrics.prometheus_port:9464}")
+    private int prometheusPort;
+
+    // JSON file for the metrics of a single update, not written when empty
+    @Value("${metrics.summary_file:}")
+    private String summaryFile;
 
     @SuppressWarnings("resource")
     public static void main(String[] args) {
@@ -33,9 +53,20 @@ public class OsmDatabaseUpdater implements CommandLineRunner {
     }
 
     @Override
+    @SuppressWarnings("try")
     public void run(String ... args) {
         LOG.info("EXECUTING : OSM database updater");
-        service.updateDatabase();
+        if (daemonMode) {
+            try (var endpoint = new PrometheusEndpoint(prometheusPort)) {
+                daemon.run();
+            }
+        } else if (!summaryFile.isBlank()) {
+            try (var summary = new MetricsSummary(Path.of(summaryFile))) {
+                orchestrator.updateAll();
+            }
+        } else {
+            orchestrator.updateAll();
+        }
     }
 
 }
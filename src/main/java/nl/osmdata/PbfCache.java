@@ -0,0 +1,226 @@
+package nl.osmdata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache for downloaded pbf files, keyed by URL.
+ *
+ * Every entry keeps the ETag, the Last-Modified date and the MD5 checksum of the
+ * file. Before a cached file is reused, a conditional request checks that it didn't
+ * change on the server. When the server can't be reached, the cached file is used
+ * as is. The least recently used entries are removed when the cache grows beyond
+ * its size budget.
+ */
+public class PbfCache {
+    private Logger logger = LoggerFactory.getLogger(PbfCache.class);
+
+    private final File cacheDir;
+    private final long maxSize;
+    private final PbfDownloader downloader;
+    private final HttpClient httpClient;
+    private final Set<String> inUse = new HashSet<>();
+
+    /**
+     * @param cacheDir The directory for the cached files
+     * @param maxSize The size budget of the cache in bytes
+     * @param downloader The downloader for new or changed files
+     */
+    public PbfCache(File cacheDir, long maxSize, PbfDownloader downloader) {
+        super();
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+        this.downloader = downloader;
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    }
+
+    /**
+     * Get the file for a URL, downloading it when it isn't cached or changed on the server.
+     *
+     * @param url The network location of the file
+     * @return The cached file. It remains valid until the next call for another URL
+     *     causes it to be evicted.
+     * @throws IOException
+     */
+    public File get(URL url) throws IOException {
+        Files.createDirectories(cacheDir.toPath());
+        var key = getKey(url);
+        var file = new File(cacheDir, key + ".pbf");
+        var metadataFile = new File(cacheDir, key + ".properties");
+        synchronized (inUse) {
+            inUse.add(key);
+        }
+        try {
+            var metadata = loadMetadata(metadataFile);
+            if (metadata != null && isValid(file, metadata) && isUnchanged(url, metadata)) {
+                logger.info("Using cached copy of {}", url);
+                saveMetadata(metadataFile, metadata);
+                return file;
+            }
+            var head = httpClient.send(HttpRequest.newBuilder(url.toURI())
+                .method("HEAD", HttpRequest.BodyPublishers.noBody()).build(), BodyHandlers.discarding());
+            var entry = new Properties();
+            entry.setProperty("url", url.toString());
+            head.headers().firstValue("ETag").ifPresent(etag -> entry.setProperty("etag", etag));
+            head.headers().firstValue("Last-Modified").ifPresent(date -> entry.setProperty("lastModified", date));
+            Files.deleteIfExists(metadataFile.toPath());
+            var checksum = downloader.download(url, file);
+            entry.setProperty("md5", checksum);
+            entry.setProperty("size", Long.toString(file.length()));
+            saveMetadata(metadataFile, entry);
+            evict();
+            return file;
+        } catch (URISyntaxException e) {
+            throw new IOException(String.format("Invalid url %s.", url), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("The request for %s was interrupted.", url));
+        } finally {
+            synchronized (inUse) {
+                inUse.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Check the cached file against the size and checksum that were recorded for it.
+     */
+    private boolean isValid(File file, Properties metadata) throws IOException {
+        if (!file.exists() || file.length() != Long.parseLong(metadata.getProperty("size", "-1"))) {
+            return false;
+        }
+        if (!PbfDownloader.md5(file).equalsIgnoreCase(metadata.getProperty("md5", ""))) {
+            logger.warn("The cached copy of {} is corrupt", metadata.getProperty("url"));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ask the server whether the file changed since it was cached.
+     */
+    private boolean isUnchanged(URL url, Properties metadata) throws InterruptedException {
+        var etag = metadata.getProperty("etag");
+        var lastModified = metadata.getProperty("lastModified");
+        if (etag == null && lastModified == null) {
+            return false;
+        }
+        try {
+            var request = HttpRequest.newBuilder(url.toURI()).method("HEAD", HttpRequest.BodyPublishers.noBody());
+            if (etag != null) {
+                request.header("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                request.header("If-Modified-Since", lastModified);
+            }
+            var response = httpClient.send(request.build(), BodyHandlers.discarding());
+            if (response.statusCode() == 304) {
+                return true;
+            }
+            // Not every server answers conditional HEAD requests, so compare the validators as well
+            return response.statusCode() == 200
+                && (etag == null || etag.equals(response.headers().firstValue("ETag").orElse(null)))
+                && (lastModified == null || lastModified.equals(response.headers().firstValue("Last-Modified").orElse(null)));
+        } catch (IOException | URISyntaxException e) {
+            logger.warn("Could not check {} for changes, using the cached copy: {}", url, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Remove the least recently used entries until the cache fits in its size budget.
+     */
+    private void evict() throws IOException {
+        synchronized (inUse) {
+            var entries = new ArrayList<File>();
+            long totalSize = 0;
+            for (var metadataFile : listMetadataFiles()) {
+                var metadata = loadMetadata(metadataFile);
+                if (metadata != null) {
+                    entries.add(metadataFile);
+                    totalSize += Long.parseLong(metadata.getProperty("size", "0"));
+                }
+            }
+            entries.sort(Comparator.comparingLong(File::lastModified));
+            for (var metadataFile : entries) {
+                if (totalSize <= maxSize) {
+                    break;
+                }
+                var key = metadataFile.getName().replace(".properties", "");
+                if (inUse.contains(key)) {
+                    continue;
+                }
+                var file = new File(cacheDir, key + ".pbf");
+                totalSize -= file.length();
+                Files.deleteIfExists(metadataFile.toPath());
+                Files.deleteIfExists(file.toPath());
+                logger.info("Evicted {} from the download cache", file);
+            }
+        }
+    }
+
+    private List<File> listMetadataFiles() {
+        var files = cacheDir.listFiles((dir, name) -> name.endsWith(".properties") && !name.endsWith(".part.properties"));
+        return files == null ? List.of() : List.of(files);
+    }
+
+    private static Properties loadMetadata(File metadataFile) {
+        if (!metadataFile.exists()) {
+            return null;
+        }
+        var metadata = new Properties();
+        try (var in = new FileInputStream(metadataFile)) {
+            metadata.load(in);
+            return metadata;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Save the metadata of an entry. This also marks the entry as recently used.
+     */
+    private static void saveMetadata(File metadataFile, Properties metadata) throws IOException {
+        var tempFile = new File(metadataFile.getPath() + ".tmp");
+        try (var out = new FileOutputStream(tempFile)) {
+            metadata.store(out, "Cached download");
+        }
+        Files.move(tempFile.toPath(), metadataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String getKey(URL url) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(url.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,26 +1,341 @@
 package nl.osmdata;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Counter;
+import nl.osmdata.metrics.OsmMetrics;
+
+/**
+ * Download a pbf file over concurrent HTTP range requests.
+ *
+ * The chunks are written to a preallocated ".part" file next to the output file. A
+ * ".part.properties" sidecar keeps track of the completed chunks, so an interrupted
+ * download continues where it stopped. Servers that don't support range requests are
+ * read over a single connection. If the server publishes a ".md5" file next to the
+ * download, as Geofabrik does, the result is verified against it.
+ */
 public class PbfDownloader {
-    
-    @SuppressWarnings("static-method")
-    public void download(URL url, File outputFile) throws IOException {
-        HttpURLConnection con = (HttpURLConnection) url.openConnection();
-        con.setRequestMethod("GET");
-        con.setConnectTimeout(5000);
-        
-        try (
-                BufferedInputStream in = new BufferedInputStream(con.getInputStream());
-            BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile));
-        ){
-            in.transferTo(out);
+    private Logger logger = LoggerFactory.getLogger(PbfDownloader.class);
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int connections;
+    private final long chunkSize;
+    private final HttpClient httpClient;
+    private final Counter downloadedBytes = OsmMetrics.downloadBytes("pbf");
+
+    public PbfDownloader() {
+        this(4);
+    }
+
+    public PbfDownloader(int connections) {
+        this(connections, 32L * 1024 * 1024);
+    }
+
+    /**
+     * @param connections The number of concurrent range requests
+     * @param chunkSize The size of the range requests in bytes
+     */
+    public PbfDownloader(int connections, long chunkSize) {
+        super();
+        this.connections = connections;
+        this.chunkSize = chunkSize;
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    }
+
+    /**
+     * Download a file.
+     *
+     * @param url The network location of the file
+     * @param outputFile The file to write to. It only appears when the download is complete.
+     * @return The MD5 checksum of the downloaded file as a hex string
+     * @throws IOException
+     */
+    public String download(URL url, File outputFile) throws IOException {
+        var start = Instant.now();
+        var uri = toUri(url);
+        var partFile = new File(outputFile.getPath() + ".part");
+        var sidecarFile = new File(outputFile.getPath() + ".part.properties");
+        var head = send(HttpRequest.newBuilder(uri).method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+            BodyHandlers.discarding());
+        var headers = head.headers();
+        long length = headers.firstValueAsLong("Content-Length").orElse(-1);
+        boolean acceptsRanges = headers.firstValue("Accept-Ranges").map(value -> value.contains("bytes")).orElse(false);
+        if (head.statusCode() == 200 && length > 0 && acceptsRanges) {
+            var validator = headers.firstValue("ETag").or(() -> headers.firstValue("Last-Modified")).orElse("");
+            downloadRanges(uri, partFile, sidecarFile, length, validator);
+        } else {
+            downloadSingle(uri, partFile);
+        }
+        var checksum = md5(partFile);
+        try {
+            verifyChecksum(uri, checksum);
+        } catch (IOException e) {
+            Files.deleteIfExists(partFile.toPath());
+            Files.deleteIfExists(sidecarFile.toPath());
+            throw e;
+        }
+        Files.move(partFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(sidecarFile.toPath());
+        OsmMetrics.downloadTime("pbf").record(Duration.between(start, Instant.now()));
+        return checksum;
+    }
+
+    private void downloadRanges(URI uri, File partFile, File sidecarFile, long length, String validator) throws IOException {
+        var progress = Progress.load(sidecarFile, length, validator, chunkSize);
+        if (!partFile.exists() || partFile.length() != length) {
+            progress.reset();
+            try (var raf = new RandomAccessFile(partFile, "rw")) {
+                raf.setLength(length);
+            }
+        }
+        int chunks = (int) ((length + chunkSize - 1) / chunkSize);
+        int remaining = chunks - progress.getCompleted();
+        if (remaining < chunks) {
+            logger.info("Resuming download of {} with {} of {} chunks left", uri, remaining, chunks);
+        }
+        var executor = Executors.newFixedThreadPool(connections);
+        try (var channel = FileChannel.open(partFile.toPath(), StandardOpenOption.WRITE)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                if (progress.isDone(chunk)) {
+                    continue;
+                }
+                long start = chunk * chunkSize;
+                long end = Math.min(length, start + chunkSize) - 1;
+                int index = chunk;
+                futures.add(executor.submit(() -> {
+                    downloadRange(uri, channel, start, end, validator);
+                    channel.force(false);
+                    progress.markDone(index);
+                    return null;
+                }));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(String.format("Could not download %s.", uri), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("The download of %s was interrupted.", uri));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void downloadRange(URI uri, FileChannel channel, long start, long end, String validator) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                var request = HttpRequest.newBuilder(uri).header("Range", String.format("bytes=%d-%d", start, end));
+                if (!validator.isEmpty()) {
+                    request.header("If-Range", validator);
+                }
+                var response = send(request.build(), BodyHandlers.ofInputStream());
+                try (var in = response.body()) {
+                    if (response.statusCode() == 200) {
+                        // The If-Range validator didn't match
+                        throw new IOException(String.format("The file %s changed on the server during the download.", uri));
+                    }
+                    if (response.statusCode() != 206) {
+                        throw new IOException(String.format("Unexpected status %d for range %d-%d of %s.",
+                            response.statusCode(), start, end, uri));
+                    }
+                    long position = writeAt(in, channel, start);
+                    if (position != end + 1) {
+                        throw new IOException(String.format("Incomplete range %d-%d of %s.", start, end, uri));
+                    }
+                }
+                return;
+            } catch (IOException e) {
+                if (attempt == MAX_ATTEMPTS || e instanceof InterruptedIOException) {
+                    throw e;
+                }
+                logger.warn("Retrying range {}-{} of {}: {}", start, end, uri, e.getMessage());
+            }
+        }
+    }
+
+    private void downloadSingle(URI uri, File partFile) throws IOException {
+        var response = send(HttpRequest.newBuilder(uri).GET().build(), BodyHandlers.ofInputStream());
+        try (var in = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException(String.format("Unexpected status %d for %s.", response.statusCode(), uri));
+            }
+            try (var out = new FileOutputStream(partFile)) {
+                downloadedBytes.increment(in.transferTo(out));
+            }
+        }
+    }
+
+    private void verifyChecksum(URI uri, String checksum) throws IOException {
+        var md5Uri = URI.create(uri.toString() + ".md5");
+        var response = send(HttpRequest.newBuilder(md5Uri).GET().build(), BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            logger.info("No checksum published for {}", uri);
+            return;
+        }
+        // The file contains the checksum, followed by the file name
+        var expected = response.body().trim().split("\\s+")[0];
+        if (!expected.equalsIgnoreCase(checksum)) {
+            throw new IOException(String.format("Checksum mismatch for %s: expected %s, got %s.", uri, expected, checksum));
+        }
+        logger.info("Verified the checksum of {}", uri);
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        try {
+            return httpClient.send(request, bodyHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("The request for %s was interrupted.", request.uri()));
+        }
+    }
+
+    private long writeAt(InputStream in, FileChannel channel, long start) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long position = start;
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            var byteBuffer = ByteBuffer.wrap(buffer, 0, n);
+            while (byteBuffer.hasRemaining()) {
+                position += channel.write(byteBuffer, position);
+            }
+            downloadedBytes.increment(n);
+        }
+        return position;
+    }
+
+    static String md5(File file) throws IOException {
+        try (var in = new FileInputStream(file)) {
+            var digest = MessageDigest.getInstance("MD5");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static URI toUri(URL url) throws IOException {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException(String.format("Invalid url %s.", url), e);
+        }
+    }
+
+    /**
+     * The completed chunks of a download, saved in the sidecar file after every chunk.
+     * The progress is only reused if the size and the ETag (or Last-Modified date)
+     * of the file on the server didn't change.
+     */
+    private static class Progress {
+        private final File sidecarFile;
+        private final Properties properties = new Properties();
+        private final BitSet done = new BitSet();
+
+        private Progress(File sidecarFile, long length, String validator, long chunkSize) {
+            super();
+            this.sidecarFile = sidecarFile;
+            properties.setProperty("length", Long.toString(length));
+            properties.setProperty("validator", validator);
+            properties.setProperty("chunkSize", Long.toString(chunkSize));
+        }
+
+        public static Progress load(File sidecarFile, long length, String validator, long chunkSize) {
+            var progress = new Progress(sidecarFile, length, validator, chunkSize);
+            if (!sidecarFile.exists() || validator.isEmpty()) {
+                return progress;
+            }
+            var saved = new Properties();
+            try (var in = new FileInputStream(sidecarFile)) {
+                saved.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                return progress;
+            }
+            for (var key : List.of("length", "validator", "chunkSize")) {
+                if (!progress.properties.getProperty(key).equals(saved.getProperty(key))) {
+                    return progress;
+                }
+            }
+            var chunks = saved.getProperty("done", "");
+            try {
+                for (var chunk : chunks.split(",")) {
+                    if (!chunk.isEmpty()) {
+                        progress.done.set(Integer.parseInt(chunk));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                progress.done.clear();
+            }
+            return progress;
+        }
+
+        public synchronized boolean isDone(int chunk) {
+            return done.get(chunk);
+        }
+
+        public synchronized int getCompleted() {
+            return done.cardinality();
+        }
+
+        public synchronized void reset() {
+            done.clear();
+        }
+
+        public synchronized void markDone(int chunk) throws IOException {
+            done.set(chunk);
+            properties.setProperty("done", done.stream().mapToObj(Integer::toString).collect(Collectors.joining(",")));
+            var tempFile = new File(sidecarFile.getPath() + ".tmp");
+            try (var out = new FileOutputStream(tempFile)) {
+                properties.store(out, "Download progress");
+            }
+            Files.move(tempFile.toPath(), sidecarFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
     }
 }
@@ -2,8 +2,16 @@ package nl.osmdata;
 
 import java.io.File;
 
+import nl.osmdata.copy.CopyTarget;
+
 public interface PbfDumpWriter {
 
     public void writeDump(File inputFile, File outputFolder);
 
+    /**
+     * Decode the input file and write the table rows to the copy target,
+     * without creating intermediate dump files.
+     */
+    public void streamDump(File inputFile, CopyTarget target);
+
 }
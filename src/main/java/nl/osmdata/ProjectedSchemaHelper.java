@@ -0,0 +1,50 @@
+package nl.osmdata;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Schema without the metadata columns and the users table.
+ */
+public class ProjectedSchemaHelper implements SchemaHelper {
+    private final SchemaHelper schemaHelper;
+    private final ProjectionProfile profile;
+
+    public ProjectedSchemaHelper(SchemaHelper schemaHelper, ProjectionProfile profile) {
+        super();
+        this.schemaHelper = schemaHelper;
+        this.profile = profile;
+    }
+
+    @Override
+    public List<String> getTables() {
+        return schemaHelper.getTables().stream()
+            .filter(table -> !table.equals("users"))
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public String getBasicSchemaDdl() {
+        return profile.projectDdl(schemaHelper.getBasicSchemaDdl());
+    }
+
+    @Override
+    public String getCreatePrimaryKeysDdl() {
+        return profile.projectDdl(schemaHelper.getCreatePrimaryKeysDdl());
+    }
+
+    @Override
+    public String getCreateSimpleIndexesDdl() {
+        return profile.projectDdl(schemaHelper.getCreateSimpleIndexesDdl());
+    }
+
+    @Override
+    public String getCreateGeoIndexesDdl() {
+        return profile.projectDdl(schemaHelper.getCreateGeoIndexesDdl());
+    }
+
+    @Override
+    public String getCreateFinalTasksDdl() {
+        return profile.projectDdl(schemaHelper.getCreateFinalTasksDdl());
+    }
+}
@@ -0,0 +1,154 @@
+package nl.osmdata;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+
+import lombok.Getter;
+import nl.osmdata.pbf.PbfBlock;
+
+/**
+ * The part of the OSM data that is stored in the database.
+ *
+ * Without metadata, the version, user_id and changeset_id columns and the users table are
+ * left out of the schema. The tags can be limited to a list of allowed keys, and keys can
+ * be denied. A key that ends with * matches all keys that start with the part before it,
+ * like name:*. The same profile must be used for the load and for the replication.
+ */
+@Getter
+public class ProjectionProfile {
+    public static final ProjectionProfile FULL = new ProjectionProfile(true, List.of(), List.of());
+
+    private static final Pattern METADATA_COLUMN = Pattern.compile(
+        "(?m)^\\s*(version int|user_id int|changeset_id bigint) NOT NULL,?\\n");
+    private static final Pattern USERS_TABLE = Pattern.compile(
+        "(?s)(-- Create a table for users\\.\\n)?CREATE TABLE users \\(.*?\\);\\n");
+    private static final Pattern USERS_KEY = Pattern.compile("(?m)^ALTER TABLE ONLY users .*\\n");
+    private static final Pattern TRAILING_COMMA = Pattern.compile(",(\\s*\\n\\);)");
+
+    private final boolean metadata;
+    private final Set<String> allowedKeys = new HashSet<>();
+    private final List<String> allowedPrefixes = new ArrayList<>();
+    private final Set<String> deniedKeys = new HashSet<>();
+    private final List<String> deniedPrefixes = new ArrayList<>();
+
+    /**
+     * @param metadata Store the version, user and changeset of the entities
+     * @param allowedKeys The tag keys to store, all keys when empty
+     * @param deniedKeys The tag keys that are never stored
+     */
+    public ProjectionProfile(boolean metadata, Collection<String> allowedKeys, Collection<String> deniedKeys) {
+        super();
+        this.metadata = metadata;
+        addKeys(allowedKeys, this.allowedKeys, this.allowedPrefixes);
+        addKeys(deniedKeys, this.deniedKeys, this.deniedPrefixes);
+    }
+
+    /**
+     * Create a profile from comma separated key lists.
+     */
+    public static ProjectionProfile parse(boolean metadata, String allowedKeys, String deniedKeys) {
+        return new ProjectionProfile(metadata, split(allowedKeys), split(deniedKeys));
+    }
+
+    /**
+     * @return true if all data is stored
+     */
+    public boolean isFull() {
+        return metadata && allowedKeys.isEmpty() && allowedPrefixes.isEmpty() && deniedKeys.isEmpty()
+                && deniedPrefixes.isEmpty();
+    }
+
+    public boolean keepTag(String key) {
+        if (deniedKeys.contains(key) || matches(deniedPrefixes, key)) {
+            return false;
+        }
+        if (allowedKeys.isEmpty() && allowedPrefixes.isEmpty()) {
+            return true;
+        }
+        return allowedKeys.contains(key) || matches(allowedPrefixes, key);
+    }
+
+    /**
+     * @return The tags that are stored. This is the collection itself if all tags are kept.
+     */
+    public Collection<Tag> filterTags(Collection<Tag> tags) {
+        if (tags.stream().allMatch(tag -> keepTag(tag.getKey()))) {
+            return tags;
+        }
+        var result = new ArrayList<Tag>(tags.size());
+        for (var tag : tags) {
+            if (keepTag(tag.getKey())) {
+                result.add(tag);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Remove the tags that are not stored from a decoded block.
+     */
+    public void filterTags(PbfBlock block) {
+        var strings = block.getStrings();
+        // Whether a string, as a key, is kept: 0 not known yet, 1 kept, 2 dropped
+        var kept = new byte[strings.length];
+        for (var entities : new PbfBlock.Entities[] {block.getNodes(), block.getWays(), block.getRelations()}) {
+            entities.retainTags(key -> {
+                if (kept[key] == 0) {
+                    kept[key] = keepTag(strings[key]) ? (byte) 1 : (byte) 2;
+                }
+                return kept[key] == 1;
+            });
+        }
+    }
+
+    /**
+     * Leave the metadata columns and the users table out of a schema DDL script, if the
+     * profile has no metadata.
+     */
+    public String projectDdl(String ddl) {
+        if (metadata) {
+            return ddl;
+        }
+        ddl = METADATA_COLUMN.matcher(ddl).replaceAll("");
+        ddl = USERS_TABLE.matcher(ddl).replaceAll("");
+        ddl = USERS_KEY.matcher(ddl).replaceAll("");
+        return TRAILING_COMMA.matcher(ddl).replaceAll("$1");
+    }
+
+    private static boolean matches(List<String> prefixes, String key) {
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addKeys(Collection<String> keys, Set<String> exactKeys, List<String> prefixes) {
+        for (String key : keys) {
+            if (key.endsWith("*")) {
+                prefixes.add(key.substring(0, key.length() - 1));
+            } else {
+                exactKeys.add(key);
+            }
+        }
+    }
+
+    private static List<String> split(String keys) {
+        var result = new ArrayList<String>();
+        if (keys != null) {
+            for (String key : keys.split(",")) {
+                if (!key.isBlank()) {
+                    result.add(key.trim());
+                }
+            }
+        }
+        return result;
+    }
+}
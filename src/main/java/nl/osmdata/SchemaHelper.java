@@ -16,4 +16,23 @@ public interface SchemaHelper {
 
     public String getCreateFinalTasksDdl();
 
+    /**
+     * The basic schema DDL with the bulk loaded tables from getTables() created
+     * as UNLOGGED tables.
+     */
+    public default String getUnloggedSchemaDdl() {
+        String ddl = getBasicSchemaDdl();
+        for (String table : getTables()) {
+            ddl = ddl.replace("CREATE TABLE " + table + " (", "CREATE UNLOGGED TABLE " + table + " (");
+        }
+        return ddl;
+    }
+
+    /**
+     * The schema with only the data of a projection profile.
+     */
+    public default SchemaHelper project(ProjectionProfile profile) {
+        return profile.isMetadata() ? this : new ProjectedSchemaHelper(this, profile);
+    }
+
 }
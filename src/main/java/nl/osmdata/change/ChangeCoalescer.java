@@ -0,0 +1,133 @@
+package nl.osmdata.change;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Change sink that merges the changes of several consecutive change files into one net change.
+ *
+ * Only the last version of every entity is kept. The net action follows from the first and
+ * the last action on the entity:
+ * <ul>
+ * <li>create ... delete: the entity never reached the database, so it is dropped</li>
+ * <li>create ... create/modify: create with the last version</li>
+ * <li>modify/delete ... delete: delete</li>
+ * <li>modify/delete ... create/modify: modify with the last version</li>
+ * </ul>
+ * The change files must be fed in sequence order. The sink can be fed by several readers,
+ * the complete and close calls of the readers are ignored.
+ */
+public class ChangeCoalescer implements ChangeSink {
+    private Logger logger = LoggerFactory.getLogger(ChangeCoalescer.class);
+
+    private static final List<EntityType> ENTITY_ORDER = List.of(EntityType.Node, EntityType.Way, EntityType.Relation);
+    private static final List<EntityType> DELETE_ORDER = List.of(EntityType.Relation, EntityType.Way, EntityType.Node);
+
+    private final Map<EntityType, TreeMap<Long, NetChange>> changes = new EnumMap<>(EntityType.class);
+    private long changeCount = 0;
+
+    public ChangeCoalescer() {
+        super();
+        for (var type : ENTITY_ORDER) {
+            changes.put(type, new TreeMap<>());
+        }
+    }
+
+    @Override
+    public void initialize(Map<String, Object> metaData) {
+        // Nothing to initialize
+    }
+
+    @Override
+    public void process(ChangeContainer change) {
+        var entity = change.getEntityContainer().getEntity();
+        var entityChanges = changes.get(entity.getType());
+        if (entityChanges == null) {
+            // Bounds are not stored in the database
+            return;
+        }
+        changeCount++;
+        var netChange = entityChanges.get(entity.getId());
+        if (netChange == null) {
+            entityChanges.put(entity.getId(), new NetChange(change));
+        } else {
+            netChange.last = change;
+        }
+    }
+
+    @Override
+    public void complete() {
+        // The net change is written by writeTo
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Write the net change to a change sink. Creates and modifications are written first, for
+     * nodes, ways and relations in that order, followed by the deletes in reverse order. The
+     * entities of each type are written in id order.
+     * The sink is initialized and completed, but not closed.
+     */
+    public void writeTo(ChangeSink sink) {
+        sink.initialize(Collections.emptyMap());
+        long netCount = 0;
+        for (var type : ENTITY_ORDER) {
+            for (var netChange : changes.get(type).values()) {
+                var action = netChange.getAction();
+                if (action == ChangeAction.Create || action == ChangeAction.Modify) {
+                    sink.process(new ChangeContainer(netChange.last.getEntityContainer(), action));
+                    netCount++;
+                }
+            }
+        }
+        for (var type : DELETE_ORDER) {
+            for (var netChange : changes.get(type).values()) {
+                if (netChange.getAction() == ChangeAction.Delete) {
+                    sink.process(netChange.last);
+                    netCount++;
+                }
+            }
+        }
+        sink.complete();
+        logger.info("Coalesced {} changes into {} net changes", changeCount, netCount);
+    }
+
+    private static class NetChange {
+        private final ChangeAction firstAction;
+        private ChangeContainer last;
+
+        public NetChange(ChangeContainer change) {
+            super();
+            this.firstAction = change.getAction();
+            this.last = change;
+        }
+
+        /**
+         * @return The net action, or null if the entity was created and deleted again
+         */
+        public ChangeAction getAction() {
+            boolean deleted = last.getAction() == ChangeAction.Delete;
+            if (firstAction == ChangeAction.Create) {
+                return deleted ? null : ChangeAction.Create;
+            }
+            return deleted ? ChangeAction.Delete : ChangeAction.Modify;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package nl.osmdata.change;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.RelationContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
+import org.openstreetmap.osmosis.xml.common.CompressionMethod;
+
+/**
+ * Change source that reads an osmChange document from a stream with a pull parser.
+ *
+ * The entities are passed to the sink while the document is read, so the stream can be
+ * a network response that is still arriving. The stream must not be compressed. It is
+ * closed when the reader is done. The sink contract is the same as for the Osmosis
+ * XmlChangeReader.
+ *
+ * The attributes and children of an element are collected in reusable buffers before the
+ * entity is created. Numbers and timestamps are parsed from the raw bytes, tag keys, roles
+ * and short tag values are shared between entities, and so are the users.
+ */
+public class OscReader implements RunnableChangeSource {
+    private static final byte[] CREATE = bytes("create");
+    private static final byte[] MODIFY = bytes("modify");
+    private static final byte[] DELETE = bytes("delete");
+    private static final byte[] NODE = bytes("node");
+    private static final byte[] WAY = bytes("way");
+    private static final byte[] RELATION = bytes("relation");
+    private static final byte[] TAG = bytes("tag");
+    private static final byte[] ND = bytes("nd");
+    private static final byte[] MEMBER = bytes("member");
+    private static final byte[] ID = bytes("id");
+    private static final byte[] VERSION = bytes("version");
+    private static final byte[] TIMESTAMP = bytes("timestamp");
+    private static final byte[] UID = bytes("uid");
+    private static final byte[] USER = bytes("user");
+    private static final byte[] CHANGESET = bytes("changeset");
+    private static final byte[] LAT = bytes("lat");
+    private static final byte[] LON = bytes("lon");
+    private static final byte[] K = bytes("k");
+    private static final byte[] V = bytes("v");
+    private static final byte[] REF = bytes("ref");
+    private static final byte[] TYPE = bytes("type");
+    private static final byte[] ROLE = bytes("role");
+
+    private final InputStream in;
+    private final File file;
+    private final CompressionMethod compressionMethod;
+    private final Map<Integer, CachedUser> users = new HashMap<>();
+    private ChangeSink changeSink;
+
+    // The buffers for the entity that is being read
+    private long id;
+    private int version;
+    private long timestamp;
+    private long changeset;
+    private OsmUser user;
+    private double latitude;
+    private double longitude;
+    private int tagCount;
+    private String[] tagKeys = new String[16];
+    private String[] tagValues = new String[16];
+    private int refCount;
+    private long[] refs = new long[256];
+    private EntityType[] memberTypes = new EntityType[64];
+    private String[] memberRoles = new String[64];
+
+    /**
+     * @param in The uncompressed osmChange document
+     */
+    public OscReader(InputStream in) {
+        super();
+        this.in = in;
+        this.file = null;
+        this.compressionMethod = CompressionMethod.None;
+    }
+
+    /**
+     * @param file The osmChange file. It is opened when the reader is run.
+     * @param compressionMethod The compression of the file. BZip2 is not supported.
+     */
+    public OscReader(File file, CompressionMethod compressionMethod) {
+        super();
+        if (compressionMethod == CompressionMethod.BZip2) {
+            throw new IllegalArgumentException(String.format("Unsupported compression method: %s.", compressionMethod));
+        }
+        this.in = null;
+        this.file = file;
+        this.compressionMethod = compressionMethod;
+    }
+
+    @Override
+    public void setChangeSink(ChangeSink changeSink) {
+        this.changeSink = changeSink;
+    }
+
+    @Override
+    public void run() {
+        try (var input = openInput()) {
+            changeSink.initialize(Collections.emptyMap());
+            var tokenizer = new XmlTokenizer(input);
+            ChangeAction action = null;
+            int event;
+            while ((event = tokenizer.next()) != XmlTokenizer.END_DOCUMENT) {
+                if (event != XmlTokenizer.START_ELEMENT) {
+                    continue;
+                }
+                if (tokenizer.isName(CREATE)) {
+                    action = ChangeAction.Create;
+                } else if (tokenizer.isName(MODIFY)) {
+                    action = ChangeAction.Modify;
+                } else if (tokenizer.isName(DELETE)) {
+                    action = ChangeAction.Delete;
+                } else if (tokenizer.isName(NODE) || tokenizer.isName(WAY) || tokenizer.isName(RELATION)) {
+                    if (action == null) {
+                        throw new IllegalStateException(String.format("Found a %s outside of a change action at byte %d.",
+                            tokenizer.getName(), tokenizer.getOffset()));
+                    }
+                    changeSink.process(new ChangeContainer(readEntity(tokenizer), action));
+                }
+            }
+            changeSink.complete();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the change document.", e);
+        } finally {
+            changeSink.close();
+        }
+    }
+
+    private InputStream openInput() throws IOException {
+        if (file == null) {
+            return in;
+        }
+        var input = new FileInputStream(file);
+        try {
+            return compressionMethod == CompressionMethod.GZip ? new GZIPInputStream(input, 64 * 1024) : input;
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read an entity element, including its tags, way nodes and members.
+     */
+    private EntityContainer readEntity(XmlTokenizer tokenizer) throws IOException {
+        var type = tokenizer.isName(NODE) ? EntityType.Node
+            : tokenizer.isName(WAY) ? EntityType.Way : EntityType.Relation;
+        readAttributes(tokenizer);
+        tagCount = 0;
+        refCount = 0;
+        while (tokenizer.next() == XmlTokenizer.START_ELEMENT) {
+            if (tokenizer.isName(TAG)) {
+                readTag(tokenizer);
+            } else if (tokenizer.isName(ND)) {
+                readWayNode(tokenizer);
+            } else if (tokenizer.isName(MEMBER)) {
+                readMember(tokenizer);
+            }
+            skipElement(tokenizer);
+        }
+        var tags = new ArrayList<Tag>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(new Tag(tagKeys[i], tagValues[i]));
+        }
+        var entityData = new CommonEntityData(id, version, new Date(timestamp), user, changeset, tags);
+        switch (type) {
+        case Node:
+            return new NodeContainer(new Node(entityData, latitude, longitude));
+        case Way: {
+            var wayNodes = new ArrayList<WayNode>(refCount);
+            for (int i = 0; i < refCount; i++) {
+                wayNodes.add(new WayNode(refs[i]));
+            }
+            return new WayContainer(new Way(entityData, wayNodes));
+        }
+        default: {
+            var members = new ArrayList<RelationMember>(refCount);
+            for (int i = 0; i < refCount; i++) {
+                members.add(new RelationMember(refs[i], memberTypes[i], memberRoles[i]));
+            }
+            return new RelationContainer(new Relation(entityData, members));
+        }
+        }
+    }
+
+    private void readAttributes(XmlTokenizer tokenizer) {
+        boolean hasId = false;
+        int uid = -1;
+        int userIndex = -1;
+        version = -1;
+        timestamp = 0;
+        changeset = -1;
+        latitude = 0;
+        longitude = 0;
+        for (int i = 0; i < tokenizer.getAttributeCount(); i++) {
+            if (tokenizer.isAttribute(i, ID)) {
+                id = tokenizer.getLong(i);
+                hasId = true;
+            } else if (tokenizer.isAttribute(i, VERSION)) {
+                version = tokenizer.getInt(i);
+            } else if (tokenizer.isAttribute(i, TIMESTAMP)) {
+                timestamp = tokenizer.getTimestamp(i);
+            } else if (tokenizer.isAttribute(i, UID)) {
+                uid = tokenizer.getInt(i);
+            } else if (tokenizer.isAttribute(i, USER)) {
+                userIndex = i;
+            } else if (tokenizer.isAttribute(i, CHANGESET)) {
+                changeset = tokenizer.getLong(i);
+            } else if (tokenizer.isAttribute(i, LAT)) {
+                latitude = tokenizer.getDouble(i);
+            } else if (tokenizer.isAttribute(i, LON)) {
+                longitude = tokenizer.getDouble(i);
+            }
+        }
+        if (!hasId) {
+            throw new IllegalStateException(String.format("Found a %s without an id at byte %d.",
+                tokenizer.getName(), tokenizer.getOffset()));
+        }
+        user = getUser(tokenizer, uid, userIndex);
+    }
+
+    private void readTag(XmlTokenizer tokenizer) {
+        String key = null;
+        String value = "";
+        for (int i = 0; i < tokenizer.getAttributeCount(); i++) {
+            if (tokenizer.isAttribute(i, K)) {
+                key = tokenizer.getCachedString(i);
+            } else if (tokenizer.isAttribute(i, V)) {
+                value = tokenizer.getCachedString(i);
+            }
+        }
+        if (key == null) {
+            return;
+        }
+        if (tagCount == tagKeys.length) {
+            tagKeys = Arrays.copyOf(tagKeys, tagCount * 2);
+            tagValues = Arrays.copyOf(tagValues, tagCount * 2);
+        }
+        tagKeys[tagCount] = key;
+        tagValues[tagCount++] = value;
+    }
+
+    private void readWayNode(XmlTokenizer tokenizer) {
+        for (int i = 0; i < tokenizer.getAttributeCount(); i++) {
+            if (tokenizer.isAttribute(i, REF)) {
+                ensureRefCapacity();
+                refs[refCount++] = tokenizer.getLong(i);
+            }
+        }
+    }
+
+    private void readMember(XmlTokenizer tokenizer) {
+        long ref = 0;
+        EntityType memberType = null;
+        String role = "";
+        for (int i = 0; i < tokenizer.getAttributeCount(); i++) {
+            if (tokenizer.isAttribute(i, REF)) {
+                ref = tokenizer.getLong(i);
+            } else if (tokenizer.isAttribute(i, TYPE)) {
+                memberType = getMemberType(tokenizer, i);
+            } else if (tokenizer.isAttribute(i, ROLE)) {
+                role = tokenizer.getCachedString(i);
+            }
+        }
+        if (memberType == null) {
+            throw new IllegalStateException(String.format("Found a member without a type at byte %d.",
+                tokenizer.getOffset()));
+        }
+        ensureRefCapacity();
+        refs[refCount] = ref;
+        memberTypes[refCount] = memberType;
+        memberRoles[refCount++] = role;
+    }
+
+    private void ensureRefCapacity() {
+        if (refCount == refs.length) {
+            refs = Arrays.copyOf(refs, refCount * 2);
+        }
+        if (refCount == memberTypes.length) {
+            memberTypes = Arrays.copyOf(memberTypes, refs.length);
+            memberRoles = Arrays.copyOf(memberRoles, refs.length);
+        }
+    }
+
+    /**
+     * Get the user of the current entity. A user is only created again when the name changed.
+     */
+    private OsmUser getUser(XmlTokenizer tokenizer, int uid, int userIndex) {
+        if (uid < 0) {
+            return OsmUser.NONE;
+        }
+        var cached = users.get(uid);
+        if (cached != null && (userIndex < 0 ? cached.name.length == 0 : tokenizer.isValue(userIndex, cached.name))) {
+            return cached.user;
+        }
+        var name = userIndex < 0 ? new byte[0] : tokenizer.getValueBytes(userIndex);
+        var user = new OsmUser(uid, userIndex < 0 ? "" : tokenizer.getString(userIndex));
+        users.put(uid, new CachedUser(name, user));
+        return user;
+    }
+
+    /**
+     * Skip the remainder of the current element, including any children.
+     */
+    private static void skipElement(XmlTokenizer tokenizer) throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (tokenizer.next()) {
+            case XmlTokenizer.START_ELEMENT:
+                depth++;
+                break;
+            case XmlTokenizer.END_ELEMENT:
+                depth--;
+                break;
+            default:
+                throw new IOException(String.format("Unexpected end of document at byte %d.", tokenizer.getOffset()));
+            }
+        }
+    }
+
+    private static EntityType getMemberType(XmlTokenizer tokenizer, int index) {
+        if (tokenizer.isValue(index, NODE)) {
+            return EntityType.Node;
+        }
+        if (tokenizer.isValue(index, WAY)) {
+            return EntityType.Way;
+        }
+        if (tokenizer.isValue(index, RELATION)) {
+            return EntityType.Relation;
+        }
+        throw new IllegalArgumentException(String.format("Unsupported member type: %s.", tokenizer.getString(index)));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static class CachedUser {
+        private final byte[] name;
+        private final OsmUser user;
+
+        public CachedUser(byte[] name, OsmUser user) {
+            super();
+            this.name = name;
+            this.user = user;
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package nl.osmdata.change;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Minimal pull parser for machine generated XML documents like osmChange files.
+ *
+ * The parser works on the UTF-8 bytes of the document. The tag that was read last is kept
+ * in a reusable buffer, and attribute values are only decoded on request. Numbers and
+ * timestamps are parsed from the bytes directly, short strings are taken from a cache.
+ * Text content, comments, processing instructions and DOCTYPE declarations are skipped.
+ */
+class XmlTokenizer {
+    public static final int START_ELEMENT = 1;
+    public static final int END_ELEMENT = 2;
+    public static final int END_DOCUMENT = 3;
+
+    // Strings up to this length are cached
+    private static final int MAX_CACHED_LENGTH = 32;
+    // A mantissa of up to 15 digits and its power of ten are both exact doubles
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15};
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int position = 0;
+    private int limit = 0;
+    private long offset = 0;
+
+    // The last tag, without the angle brackets
+    private byte[] tag = new byte[1024];
+    private int tagLength;
+    private int nameLength;
+    // nameStart, nameEnd, valueStart, valueEnd for every attribute
+    private int[] attributes = new int[64];
+    private int attributeCount;
+    private boolean emptyElement;
+    private boolean pendingEnd = false;
+    private byte[] scratch = new byte[256];
+    private final StringCache stringCache = new StringCache();
+
+    public XmlTokenizer(InputStream in) {
+        super();
+        this.in = in;
+    }
+
+    /**
+     * Advance to the next start tag, end tag or the end of the document.
+     * An empty element tag is reported as a start tag followed by an end tag.
+     */
+    public int next() throws IOException {
+        if (pendingEnd) {
+            pendingEnd = false;
+            attributeCount = 0;
+            return END_ELEMENT;
+        }
+        while (true) {
+            int b = read();
+            if (b < 0) {
+                return END_DOCUMENT;
+            }
+            if (b != '<') {
+                continue;
+            }
+            b = read();
+            switch (b) {
+            case '?':
+                skipPast("?>");
+                break;
+            case '!':
+                skipDeclaration();
+                break;
+            case '/':
+                tagLength = 0;
+                readTag();
+                attributeCount = 0;
+                return END_ELEMENT;
+            case -1:
+                throw malformed("Unexpected end of document");
+            default:
+                tag[0] = (byte) b;
+                tagLength = 1;
+                readTag();
+                parseAttributes();
+                pendingEnd = emptyElement;
+                return START_ELEMENT;
+            }
+        }
+    }
+
+    public boolean isName(byte[] name) {
+        return Arrays.equals(tag, 0, nameLength, name, 0, name.length);
+    }
+
+    public String getName() {
+        return new String(tag, 0, nameLength, StandardCharsets.UTF_8);
+    }
+
+    public int getAttributeCount() {
+        return attributeCount;
+    }
+
+    public boolean isAttribute(int index, byte[] name) {
+        int i = index * 4;
+        return Arrays.equals(tag, attributes[i], attributes[i + 1], name, 0, name.length);
+    }
+
+    public boolean isValue(int index, byte[] value) {
+        int i = index * 4;
+        return Arrays.equals(tag, attributes[i + 2], attributes[i + 3], value, 0, value.length);
+    }
+
+    /**
+     * Copy the raw bytes of an attribute value.
+     */
+    public byte[] getValueBytes(int index) {
+        int i = index * 4;
+        return Arrays.copyOfRange(tag, attributes[i + 2], attributes[i + 3]);
+    }
+
+    public long getLong(int index) {
+        int i = index * 4;
+        int p = attributes[i + 2];
+        int end = attributes[i + 3];
+        boolean negative = p < end && tag[p] == '-';
+        if (negative) {
+            p++;
+        }
+        if (p == end || end - p > 18) {
+            return Long.parseLong(getString(index));
+        }
+        long value = 0;
+        for (; p < end; p++) {
+            int digit = tag[p] - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(getString(index));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    public int getInt(int index) {
+        return Math.toIntExact(getLong(index));
+    }
+
+    /**
+     * Parse a decimal number. Plain decimals with up to 15 digits, like coordinates, are parsed
+     * from the bytes, longer ones are left to Double.parseDouble. The result is the correctly
+     * rounded double in both cases.
+     */
+    public double getDouble(int index) {
+        int i = index * 4;
+        int p = attributes[i + 2];
+        int end = attributes[i + 3];
+        boolean negative = p < end && tag[p] == '-';
+        if (negative) {
+            p++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; p < end; p++) {
+            int b = tag[p];
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (b >= '0' && b <= '9' && digits < MAX_EXACT_DIGITS) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                return Double.parseDouble(getString(index));
+            }
+        }
+        if (digits == 0) {
+            return Double.parseDouble(getString(index));
+        }
+        // Both operands are exact doubles, so the division is correctly rounded
+        double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse an ISO 8601 timestamp. The yyyy-MM-ddTHH:mm:ssZ form of OSM files is parsed from
+     * the bytes, other forms are left to Instant.parse.
+     *
+     * @return The timestamp in milliseconds since the epoch
+     */
+    public long getTimestamp(int index) {
+        int i = index * 4;
+        int p = attributes[i + 2];
+        if (attributes[i + 3] - p != 20 || tag[p + 4] != '-' || tag[p + 7] != '-' || tag[p + 10] != 'T'
+                || tag[p + 13] != ':' || tag[p + 16] != ':' || tag[p + 19] != 'Z') {
+            return Instant.parse(getString(index)).toEpochMilli();
+        }
+        int year = digits(p, 4);
+        int month = digits(p + 5, 2);
+        int day = digits(p + 8, 2);
+        int hour = digits(p + 11, 2);
+        int minute = digits(p + 14, 2);
+        int second = digits(p + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return Instant.parse(getString(index)).toEpochMilli();
+        }
+        return ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60_000L + second * 1000L;
+    }
+
+    public String getString(int index) {
+        int i = index * 4;
+        return decode(attributes[i + 2], attributes[i + 3]);
+    }
+
+    /**
+     * Get an attribute value that is likely to repeat, like a tag key. Short values are
+     * cached, so repeated values share one String instance.
+     */
+    public String getCachedString(int index) {
+        int i = index * 4;
+        int from = attributes[i + 2];
+        int to = attributes[i + 3];
+        if (to - from > MAX_CACHED_LENGTH) {
+            return decode(from, to);
+        }
+        return stringCache.get(this, from, to);
+    }
+
+    public long getOffset() {
+        return offset - limit + position;
+    }
+
+    /**
+     * Read the remainder of a tag into the tag buffer. Stops after the closing bracket.
+     */
+    private void readTag() throws IOException {
+        byte quote = 0;
+        while (true) {
+            int b = read();
+            if (b < 0) {
+                throw malformed("Unexpected end of document");
+            }
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = (byte) b;
+            } else if (b == '>') {
+                break;
+            }
+            if (tagLength == tag.length) {
+                tag = Arrays.copyOf(tag, tag.length * 2);
+            }
+            tag[tagLength++] = (byte) b;
+        }
+        emptyElement = tagLength > 0 && tag[tagLength - 1] == '/';
+        if (emptyElement) {
+            tagLength--;
+        }
+        nameLength = 0;
+        while (nameLength < tagLength && !isWhitespace(tag[nameLength])) {
+            nameLength++;
+        }
+    }
+
+    private void parseAttributes() throws IOException {
+        attributeCount = 0;
+        int p = nameLength;
+        while (true) {
+            while (p < tagLength && isWhitespace(tag[p])) {
+                p++;
+            }
+            if (p == tagLength) {
+                return;
+            }
+            int nameStart = p;
+            while (p < tagLength && tag[p] != '=' && !isWhitespace(tag[p])) {
+                p++;
+            }
+            int nameEnd = p;
+            while (p < tagLength && isWhitespace(tag[p])) {
+                p++;
+            }
+            if (p == tagLength || tag[p] != '=') {
+                throw malformed("Missing attribute value");
+            }
+            p++;
+            while (p < tagLength && isWhitespace(tag[p])) {
+                p++;
+            }
+            if (p == tagLength || (tag[p] != '"' && tag[p] != '\'')) {
+                throw malformed("Unquoted attribute value");
+            }
+            byte quote = tag[p++];
+            int valueStart = p;
+            while (p < tagLength && tag[p] != quote) {
+                p++;
+            }
+            if (p == tagLength) {
+                throw malformed("Unterminated attribute value");
+            }
+            if (attributeCount * 4 == attributes.length) {
+                attributes = Arrays.copyOf(attributes, attributes.length * 2);
+            }
+            int i = attributeCount++ * 4;
+            attributes[i] = nameStart;
+            attributes[i + 1] = nameEnd;
+            attributes[i + 2] = valueStart;
+            attributes[i + 3] = p++;
+        }
+    }
+
+    /**
+     * Skip a comment, CDATA section or DOCTYPE declaration. The "<!" is already read.
+     */
+    private void skipDeclaration() throws IOException {
+        int b = read();
+        if (b == '-') {
+            read();
+            skipPast("-->");
+        } else if (b == '[') {
+            skipPast("]]>");
+        } else {
+            // DOCTYPE, an internal subset is not supported
+            skipPast(">");
+        }
+    }
+
+    private void skipPast(String terminator) throws IOException {
+        int mask = (1 << (8 * terminator.length())) - 1;
+        int expected = 0;
+        for (int i = 0; i < terminator.length(); i++) {
+            expected = expected << 8 | terminator.charAt(i);
+        }
+        int window = 0;
+        while ((window & mask) != expected) {
+            int b = read();
+            if (b < 0) {
+                throw malformed("Unexpected end of document");
+            }
+            window = window << 8 | b;
+        }
+    }
+
+    /**
+     * Decode a range of the tag buffer, resolving character and entity references.
+     */
+    private String decode(int from, int to) {
+        boolean ascii = true;
+        for (int p = from; p < to; p++) {
+            if (tag[p] < 0 || tag[p] == '&') {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            return new String(tag, from, to - from, StandardCharsets.ISO_8859_1);
+        }
+        // A reference is never shorter than its UTF-8 encoding
+        if (scratch.length < (to - from)) {
+            scratch = new byte[Math.max(to - from, scratch.length * 2)];
+        }
+        int length = 0;
+        for (int p = from; p < to; p++) {
+            if (tag[p] != '&') {
+                scratch[length++] = tag[p];
+                continue;
+            }
+            int end = p + 1;
+            while (end < to && tag[end] != ';') {
+                end++;
+            }
+            var reference = new String(tag, p + 1, end - p - 1, StandardCharsets.ISO_8859_1);
+            var replacement = resolve(reference);
+            if (replacement == null) {
+                scratch[length++] = tag[p];
+                continue;
+            }
+            var bytes = replacement.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(bytes, 0, scratch, length, bytes.length);
+            length += bytes.length;
+            p = end;
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static String resolve(String reference) {
+        switch (reference) {
+        case "amp":
+            return "&";
+        case "lt":
+            return "<";
+        case "gt":
+            return ">";
+        case "quot":
+            return "\"";
+        case "apos":
+            return "'";
+        default:
+            try {
+                if (reference.startsWith("#x")) {
+                    return Character.toString(Integer.parseInt(reference.substring(2), 16));
+                }
+                if (reference.startsWith("#")) {
+                    return Character.toString(Integer.parseInt(reference.substring(1)));
+                }
+            } catch (@SuppressWarnings("unused") IllegalArgumentException e) {
+                // Not a valid character reference, keep the text as is
+            }
+            return null;
+        }
+    }
+
+    private int digits(int p, int count) {
+        int value = 0;
+        for (int i = p; i < p + count; i++) {
+            int digit = tag[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * The number of days since 1970-01-01 of a date in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+            offset += limit;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private IOException malformed(String message) {
+        return new IOException(String.format("%s at byte %d of the document.", message, getOffset()));
+    }
+
+    /**
+     * Open addressing table from the UTF-8 bytes of short strings to their decoded value.
+     * Once the table is half full, new strings are no longer added.
+     */
+    private static class StringCache {
+        private static final int CAPACITY = 16 * 1024;
+
+        private final byte[][] keys = new byte[CAPACITY][];
+        private final String[] values = new String[CAPACITY];
+        private int size = 0;
+
+        public String get(XmlTokenizer tokenizer, int from, int to) {
+            var tag = tokenizer.tag;
+            int hash = 1;
+            for (int p = from; p < to; p++) {
+                hash = 31 * hash + tag[p];
+            }
+            int slot = (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+            while (keys[slot] != null) {
+                if (Arrays.equals(keys[slot], 0, keys[slot].length, tag, from, to)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & (CAPACITY - 1);
+            }
+            var value = tokenizer.decode(from, to);
+            if (size < CAPACITY / 2) {
+                keys[slot] = Arrays.copyOfRange(tag, from, to);
+                values[slot] = value;
+                size++;
+            }
+            return value;
+        }
+    }
+}
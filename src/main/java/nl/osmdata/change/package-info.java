@@ -0,0 +1 @@
+package nl.osmdata.change;
@@ -0,0 +1,289 @@
+package nl.osmdata.copy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+/**
+ * Write rows in the Postgresql COPY binary format.
+ *
+ * The server receives every field with the binary receive function of the column type,
+ * so no text parsing of timestamps, hstore literals, arrays or hex geometries is needed.
+ */
+public class BinaryRowWriter implements RowWriter {
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    // Milliseconds between the unix epoch and the Postgresql epoch (2000-01-01)
+    private static final long POSTGRES_EPOCH_MILLIS = 946_684_800_000L;
+    private static final int INT8_OID = 20;
+    // EWKB type of a point with an SRID
+    private static final int EWKB_POINT_WITH_SRID = 0x20000001;
+    private static final int EWKB_LINESTRING_WITH_SRID = 0x20000002;
+    private static final int EWKB_POLYGON_WITH_SRID = 0x20000003;
+    private static final int SRID = 4326;
+
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream rowBuffer = new ByteArrayOutputStream(1024);
+    private final DataOutputStream row = new DataOutputStream(rowBuffer);
+    private final ByteArrayOutputStream fieldBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream field = new DataOutputStream(fieldBuffer);
+    private short fieldCount = 0;
+
+    public BinaryRowWriter(OutputStream out) {
+        this(out, true);
+    }
+
+    /**
+     * @param out The output stream
+     * @param header Write the file header. A writer without a header writes rows only,
+     *     which are appended to another writer.
+     */
+    public BinaryRowWriter(OutputStream out, boolean header) {
+        super();
+        this.out = new DataOutputStream(out);
+        if (header) {
+            try {
+                this.out.write(SIGNATURE);
+                // Flags and header extension length
+                this.out.writeInt(0);
+                this.out.writeInt(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void writeField(long value) {
+        try {
+            row.writeInt(8);
+            row.writeLong(value);
+            fieldCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeField(int value) {
+        try {
+            row.writeInt(4);
+            row.writeInt(value);
+            fieldCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeField(char value) {
+        writeField(String.valueOf(value));
+    }
+
+    @Override
+    public void writeField(String value) {
+        try {
+            writeString(row, value);
+            fieldCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeTimestamp(long epochMillis) {
+        writeField((epochMillis - POSTGRES_EPOCH_MILLIS) * 1000);
+    }
+
+    @Override
+    public void writeHstore(Collection<Tag> tags) {
+        try {
+            field.writeInt(tags.size());
+            for (Tag tag : tags) {
+                writeString(field, tag.getKey());
+                writeString(field, tag.getValue());
+            }
+            writeFieldBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeHstore(String[] strings, int[] keys, int[] values, int from, int to) {
+        try {
+            field.writeInt(to - from);
+            for (int i = from; i < to; i++) {
+                writeString(field, strings[keys[i]]);
+                writeString(field, strings[values[i]]);
+            }
+            writeFieldBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeNodeIds(List<WayNode> wayNodes) {
+        try {
+            // Dimensions, has nulls flag and element type
+            field.writeInt(wayNodes.isEmpty() ? 0 : 1);
+            field.writeInt(0);
+            field.writeInt(INT8_OID);
+            if (!wayNodes.isEmpty()) {
+                // Size and lower bound of the single dimension
+                field.writeInt(wayNodes.size());
+                field.writeInt(1);
+                for (WayNode wayNode : wayNodes) {
+                    field.writeInt(8);
+                    field.writeLong(wayNode.getNodeId());
+                }
+            }
+            writeFieldBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeNodeIds(long[] nodeIds, int from, int to) {
+        try {
+            field.writeInt(to > from ? 1 : 0);
+            field.writeInt(0);
+            field.writeInt(INT8_OID);
+            if (to > from) {
+                field.writeInt(to - from);
+                field.writeInt(1);
+                for (int i = from; i < to; i++) {
+                    field.writeInt(8);
+                    field.writeLong(nodeIds[i]);
+                }
+            }
+            writeFieldBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write a point geometry as raw little endian EWKB.
+     */
+    @Override
+    public void writePoint(double longitude, double latitude) {
+        try {
+            field.writeByte(1);
+            field.writeInt(Integer.reverseBytes(EWKB_POINT_WITH_SRID));
+            field.writeInt(Integer.reverseBytes(SRID));
+            field.writeLong(Long.reverseBytes(Double.doubleToLongBits(longitude)));
+            field.writeLong(Long.reverseBytes(Double.doubleToLongBits(latitude)));
+            writeFieldBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write a linestring geometry as raw little endian EWKB.
+     */
+    @Override
+    public void writeLineString(double[] coordinates, int count) {
+        try {
+            field.writeByte(1);
+            field.writeInt(Integer.reverseBytes(EWKB_LINESTRING_WITH_SRID));
+            field.writeInt(Integer.reverseBytes(SRID));
+            field.writeInt(Integer.reverseBytes(count));
+            for (int i = 0; i < count * 2; i++) {
+                writeDouble(coordinates[i]);
+            }
+            writeFieldBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write a bounding box as a raw little endian EWKB polygon.
+     */
+    @Override
+    public void writeBox(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude) {
+        try {
+            field.writeByte(1);
+            field.writeInt(Integer.reverseBytes(EWKB_POLYGON_WITH_SRID));
+            field.writeInt(Integer.reverseBytes(SRID));
+            // A single ring of five points
+            field.writeInt(Integer.reverseBytes(1));
+            field.writeInt(Integer.reverseBytes(5));
+            writeDouble(minLongitude);
+            writeDouble(minLatitude);
+            writeDouble(minLongitude);
+            writeDouble(maxLatitude);
+            writeDouble(maxLongitude);
+            writeDouble(maxLatitude);
+            writeDouble(maxLongitude);
+            writeDouble(minLatitude);
+            writeDouble(minLongitude);
+            writeDouble(minLatitude);
+            writeFieldBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void endRow() {
+        try {
+            out.writeShort(fieldCount);
+            rowBuffer.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rowBuffer.reset();
+        fieldCount = 0;
+    }
+
+    @Override
+    public void writeRows(byte[] data, int offset, int length) {
+        try {
+            out.write(data, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the file trailer and close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        out.writeShort(-1);
+        out.close();
+    }
+
+    private void writeDouble(double value) throws IOException {
+        field.writeLong(Long.reverseBytes(Double.doubleToLongBits(value)));
+    }
+
+    private void writeFieldBuffer() throws IOException {
+        row.writeInt(fieldBuffer.size());
+        fieldBuffer.writeTo(row);
+        fieldBuffer.reset();
+        fieldCount++;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package nl.osmdata.copy;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copy target that writes the rows of every table to a dump file in a folder.
+ */
+public class CopyFileTarget implements CopyTarget, AutoCloseable {
+    private final File outputFolder;
+    private final CopyFormat format;
+    private final Map<String, RowWriter> writers = new LinkedHashMap<>();
+
+    public CopyFileTarget(File outputFolder, CopyFormat format) {
+        super();
+        this.outputFolder = outputFolder;
+        this.format = format;
+    }
+
+    @Override
+    public RowWriter getRowWriter(String tableName) {
+        return writers.computeIfAbsent(tableName, table -> {
+            var file = new File(outputFolder, format.getFileName(table));
+            try {
+                return format.createRowWriter(new BufferedOutputStream(new FileOutputStream(file), 65536));
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Could not create dump file %s.", file), e);
+            }
+        });
+    }
+
+    @Override
+    public CopyFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Complete and close all dump files.
+     */
+    @Override
+    public void close() throws IOException {
+        for (RowWriter writer : writers.values()) {
+            writer.close();
+        }
+    }
+}
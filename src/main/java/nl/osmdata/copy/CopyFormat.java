@@ -0,0 +1,59 @@
+package nl.osmdata.copy;
+
+import java.io.OutputStream;
+
+/**
+ * The Postgresql COPY formats that can be used to transfer the table data.
+ */
+public enum CopyFormat {
+    TEXT(".txt", "COPY %s FROM stdin", "COPY %s FROM stdin WITH (FREEZE)"),
+    BINARY(".bin", "COPY %s FROM stdin WITH (FORMAT binary)", "COPY %s FROM stdin WITH (FORMAT binary, FREEZE)");
+
+    private final String fileExtension;
+    private final String copySql;
+    private final String copyFreezeSql;
+
+    private CopyFormat(String fileExtension, String copySql, String copyFreezeSql) {
+        this.fileExtension = fileExtension;
+        this.copySql = copySql;
+        this.copyFreezeSql = copyFreezeSql;
+    }
+
+    public String getFileName(String tableName) {
+        return tableName + fileExtension;
+    }
+
+    public String getCopySql(String tableName) {
+        return String.format(copySql, tableName);
+    }
+
+    /**
+     * The COPY statement for a table that was created or truncated in the current transaction.
+     */
+    public String getCopyFreezeSql(String tableName) {
+        return String.format(copyFreezeSql, tableName);
+    }
+
+    public RowWriter createRowWriter(OutputStream out) {
+        switch (this) {
+        case BINARY:
+            return new BinaryRowWriter(out);
+        default:
+            return new TextRowWriter(out);
+        }
+    }
+
+    /**
+     * Create a writer for rows that are appended to another writer of this format
+     * with {@link RowWriter#writeRows(byte[], int, int)}. The writer doesn't write a
+     * file header or trailer.
+     */
+    public RowWriter createFragmentWriter(OutputStream out) {
+        switch (this) {
+        case BINARY:
+            return new BinaryRowWriter(out, false);
+        default:
+            return new TextRowWriter(out);
+        }
+    }
+}
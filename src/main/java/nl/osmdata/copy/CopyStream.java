@@ -0,0 +1,214 @@
+package nl.osmdata.copy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An output stream that feeds a live Postgresql COPY operation.
+ *
+ * The bytes written to the stream are collected in fixed size chunks. Full chunks
+ * are handed to a dedicated thread that writes them to the server. The queue between
+ * the writer and that thread is bounded, so a slow table blocks the writer instead of
+ * filling up the heap.
+ */
+public class CopyStream extends OutputStream {
+    private Logger logger = LoggerFactory.getLogger(CopyStream.class);
+
+    private static final long ABORT_TIMEOUT_MILLIS = 30_000;
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final String tableName;
+    private final String sql;
+    private final Connection conn;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread pump;
+    private byte[] chunk = new byte[CHUNK_SIZE];
+    private int count = 0;
+    private long bytes = 0;
+    private boolean closed = false;
+    private volatile Throwable failure;
+    private volatile long rows = 0;
+    private volatile long timeElapsed = 0;
+
+    public CopyStream(Connection conn, String tableName, String sql) {
+        super();
+        this.conn = conn;
+        this.tableName = tableName;
+        this.sql = sql;
+        this.pump = new Thread(this::pump, "copy-" + tableName);
+        this.pump.setDaemon(true);
+        this.pump.start();
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return The number of rows reported by the server. Only valid after the stream was closed.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return The number of bytes written to the stream.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return The time in ms between the start of the COPY and its completion.
+     */
+    public long getTimeElapsed() {
+        return timeElapsed;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == chunk.length) {
+            flushChunk();
+        }
+        chunk[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == chunk.length) {
+                flushChunk();
+            }
+            int n = Math.min(len, chunk.length - count);
+            System.arraycopy(b, off, chunk, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Send the remaining data, finish the COPY and wait for the server to confirm it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flushChunk();
+        enqueue(END_OF_STREAM);
+        try {
+            pump.join();
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(String.format("Interrupted while waiting for the COPY of table %s.", tableName));
+        }
+        checkFailure();
+    }
+
+    /**
+     * Cancel the COPY operation. The rows that were sent so far are discarded by the server.
+     * The pump can be blocked in a write to the server, where it doesn't see an interrupt,
+     * so the server is asked to cancel the COPY first. The connection should be closed
+     * after an abort.
+     */
+    public void abort() {
+        closed = true;
+        if (pump.isAlive()) {
+            try {
+                ((BaseConnection)conn).cancelQuery();
+            } catch (SQLException e) {
+                logger.warn("Could not cancel the COPY of table {}: {}", tableName, e.getMessage());
+            }
+        }
+        pump.interrupt();
+        try {
+            pump.join(ABORT_TIMEOUT_MILLIS);
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pump.isAlive()) {
+            logger.warn("The COPY of table {} didn't stop within {} s after it was cancelled", tableName,
+                ABORT_TIMEOUT_MILLIS / 1000);
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        enqueue(count == chunk.length ? chunk : Arrays.copyOf(chunk, count));
+        bytes += count;
+        chunk = new byte[CHUNK_SIZE];
+        count = 0;
+    }
+
+    private void enqueue(byte[] data) throws IOException {
+        try {
+            while (!queue.offer(data, 100, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(String.format("Interrupted while writing to the COPY of table %s.", tableName));
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException(String.format("The COPY of table %s failed.", tableName), failure);
+        }
+    }
+
+    private void pump() {
+        CopyIn copyIn = null;
+        try {
+            Instant start = Instant.now();
+            copyIn = new CopyManager((BaseConnection)conn).copyIn(sql);
+            while (true) {
+                byte[] data = queue.take();
+                if (data == END_OF_STREAM) {
+                    break;
+                }
+                copyIn.writeToCopy(data, 0, data.length);
+            }
+            rows = copyIn.endCopy();
+            timeElapsed = Duration.between(start, Instant.now()).toMillis();
+        } catch (InterruptedException e) {
+            failure = e;
+            cancel(copyIn);
+        } catch (SQLException e) {
+            failure = e;
+            cancel(copyIn);
+            // Release a writer that may be waiting for space in the queue
+            queue.clear();
+        }
+    }
+
+    private static void cancel(CopyIn copyIn) {
+        if (copyIn != null && copyIn.isActive()) {
+            try {
+                copyIn.cancelCopy();
+            } catch (@SuppressWarnings("unused") SQLException e) {
+                // Nothing left to do, the original failure is reported
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package nl.osmdata.copy;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Copy target that streams the rows of every table into its own COPY operation.
+ * Each table gets a separate connection, so all tables are loaded at the same time
+ * while the source is being decoded.
+ */
+public class CopyStreamTarget implements CopyTarget, AutoCloseable {
+    private final List<Connection> connections = new ArrayList<>();
+    private final Map<String, CopyStream> streams = new LinkedHashMap<>();
+    private final Map<String, RowWriter> writers = new LinkedHashMap<>();
+    private final CopyFormat format;
+    private final boolean freeze;
+
+    /**
+     * @param tables The tables to load
+     * @param format The COPY format
+     * @param freeze Truncate every table and load it with COPY FREEZE in a single transaction
+     * @param connectionFactory Supplier for the connection of each table
+     */
+    public CopyStreamTarget(List<String> tables, CopyFormat format, boolean freeze, Supplier<Connection> connectionFactory) {
+        super();
+        this.format = format;
+        this.freeze = freeze;
+        try {
+            for (String table : tables) {
+                var conn = connectionFactory.get();
+                connections.add(conn);
+                if (freeze) {
+                    truncate(conn, table);
+                }
+                var sql = freeze ? format.getCopyFreezeSql(table) : format.getCopySql(table);
+                var stream = new CopyStream(conn, table, sql);
+                streams.put(table, stream);
+                writers.put(table, format.createRowWriter(stream));
+            }
+        } catch (RuntimeException e) {
+            abort();
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public RowWriter getRowWriter(String tableName) {
+        var writer = writers.get(tableName);
+        if (writer == null) {
+            throw new IllegalArgumentException(String.format("No COPY stream for table %s.", tableName));
+        }
+        return writer;
+    }
+
+    @Override
+    public CopyFormat getFormat() {
+        return format;
+    }
+
+    public Collection<CopyStream> getStreams() {
+        return streams.values();
+    }
+
+    /**
+     * Finish all COPY operations and wait until the server has processed them.
+     */
+    public void complete() throws IOException {
+        for (RowWriter writer : writers.values()) {
+            writer.close();
+        }
+        if (freeze) {
+            try {
+                for (Connection conn : connections) {
+                    conn.commit();
+                }
+            } catch (SQLException e) {
+                throw new IOException("Could not commit the COPY FREEZE transactions.", e);
+            }
+        }
+    }
+
+    /**
+     * Cancel all COPY operations that are still running.
+     */
+    public void abort() {
+        streams.values().forEach(CopyStream::abort);
+    }
+
+    @Override
+    public void close() {
+        for (Connection conn : connections) {
+            try {
+                conn.close();
+            } catch (@SuppressWarnings("unused") SQLException e) {
+                // The connection is no longer used
+            }
+        }
+    }
+
+    private static void truncate(Connection conn, String table) {
+        try (Statement stmt = conn.createStatement()) {
+            conn.setAutoCommit(false);
+            stmt.execute(String.format("TRUNCATE %s", table));
+        } catch (SQLException e) {
+            throw new RuntimeException(String.format("Could not truncate table %s.", table), e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package nl.osmdata.copy;
+
+/**
+ * Destination for the rows of a set of database tables.
+ */
+public interface CopyTarget {
+
+    public RowWriter getRowWriter(String tableName);
+
+    public CopyFormat getFormat();
+
+}
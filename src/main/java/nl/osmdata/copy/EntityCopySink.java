@@ -0,0 +1,153 @@
+package nl.osmdata.copy;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.openstreetmap.osmosis.core.container.v0_6.BoundContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityProcessor;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+
+import nl.osmdata.ProjectionProfile;
+import nl.osmdata.metrics.OsmMetrics;
+import nl.osmdata.store.MappedNodeLocationStore;
+
+/**
+ * Base class for the Osmosis sinks that write entities as COPY rows.
+ * The schema specific subclasses decide which tables and columns are written.
+ * The projection profile leaves out the metadata columns, the users and the tags that
+ * are not stored.
+ */
+public abstract class EntityCopySink implements Sink, EntityProcessor {
+    private final RowWriter userWriter;
+    private final Set<Integer> userIds = new HashSet<>();
+    private final MappedNodeLocationStore nodeLocations;
+    private final ProjectionProfile profile;
+    // Decoded entities per EntityType, added to the metrics when the sink completes
+    private final long[] entityCounts = new long[EntityType.values().length];
+
+    protected EntityCopySink(CopyTarget target) {
+        this(target, null);
+    }
+
+    /**
+     * @param target The target for the table rows
+     * @param nodeLocations Store for the node locations, or null if the sink doesn't
+     *     need to resolve the locations of way nodes
+     */
+    protected EntityCopySink(CopyTarget target, MappedNodeLocationStore nodeLocations) {
+        this(target, nodeLocations, ProjectionProfile.FULL);
+    }
+
+    /**
+     * @param target The target for the table rows
+     * @param nodeLocations Store for the node locations, or null if the sink doesn't
+     *     need to resolve the locations of way nodes
+     * @param profile The data that is stored
+     */
+    protected EntityCopySink(CopyTarget target, MappedNodeLocationStore nodeLocations, ProjectionProfile profile) {
+        super();
+        this.userWriter = profile.isMetadata() ? target.getRowWriter("users") : null;
+        this.nodeLocations = nodeLocations;
+        this.profile = profile;
+    }
+
+    @Override
+    public void initialize(Map<String, Object> metaData) {
+        // Nothing to initialize
+    }
+
+    @Override
+    public void process(EntityContainer entityContainer) {
+        entityCounts[entityContainer.getEntity().getType().ordinal()]++;
+        entityContainer.process(this);
+    }
+
+    @Override
+    public void process(BoundContainer bound) {
+        // Bounds are not stored in the database
+    }
+
+    @Override
+    public void complete() {
+        // The target completes the underlying streams
+        for (var type : EntityType.values()) {
+            if (type != EntityType.Bound && entityCounts[type.ordinal()] > 0) {
+                OsmMetrics.decodedEntities(type.name().toLowerCase()).increment(entityCounts[type.ordinal()]);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        // The target releases the underlying streams
+        if (nodeLocations != null) {
+            nodeLocations.close();
+        }
+    }
+
+    /**
+     * Remember the location of a node for the ways that follow it.
+     */
+    protected void storeLocation(Node node) {
+        if (nodeLocations != null) {
+            nodeLocations.put(node.getId(), node.getLongitude(), node.getLatitude());
+        }
+    }
+
+    /**
+     * Write a users row the first time a user is encountered.
+     */
+    protected void writeUser(OsmUser user) {
+        if (userWriter == null || user.equals(OsmUser.NONE) || !userIds.add(user.getId())) {
+            return;
+        }
+        userWriter.writeField(user.getId());
+        userWriter.writeField(user.getName());
+        userWriter.endRow();
+    }
+
+    /**
+     * Write the id and the metadata columns that the entity tables have in common:
+     * id, version, user_id, tstamp and changeset_id. Only id and tstamp are written
+     * when the profile has no metadata.
+     */
+    protected void writeEntityFields(RowWriter writer, Entity entity) {
+        writer.writeField(entity.getId());
+        if (profile.isMetadata()) {
+            writer.writeField(entity.getVersion());
+            writer.writeField(entity.getUser().getId());
+        }
+        writer.writeTimestamp(entity.getTimestamp());
+        if (profile.isMetadata()) {
+            writer.writeField(entity.getChangesetId());
+        }
+    }
+
+    /**
+     * @return The tags of an entity that are stored
+     */
+    protected Collection<Tag> getTags(Entity entity) {
+        return profile.filterTags(entity.getTags());
+    }
+
+    public static char getMemberType(EntityType entityType) {
+        switch (entityType) {
+        case Node:
+            return 'N';
+        case Way:
+            return 'W';
+        case Relation:
+            return 'R';
+        default:
+            throw new IllegalArgumentException(String.format("Unsupported member type: %s.", entityType));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package nl.osmdata.copy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A byte range of a COPY text file that starts and ends on a row boundary.
+ * Rows in the COPY text format never contain an unescaped newline, so every
+ * newline in the file ends a row.
+ */
+public class FileRegion {
+    private final File file;
+    private final long start;
+    private final long end;
+
+    public FileRegion(File file, long start, long end) {
+        super();
+        this.file = file;
+        this.start = start;
+        this.end = end;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getLength() {
+        return end - start;
+    }
+
+    /**
+     * Split a file in regions of approximately chunkSize bytes.
+     *
+     * @param file The COPY text file
+     * @param chunkSize The preferred size of the regions
+     * @return The regions. A file smaller than chunkSize results in a single region.
+     * @throws IOException
+     */
+    public static List<FileRegion> split(File file, long chunkSize) throws IOException {
+        var regions = new ArrayList<FileRegion>();
+        try (var raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            long start = 0;
+            while (length - start > chunkSize) {
+                long end = nextRowStart(raf, start + chunkSize);
+                if (end >= length) {
+                    break;
+                }
+                regions.add(new FileRegion(file, start, end));
+                start = end;
+            }
+            regions.add(new FileRegion(file, start, length));
+        }
+        return regions;
+    }
+
+    /**
+     * Open a stream that reads the bytes of this region only.
+     */
+    public InputStream openStream() throws IOException {
+        var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        channel.position(start);
+        var in = Channels.newInputStream(channel);
+        return new InputStream() {
+            private long remaining = end - start;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = in.read();
+                if (b >= 0) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int n = in.read(b, off, (int) Math.min(len, remaining));
+                if (n > 0) {
+                    remaining -= n;
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    private static long nextRowStart(RandomAccessFile raf, long position) throws IOException {
+        var channel = raf.getChannel();
+        var buffer = ByteBuffer.allocate(64 * 1024);
+        long pos = position;
+        while (true) {
+            buffer.clear();
+            int n = channel.read(buffer, pos);
+            if (n <= 0) {
+                return raf.length();
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+    }
+}
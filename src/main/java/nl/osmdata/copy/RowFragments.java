@@ -0,0 +1,102 @@
+package nl.osmdata.copy;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copy target that keeps the encoded rows of every table in memory.
+ *
+ * Rows can be encoded on any thread into a set of fragments. The fragments are then
+ * appended to the real target with writeTo, which only copies bytes.
+ */
+public class RowFragments implements CopyTarget {
+    private final CopyFormat format;
+    private final Map<String, Buffer> buffers = new LinkedHashMap<>();
+    private final Map<String, RowWriter> writers = new LinkedHashMap<>();
+
+    public RowFragments(CopyFormat format) {
+        super();
+        this.format = format;
+    }
+
+    @Override
+    public RowWriter getRowWriter(String tableName) {
+        return writers.computeIfAbsent(tableName, table -> {
+            var buffer = new Buffer();
+            buffers.put(table, buffer);
+            return format.createFragmentWriter(buffer);
+        });
+    }
+
+    @Override
+    public CopyFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * The total size of the encoded rows in bytes.
+     */
+    public long getSize() {
+        long size = 0;
+        for (var buffer : buffers.values()) {
+            size += buffer.size();
+        }
+        return size;
+    }
+
+    /**
+     * The tables that have rows.
+     */
+    public List<String> getTableNames() {
+        var tableNames = new ArrayList<String>();
+        buffers.forEach((table, buffer) -> {
+            if (buffer.size() > 0) {
+                tableNames.add(table);
+            }
+        });
+        return tableNames;
+    }
+
+    /**
+     * Append the rows of one table to a writer with the same format.
+     */
+    public void writeTo(String tableName, RowWriter writer) {
+        var buffer = buffers.get(tableName);
+        if (buffer != null && buffer.size() > 0) {
+            writer.writeRows(buffer.array(), 0, buffer.size());
+        }
+    }
+
+    /**
+     * Remove all rows, so the fragments can be filled again.
+     */
+    public void clear() {
+        buffers.values().forEach(ByteArrayOutputStream::reset);
+    }
+
+    /**
+     * Append the rows of all tables to a target with the same format.
+     */
+    public void writeTo(CopyTarget target) {
+        for (var entry : buffers.entrySet()) {
+            var buffer = entry.getValue();
+            if (buffer.size() > 0) {
+                target.getRowWriter(entry.getKey()).writeRows(buffer.array(), 0, buffer.size());
+            }
+        }
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+
+        public Buffer() {
+            super(64 * 1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package nl.osmdata.copy;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+/**
+ * Writer for the rows of a single table in one of the Postgresql COPY formats.
+ * The fields of a row are written in the column order of the table, followed by a
+ * call to endRow.
+ */
+public interface RowWriter extends AutoCloseable {
+
+    public void writeField(long value);
+
+    public void writeField(int value);
+
+    public void writeField(char value);
+
+    public void writeField(String value);
+
+    public default void writeTimestamp(Date timestamp) {
+        writeTimestamp(timestamp.getTime());
+    }
+
+    /**
+     * Write a timestamp given in milliseconds since the unix epoch.
+     */
+    public void writeTimestamp(long epochMillis);
+
+    /**
+     * Write a collection of tags as a hstore value.
+     */
+    public void writeHstore(Collection<Tag> tags);
+
+    /**
+     * Write tags as a hstore value. The tags are given as indexes in a string table.
+     *
+     * @param strings The string table
+     * @param keys The string indexes of the keys
+     * @param values The string indexes of the values
+     * @param from The index of the first tag
+     * @param to The index after the last tag
+     */
+    public void writeHstore(String[] strings, int[] keys, int[] values, int from, int to);
+
+    /**
+     * Write the node ids of a way as a bigint array.
+     */
+    public void writeNodeIds(List<WayNode> wayNodes);
+
+    /**
+     * Write the node ids in the range [from, to) of an array as a bigint array.
+     */
+    public void writeNodeIds(long[] nodeIds, int from, int to);
+
+    /**
+     * Write a point geometry in the WGS84 coordinate system.
+     */
+    public void writePoint(double longitude, double latitude);
+
+    /**
+     * Write a linestring geometry in the WGS84 coordinate system.
+     *
+     * @param coordinates The longitude and latitude pairs of the points
+     * @param count The number of points
+     */
+    public void writeLineString(double[] coordinates, int count);
+
+    /**
+     * Write a bounding box as a polygon geometry in the WGS84 coordinate system.
+     */
+    public void writeBox(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude);
+
+    /**
+     * Write a NULL value.
+     */
+    public default void writeNull() {
+        writeField((String) null);
+    }
+
+    public void endRow();
+
+    /**
+     * Append rows that were encoded in the same format by a fragment writer.
+     * Must be called between rows.
+     *
+     * @see CopyFormat#createFragmentWriter(java.io.OutputStream)
+     */
+    public void writeRows(byte[] data, int offset, int length);
+
+    @Override
+    public void close() throws IOException;
+}
@@ -0,0 +1,256 @@
+package nl.osmdata.copy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.List;
+
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+/**
+ * Write rows in the Postgresql COPY text format.
+ *
+ * The field encodings match the dump files created by the Osmosis PostgreSqlDumpWriters,
+ * so the same table definitions can be used for both.
+ */
+public class TextRowWriter implements RowWriter {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    // Little endian EWKB header for a point with an SRID of 4326
+    private static final String POINT_HEADER = "0101000020E6100000";
+    private static final String LINESTRING_HEADER = "0102000020E6100000";
+    // Polygon header followed by a single ring of five points
+    private static final String BOX_HEADER = "0103000020E61000000100000005000000";
+
+    private final OutputStream out;
+    private final StringBuilder row = new StringBuilder(1024);
+    private boolean firstField = true;
+
+    public TextRowWriter(OutputStream out) {
+        super();
+        this.out = out;
+    }
+
+    @Override
+    public void writeField(long value) {
+        startField();
+        row.append(value);
+    }
+
+    @Override
+    public void writeField(int value) {
+        startField();
+        row.append(value);
+    }
+
+    @Override
+    public void writeField(char value) {
+        startField();
+        appendEscaped(String.valueOf(value));
+    }
+
+    @Override
+    public void writeField(String value) {
+        startField();
+        if (value == null) {
+            row.append("\\N");
+        } else {
+            appendEscaped(value);
+        }
+    }
+
+    @Override
+    public void writeTimestamp(long epochMillis) {
+        startField();
+        row.append(TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(epochMillis)));
+    }
+
+    @Override
+    public void writeHstore(Collection<Tag> tags) {
+        startField();
+        var hstore = new StringBuilder();
+        for (Tag tag : tags) {
+            if (hstore.length() > 0) {
+                hstore.append(", ");
+            }
+            appendHstoreString(hstore, tag.getKey());
+            hstore.append("=>");
+            appendHstoreString(hstore, tag.getValue());
+        }
+        appendEscaped(hstore);
+    }
+
+    @Override
+    public void writeHstore(String[] strings, int[] keys, int[] values, int from, int to) {
+        startField();
+        var hstore = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                hstore.append(", ");
+            }
+            appendHstoreString(hstore, strings[keys[i]]);
+            hstore.append("=>");
+            appendHstoreString(hstore, strings[values[i]]);
+        }
+        appendEscaped(hstore);
+    }
+
+    @Override
+    public void writeNodeIds(List<WayNode> wayNodes) {
+        startField();
+        row.append('{');
+        for (int i = 0; i < wayNodes.size(); i++) {
+            if (i > 0) {
+                row.append(',');
+            }
+            row.append(wayNodes.get(i).getNodeId());
+        }
+        row.append('}');
+    }
+
+    @Override
+    public void writeNodeIds(long[] nodeIds, int from, int to) {
+        startField();
+        row.append('{');
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                row.append(',');
+            }
+            row.append(nodeIds[i]);
+        }
+        row.append('}');
+    }
+
+    /**
+     * Write a point geometry as hex encoded EWKB.
+     */
+    @Override
+    public void writePoint(double longitude, double latitude) {
+        startField();
+        row.append(POINT_HEADER);
+        appendHexDouble(longitude);
+        appendHexDouble(latitude);
+    }
+
+    /**
+     * Write a linestring geometry as hex encoded EWKB.
+     */
+    @Override
+    public void writeLineString(double[] coordinates, int count) {
+        startField();
+        row.append(LINESTRING_HEADER);
+        appendHexInt(count);
+        for (int i = 0; i < count * 2; i++) {
+            appendHexDouble(coordinates[i]);
+        }
+    }
+
+    /**
+     * Write a bounding box as a hex encoded EWKB polygon.
+     */
+    @Override
+    public void writeBox(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude) {
+        startField();
+        row.append(BOX_HEADER);
+        appendHexDouble(minLongitude);
+        appendHexDouble(minLatitude);
+        appendHexDouble(minLongitude);
+        appendHexDouble(maxLatitude);
+        appendHexDouble(maxLongitude);
+        appendHexDouble(maxLatitude);
+        appendHexDouble(maxLongitude);
+        appendHexDouble(minLatitude);
+        appendHexDouble(minLongitude);
+        appendHexDouble(minLatitude);
+    }
+
+    @Override
+    public void endRow() {
+        row.append('\n');
+        try {
+            out.write(row.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        row.setLength(0);
+        firstField = true;
+    }
+
+    @Override
+    public void writeRows(byte[] data, int offset, int length) {
+        try {
+            out.write(data, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void startField() {
+        if (firstField) {
+            firstField = false;
+        } else {
+            row.append('\t');
+        }
+    }
+
+    private void appendEscaped(CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+                row.append("\\\\");
+                break;
+            case '\t':
+                row.append("\\t");
+                break;
+            case '\n':
+                row.append("\\n");
+                break;
+            case '\r':
+                row.append("\\r");
+                break;
+            default:
+                row.append(c);
+            }
+        }
+    }
+
+    private static void appendHstoreString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    private void appendHexInt(int value) {
+        for (int i = 0; i < 4; i++) {
+            int b = (value >>> (8 * i)) & 0xFF;
+            row.append(HEX[b >>> 4]).append(HEX[b & 0x0F]);
+        }
+    }
+
+    private void appendHexDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        for (int i = 0; i < 8; i++) {
+            int b = (int) (bits >>> (8 * i)) & 0xFF;
+            row.append(HEX[b >>> 4]).append(HEX[b & 0x0F]);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package nl.osmdata.copy;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+import nl.osmdata.store.MappedNodeLocationStore;
+
+/**
+ * Writes the bbox and linestring columns of a way, from the locations of its nodes.
+ *
+ * Nodes without a known location are skipped, like the Osmosis way geometry builder does.
+ * The bbox is NULL when none of the nodes has a location, the linestring when fewer than
+ * two of them have one. A writer is used by one thread at a time.
+ */
+public class WayGeometryWriter {
+    private final MappedNodeLocationStore nodeLocations;
+    private final double[] lonLat = new double[2];
+    private double[] coordinates = new double[512];
+
+    public WayGeometryWriter(MappedNodeLocationStore nodeLocations) {
+        super();
+        this.nodeLocations = nodeLocations;
+    }
+
+    public void write(RowWriter writer, List<WayNode> wayNodes) {
+        int count = 0;
+        for (var wayNode : wayNodes) {
+            count = addLocation(wayNode.getNodeId(), count);
+        }
+        write(writer, count);
+    }
+
+    /**
+     * Write the geometry of the way with the node ids in the range [from, to) of an array.
+     */
+    public void write(RowWriter writer, long[] nodeIds, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            count = addLocation(nodeIds[i], count);
+        }
+        write(writer, count);
+    }
+
+    private int addLocation(long nodeId, int count) {
+        if (!nodeLocations.get(nodeId, lonLat)) {
+            return count;
+        }
+        if (count * 2 == coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+        }
+        coordinates[count * 2] = lonLat[0];
+        coordinates[count * 2 + 1] = lonLat[1];
+        return count + 1;
+    }
+
+    private void write(RowWriter writer, int count) {
+        if (count == 0) {
+            writer.writeNull();
+        } else {
+            double minLongitude = coordinates[0];
+            double minLatitude = coordinates[1];
+            double maxLongitude = minLongitude;
+            double maxLatitude = minLatitude;
+            for (int i = 1; i < count; i++) {
+                minLongitude = Math.min(minLongitude, coordinates[i * 2]);
+                maxLongitude = Math.max(maxLongitude, coordinates[i * 2]);
+                minLatitude = Math.min(minLatitude, coordinates[i * 2 + 1]);
+                maxLatitude = Math.max(maxLatitude, coordinates[i * 2 + 1]);
+            }
+            writer.writeBox(minLongitude, minLatitude, maxLongitude, maxLatitude);
+        }
+        if (count < 2) {
+            writer.writeNull();
+        } else {
+            writer.writeLineString(coordinates, count);
+        }
+    }
+}
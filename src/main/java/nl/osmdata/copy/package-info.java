@@ -0,0 +1 @@
+package nl.osmdata.copy;
\ No newline at end of file
@@ -0,0 +1,12 @@
+package nl.osmdata.extract;
+
+/**
+ * The area of an extract filter.
+ */
+public interface Area {
+
+    /**
+     * @return true if the location is inside the area
+     */
+    public boolean contains(double longitude, double latitude);
+}
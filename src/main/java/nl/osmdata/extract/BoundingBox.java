@@ -0,0 +1,49 @@
+package nl.osmdata.extract;
+
+import lombok.Getter;
+
+/**
+ * Area between a minimum and maximum longitude and latitude, borders included.
+ */
+@Getter
+public class BoundingBox implements Area {
+    private final double minLongitude;
+    private final double minLatitude;
+    private final double maxLongitude;
+    private final double maxLatitude;
+
+    public BoundingBox(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude) {
+        super();
+        if (minLongitude > maxLongitude || minLatitude > maxLatitude) {
+            throw new IllegalArgumentException(String.format("Invalid bounding box %f,%f,%f,%f.",
+                minLongitude, minLatitude, maxLongitude, maxLatitude));
+        }
+        this.minLongitude = minLongitude;
+        this.minLatitude = minLatitude;
+        this.maxLongitude = maxLongitude;
+        this.maxLatitude = maxLatitude;
+    }
+
+    /**
+     * Parse a bounding box in the form minLon,minLat,maxLon,maxLat.
+     */
+    public static BoundingBox parse(String value) {
+        var parts = value.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException(String.format(
+                "Invalid bounding box %s, expected minLon,minLat,maxLon,maxLat.", value));
+        }
+        try {
+            return new BoundingBox(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()),
+                Double.parseDouble(parts[2].trim()), Double.parseDouble(parts[3].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid bounding box %s.", value), e);
+        }
+    }
+
+    @Override
+    public boolean contains(double longitude, double latitude) {
+        return longitude >= minLongitude && longitude <= maxLongitude
+                && latitude >= minLatitude && latitude <= maxLatitude;
+    }
+}
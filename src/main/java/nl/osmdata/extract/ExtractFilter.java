@@ -0,0 +1,205 @@
+package nl.osmdata.extract;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+import org.openstreetmap.osmosis.core.task.v0_6.SinkSource;
+import org.openstreetmap.osmosis.pbf2.v0_6.PbfReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.osmdata.pbf.ParallelPbfReader;
+import nl.osmdata.pbf.PbfFileWriter;
+
+/**
+ * Filter stage that keeps the part of an extract in an area.
+ *
+ * The entities are selected in a separate pass over the pbf file: the nodes inside the
+ * area, the ways with at least one selected node and the relations with a selected member.
+ * With complete ways, all nodes of the selected ways are kept too. A relation that only
+ * has relations as members is selected when such a member comes before it in the file.
+ * The stage then passes the selected entities on to its sink.
+ */
+public class ExtractFilter implements SinkSource {
+    private Logger logger = LoggerFactory.getLogger(ExtractFilter.class);
+
+    private final Area area;
+    private final boolean completeWays;
+    private final IdSet nodes = new IdSet();
+    // Nodes outside the area that complete a selected way, they don't select ways themselves
+    private final IdSet completeWayNodes = new IdSet();
+    private final IdSet ways = new IdSet();
+    private final IdSet relations = new IdSet();
+    private Sink sink;
+
+    public ExtractFilter(Area area, boolean completeWays) {
+        super();
+        this.area = area;
+        this.completeWays = completeWays;
+    }
+
+    /**
+     * Write the part of a pbf file in an area to a new pbf file.
+     *
+     * @param inputFile The pbf file
+     * @param outputFile The filtered pbf file
+     * @param area The area to keep
+     * @param completeWays Keep all nodes of the selected ways
+     * @param threads The number of threads that decode the pbf file
+     */
+    public static void filter(File inputFile, File outputFile, Area area, boolean completeWays, int threads) {
+        var filter = new ExtractFilter(area, completeWays);
+        filter.select(inputFile, threads);
+        var header = ParallelPbfReader.readHeader(inputFile);
+        var writer = new PbfFileWriter(outputFile);
+        if (header.hasOsmosisReplicationTimestamp()) {
+            writer.setReplicationTimestamp(Instant.ofEpochSecond(header.getOsmosisReplicationTimestamp()));
+        }
+        filter.setSink(writer);
+        var pbfReader = new PbfReader(inputFile, threads);
+        pbfReader.setSink(filter);
+        pbfReader.run();
+    }
+
+    /**
+     * Select the entities of a pbf file that are kept.
+     */
+    public void select(File pbfFile, int threads) {
+        var start = Instant.now();
+        var pbfReader = new PbfReader(pbfFile, threads);
+        pbfReader.setSink(new Selector());
+        pbfReader.run();
+        logger.info("Selected {} nodes, {} ways and {} relations in {} s", nodes.size() + completeWayNodes.size(),
+            ways.size(), relations.size(), Duration.between(start, Instant.now()).getSeconds());
+    }
+
+    @Override
+    public void setSink(Sink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void initialize(Map<String, Object> metaData) {
+        sink.initialize(metaData);
+    }
+
+    @Override
+    public void process(EntityContainer entityContainer) {
+        var entity = entityContainer.getEntity();
+        boolean selected;
+        switch (entity.getType()) {
+        case Node:
+            selected = nodes.contains(entity.getId()) || completeWayNodes.contains(entity.getId());
+            break;
+        case Way:
+            selected = ways.contains(entity.getId());
+            break;
+        case Relation:
+            selected = relations.contains(entity.getId());
+            break;
+        default:
+            selected = true;
+        }
+        if (selected) {
+            sink.process(entityContainer);
+        }
+    }
+
+    @Override
+    public void complete() {
+        sink.complete();
+    }
+
+    @Override
+    public void close() {
+        sink.close();
+    }
+
+    /**
+     * Sink of the selection pass.
+     */
+    private class Selector implements Sink {
+
+        @Override
+        public void initialize(Map<String, Object> metaData) {
+            // No initialization needed
+        }
+
+        @Override
+        public void process(EntityContainer entityContainer) {
+            var entity = entityContainer.getEntity();
+            switch (entity.getType()) {
+            case Node:
+                var node = (Node) entity;
+                if (area.contains(node.getLongitude(), node.getLatitude())) {
+                    nodes.add(node.getId());
+                }
+                break;
+            case Way:
+                selectWay((Way) entity);
+                break;
+            case Relation:
+                selectRelation((Relation) entity);
+                break;
+            default:
+                break;
+            }
+        }
+
+        private void selectWay(Way way) {
+            for (var wayNode : way.getWayNodes()) {
+                if (nodes.contains(wayNode.getNodeId())) {
+                    ways.add(way.getId());
+                    if (completeWays) {
+                        for (var completeNode : way.getWayNodes()) {
+                            if (!nodes.contains(completeNode.getNodeId())) {
+                                completeWayNodes.add(completeNode.getNodeId());
+                            }
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void selectRelation(Relation relation) {
+            for (var member : relation.getMembers()) {
+                boolean selected;
+                switch (member.getMemberType()) {
+                case Node:
+                    selected = nodes.contains(member.getMemberId());
+                    break;
+                case Way:
+                    selected = ways.contains(member.getMemberId());
+                    break;
+                case Relation:
+                    selected = relations.contains(member.getMemberId());
+                    break;
+                default:
+                    selected = false;
+                }
+                if (selected) {
+                    relations.add(relation.getId());
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void complete() {
+            // The selection is complete
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+    }
+}
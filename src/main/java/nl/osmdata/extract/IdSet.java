@@ -0,0 +1,62 @@
+package nl.osmdata.extract;
+
+import java.util.Arrays;
+
+/**
+ * Compact set of entity ids.
+ *
+ * The id range is divided in pages of 65536 ids, and every page that holds an id is a
+ * bitset of 8 KB. The ids of an extract are clustered, so most pages are never allocated.
+ * Negative ids are kept in pages of their own.
+ */
+public class IdSet {
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    private long[][] pages = new long[0][];
+    private long[][] negativePages = new long[0][];
+    private long size = 0;
+
+    public void add(long id) {
+        long index = id >= 0 ? id : ~id;
+        int pageIndex = (int) (index >>> PAGE_BITS);
+        var pageArray = id >= 0 ? pages : negativePages;
+        if (pageIndex >= pageArray.length) {
+            pageArray = Arrays.copyOf(pageArray, Math.max(pageIndex + 1, pageArray.length * 2));
+            if (id >= 0) {
+                pages = pageArray;
+            } else {
+                negativePages = pageArray;
+            }
+        }
+        var page = pageArray[pageIndex];
+        if (page == null) {
+            page = new long[(1 << PAGE_BITS) / 64];
+            pageArray[pageIndex] = page;
+        }
+        int bit = (int) (index & PAGE_MASK);
+        long mask = 1L << bit;
+        if ((page[bit >>> 6] & mask) == 0) {
+            page[bit >>> 6] |= mask;
+            size++;
+        }
+    }
+
+    public boolean contains(long id) {
+        long index = id >= 0 ? id : ~id;
+        long pageIndex = index >>> PAGE_BITS;
+        var pageArray = id >= 0 ? pages : negativePages;
+        if (pageIndex >= pageArray.length || pageArray[(int) pageIndex] == null) {
+            return false;
+        }
+        int bit = (int) (index & PAGE_MASK);
+        return (pageArray[(int) pageIndex][bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * The number of ids in the set.
+     */
+    public long size() {
+        return size;
+    }
+}
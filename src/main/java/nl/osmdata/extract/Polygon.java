@@ -0,0 +1,138 @@
+package nl.osmdata.extract;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Area bounded by one or more rings, like the .poly files of Geofabrik and Osmosis.
+ *
+ * A location is inside when a ray from it crosses the rings an odd number of times,
+ * so holes need no special treatment. The edges are indexed in horizontal bands, so a
+ * test only looks at the few edges around the latitude of the location.
+ */
+public class Polygon implements Area {
+    private static final int EDGES_PER_BAND = 8;
+
+    private final BoundingBox bounds;
+    // The edges as longitude1, latitude1, longitude2, latitude2
+    private final double[] edges;
+    private final double bandHeight;
+    private final int[][] bands;
+
+    /**
+     * @param rings The rings, each as an array of longitude, latitude pairs
+     */
+    public Polygon(List<double[]> rings) {
+        super();
+        var edgeList = new ArrayList<double[]>();
+        double minLongitude = Double.MAX_VALUE;
+        double minLatitude = Double.MAX_VALUE;
+        double maxLongitude = -Double.MAX_VALUE;
+        double maxLatitude = -Double.MAX_VALUE;
+        for (var ring : rings) {
+            int points = ring.length / 2;
+            for (int i = 0; i < points; i++) {
+                int next = (i + 1) % points;
+                edgeList.add(new double[] {ring[2 * i], ring[2 * i + 1], ring[2 * next], ring[2 * next + 1]});
+                minLongitude = Math.min(minLongitude, ring[2 * i]);
+                maxLongitude = Math.max(maxLongitude, ring[2 * i]);
+                minLatitude = Math.min(minLatitude, ring[2 * i + 1]);
+                maxLatitude = Math.max(maxLatitude, ring[2 * i + 1]);
+            }
+        }
+        if (edgeList.size() < 3) {
+            throw new IllegalArgumentException("A polygon needs at least three points.");
+        }
+        bounds = new BoundingBox(minLongitude, minLatitude, maxLongitude, maxLatitude);
+        edges = new double[edgeList.size() * 4];
+        for (int i = 0; i < edgeList.size(); i++) {
+            System.arraycopy(edgeList.get(i), 0, edges, i * 4, 4);
+        }
+        int bandCount = Math.max(1, edgeList.size() / EDGES_PER_BAND);
+        bandHeight = Math.max(maxLatitude - minLatitude, Double.MIN_NORMAL) / bandCount;
+        var bandEdges = new ArrayList<List<Integer>>();
+        for (int i = 0; i < bandCount; i++) {
+            bandEdges.add(new ArrayList<>());
+        }
+        for (int i = 0; i < edgeList.size(); i++) {
+            int first = getBand(Math.min(edges[i * 4 + 1], edges[i * 4 + 3]), bandCount);
+            int last = getBand(Math.max(edges[i * 4 + 1], edges[i * 4 + 3]), bandCount);
+            for (int band = first; band <= last; band++) {
+                bandEdges.get(band).add(i);
+            }
+        }
+        bands = new int[bandCount][];
+        for (int i = 0; i < bandCount; i++) {
+            bands[i] = bandEdges.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Read a polygon file in the Osmosis .poly format: a name line, then sections of
+     * longitude latitude lines that each end with END, and a final END. Sections with a
+     * name that starts with ! are holes.
+     */
+    public static Polygon read(File polyFile) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(polyFile.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not read polygon file %s.", polyFile), e);
+        }
+        var rings = new ArrayList<double[]>();
+        int index = 1;
+        while (index < lines.size() && !lines.get(index).trim().equals("END")) {
+            var points = new ArrayList<Double>();
+            index++;
+            while (index < lines.size() && !lines.get(index).trim().equals("END")) {
+                var line = lines.get(index).trim();
+                if (!line.isEmpty()) {
+                    var values = line.split("\\s+");
+                    try {
+                        points.add(Double.parseDouble(values[0]));
+                        points.add(Double.parseDouble(values[1]));
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        throw new IllegalArgumentException(String.format("Invalid point '%s' on line %d of %s.",
+                            line, index + 1, polyFile), e);
+                    }
+                }
+                index++;
+            }
+            rings.add(points.stream().mapToDouble(Double::doubleValue).toArray());
+            index++;
+        }
+        if (index >= lines.size()) {
+            throw new IllegalArgumentException(String.format("Polygon file %s has no final END.", polyFile));
+        }
+        return new Polygon(rings);
+    }
+
+    @Override
+    public boolean contains(double longitude, double latitude) {
+        if (!bounds.contains(longitude, latitude)) {
+            return false;
+        }
+        boolean inside = false;
+        for (int edge : bands[getBand(latitude, bands.length)]) {
+            int i = edge * 4;
+            double latitude1 = edges[i + 1];
+            double latitude2 = edges[i + 3];
+            if ((latitude1 > latitude) != (latitude2 > latitude)) {
+                double crossing = edges[i] + (latitude - latitude1) * (edges[i + 2] - edges[i]) / (latitude2 - latitude1);
+                if (longitude < crossing) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    private int getBand(double latitude, int bandCount) {
+        int band = (int) ((latitude - bounds.getMinLatitude()) / bandHeight);
+        return Math.max(0, Math.min(bandCount - 1, band));
+    }
+}
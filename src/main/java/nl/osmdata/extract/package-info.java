@@ -0,0 +1,5 @@
+/**
+ * Spatial filtering of an extract before it is loaded: the areas to keep, a bounding box
+ * or a polygon from a .poly file, and the filter stage that selects the entities in them.
+ */
+package nl.osmdata.extract;
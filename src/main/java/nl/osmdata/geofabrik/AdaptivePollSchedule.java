@@ -0,0 +1,106 @@
+package nl.osmdata.geofabrik;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Decide when to poll the replication state again, based on the observed publication rhythm.
+ *
+ * The publication interval is estimated from the timestamps of consecutive states. The next
+ * poll is scheduled shortly after the next state is expected. When the expected state is
+ * late, or a poll fails, the schedule backs off from the minimum interval up to a quarter
+ * of the publication interval. Before the interval is known, it backs off up to the
+ * maximum interval.
+ */
+public class AdaptivePollSchedule {
+    // Weight of the latest observation in the interval estimate
+    private static final double SMOOTHING = 0.3;
+
+    private final Duration minInterval;
+    private final Duration maxInterval;
+    private long lastSequence = -1;
+    private Instant lastTimestamp;
+    private Duration period;
+    private int misses = 0;
+
+    /**
+     * @param minInterval The shortest time between polls
+     * @param maxInterval The longest time between polls
+     */
+    public AdaptivePollSchedule(Duration minInterval, Duration maxInterval) {
+        super();
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+    }
+
+    /**
+     * Record the outcome of a poll.
+     *
+     * @param sequence The sequence number of the state
+     * @param timestamp The timestamp of the state
+     */
+    public void observe(long sequence, Instant timestamp) {
+        if (sequence <= lastSequence) {
+            misses++;
+            return;
+        }
+        if (lastTimestamp != null && timestamp.isAfter(lastTimestamp)) {
+            var sample = Duration.between(lastTimestamp, timestamp).dividedBy(sequence - lastSequence);
+            if (period == null) {
+                period = sample;
+            } else {
+                period = Duration.ofMillis(Math.round(SMOOTHING * sample.toMillis()
+                    + (1 - SMOOTHING) * period.toMillis()));
+            }
+        }
+        lastSequence = sequence;
+        lastTimestamp = timestamp;
+        misses = 0;
+    }
+
+    /**
+     * Record a poll that failed.
+     */
+    public void failed() {
+        misses++;
+    }
+
+    /**
+     * @return The estimated publication interval, or null if it isn't known yet
+     */
+    public Duration getPeriod() {
+        return period;
+    }
+
+    /**
+     * @param now The current time
+     * @return The time to wait before the next poll
+     */
+    public Duration nextDelay(Instant now) {
+        var backOff = minInterval.multipliedBy(1L << Math.min(misses, 16));
+        if (period == null) {
+            // Until two states were seen, only the misses tell how slow the feed is
+            return clamp(backOff);
+        }
+        var expected = lastTimestamp.plus(period);
+        if (misses == 0 && now.isBefore(expected)) {
+            // Publication takes a little while after the timestamp of the state
+            var margin = min(period.dividedBy(20), Duration.ofSeconds(30));
+            return clamp(Duration.between(now, expected).plus(margin));
+        }
+        var limit = max(minInterval, period.dividedBy(4));
+        return clamp(min(backOff, limit));
+    }
+
+    private Duration clamp(Duration delay) {
+        return min(max(delay, minInterval), maxInterval);
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static Duration max(Duration a, Duration b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+}
@@ -0,0 +1,116 @@
+package nl.osmdata.geofabrik;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Input stream that keeps a raw copy of everything that is read from it.
+ *
+ * The copy is written to a part file next to the target. It is only kept when the data was
+ * read to its end. Then closing the stream copies the unread remainder, like the bytes after
+ * a gzip trailer, and moves the part file to the target, so the target only appears when it
+ * is complete. If the reader stops early, for example on a parse error, the part file is
+ * removed and the rest of the response isn't downloaded.
+ */
+class ArchivingInputStream extends FilterInputStream {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path targetPath;
+    private final Path partPath;
+    private final OutputStream copy;
+    private boolean complete = false;
+
+    public ArchivingInputStream(InputStream in, Path targetPath) throws IOException {
+        super(in);
+        this.targetPath = targetPath;
+        this.partPath = targetPath.resolveSibling(targetPath.getFileName() + ".part");
+        Files.createDirectories(targetPath.getParent());
+        this.copy = new BufferedOutputStream(Files.newOutputStream(partPath), BUFFER_SIZE);
+    }
+
+    /**
+     * Wrap the stream that decodes this stream, so the copy counts as complete when the
+     * decoded data is read to its end. A decoder like GZIPInputStream can stop before the
+     * end of this stream.
+     */
+    public InputStream completeAtEndOf(InputStream decoded) {
+        return new FilterInputStream(decoded) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b < 0) {
+                    complete = true;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n < 0) {
+                    complete = true;
+                }
+                return n;
+            }
+        };
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            copy.write(b);
+        } else {
+            complete = true;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            copy.write(b, off, n);
+        } else if (n < 0) {
+            complete = true;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes must end up in the copy too
+        return Math.max(0, read(new byte[(int) Math.min(n, 8192)]));
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (complete) {
+                in.transferTo(copy);
+                copy.close();
+                Files.move(partPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                copy.close();
+                Files.deleteIfExists(partPath);
+            }
+        } catch (IOException e) {
+            copy.close();
+            Files.deleteIfExists(partPath);
+            throw e;
+        } finally {
+            in.close();
+        }
+    }
+}
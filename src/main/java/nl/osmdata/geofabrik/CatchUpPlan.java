@@ -0,0 +1,35 @@
+package nl.osmdata.geofabrik;
+
+import java.time.Duration;
+
+import lombok.Getter;
+
+/**
+ * The way a country catches up with the server, with the estimates it is based on.
+ * An estimate is null when there was no history to base it on.
+ */
+@Getter
+public class CatchUpPlan {
+    public enum Strategy {
+        DIFFS,
+        RELOAD
+    }
+
+    private final Strategy strategy;
+    private final Duration diffEstimate;
+    private final Duration reloadEstimate;
+    private final String reason;
+
+    public CatchUpPlan(Strategy strategy, Duration diffEstimate, Duration reloadEstimate, String reason) {
+        super();
+        this.strategy = strategy;
+        this.diffEstimate = diffEstimate;
+        this.reloadEstimate = reloadEstimate;
+        this.reason = reason;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s", strategy, reason);
+    }
+}
@@ -0,0 +1,58 @@
+package nl.osmdata.geofabrik;
+
+import java.time.Duration;
+
+import nl.osmdata.geofabrik.CatchUpPlan.Strategy;
+
+/**
+ * Choose between applying the pending change sets and reloading the extract.
+ *
+ * Both costs are estimated from a size and a throughput that was measured before: the
+ * size of the pending change files and the apply throughput of earlier change sets, and
+ * the size of the extract and the throughput of the last load. A reload is only chosen
+ * when it is estimated to be faster by the reload factor, because it replaces all data
+ * of the country.
+ */
+public class CatchUpPlanner {
+    private final double reloadFactor;
+
+    /**
+     * @param reloadFactor How many times faster a reload must be estimated to be
+     */
+    public CatchUpPlanner(double reloadFactor) {
+        super();
+        this.reloadFactor = reloadFactor;
+    }
+
+    /**
+     * @param changeSets The number of pending change sets
+     * @param changeSetBytes The estimated size of the pending change files
+     * @param applyBytesPerSecond The apply throughput of earlier change sets, or null if unknown
+     * @param extractBytes The size of the extract, or null if unknown
+     * @param loadBytesPerSecond The throughput of the last load, or null if unknown
+     */
+    public CatchUpPlan plan(int changeSets, long changeSetBytes, Double applyBytesPerSecond, Long extractBytes,
+            Double loadBytesPerSecond) {
+        if (applyBytesPerSecond == null) {
+            return new CatchUpPlan(Strategy.DIFFS, null, null, String.format(
+                "%d change sets, no apply history to estimate their cost", changeSets));
+        }
+        var diffEstimate = estimate(changeSetBytes, applyBytesPerSecond);
+        if (extractBytes == null || loadBytesPerSecond == null) {
+            return new CatchUpPlan(Strategy.DIFFS, diffEstimate, null, String.format(
+                "%d change sets (%d MB) in about %d s, no load history to estimate a reload",
+                changeSets, changeSetBytes >> 20, diffEstimate.toSeconds()));
+        }
+        var reloadEstimate = estimate(extractBytes, loadBytesPerSecond);
+        var strategy = diffEstimate.toMillis() > reloadEstimate.toMillis() * reloadFactor ? Strategy.RELOAD
+                : Strategy.DIFFS;
+        return new CatchUpPlan(strategy, diffEstimate, reloadEstimate, String.format(
+            "%d change sets (%d MB) in about %d s, a reload of %d MB in about %d s, reload factor %.1f",
+            changeSets, changeSetBytes >> 20, diffEstimate.toSeconds(), extractBytes >> 20,
+            reloadEstimate.toSeconds(), reloadFactor));
+    }
+
+    private static Duration estimate(long bytes, double bytesPerSecond) {
+        return Duration.ofMillis((long) (bytes * 1000 / Math.max(bytesPerSecond, 1.0)));
+    }
+}
@@ -0,0 +1,89 @@
+package nl.osmdata.geofabrik;
+
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Download a range of change sets ahead of the sequence that is being applied.
+ *
+ * At most lookAhead sequences are downloaded or waiting at any time. The downloads run
+ * concurrently, but next() returns them strictly in sequence order.
+ *
+ * @param <T> The result of downloading a sequence
+ */
+public class ChangeSetPrefetcher<T> implements AutoCloseable {
+    private final int lastSequence;
+    private final int lookAhead;
+    private final IntFunction<T> download;
+    private final ExecutorService executor;
+    private final ArrayDeque<Future<T>> pending = new ArrayDeque<>();
+    private int nextSequence;
+    private int nextDownload;
+
+    /**
+     * @param firstSequence The first sequence number to download
+     * @param lastSequence The last sequence number to download
+     * @param lookAhead The maximum number of sequences that are downloaded in advance
+     * @param download Function that downloads a sequence
+     */
+    public ChangeSetPrefetcher(int firstSequence, int lastSequence, int lookAhead, IntFunction<T> download) {
+        super();
+        this.lastSequence = lastSequence;
+        this.lookAhead = Math.max(1, lookAhead);
+        this.download = download;
+        this.nextSequence = firstSequence;
+        this.nextDownload = firstSequence;
+        this.executor = Executors.newFixedThreadPool(this.lookAhead, runnable -> {
+            var thread = new Thread(runnable, "changeset-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean hasNext() {
+        return nextSequence <= lastSequence;
+    }
+
+    /**
+     * Wait for the download of the next sequence.
+     *
+     * @return The download result
+     */
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fill();
+        try {
+            var result = pending.poll().get();
+            nextSequence++;
+            fill();
+            return result;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(String.format("Could not download change set %d.", nextSequence), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("The download of change set %d was interrupted.", nextSequence), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void fill() {
+        while (nextDownload <= lastSequence && pending.size() < lookAhead) {
+            int sequence = nextDownload++;
+            pending.add(executor.submit(() -> download.apply(sequence)));
+        }
+    }
+}
@@ -2,12 +2,47 @@ package nl.osmdata.geofabrik;
 
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
-import lombok.Setter;
 
+/**
+ * A Geofabrik extract. It is used as a map key, so it is immutable.
+ */
 @Getter
-@Setter
 @EqualsAndHashCode
 public class Country {
-    private String country;
-    private String continent;
+    // The region path below the continent, for example germany/bayern for a sub region
+    private final String country;
+    private final String continent;
+    // The database schema with the OSM data of the country, or null for the default schema
+    private final String schema;
+
+    public Country(String continent, String country, String schema) {
+        super();
+        this.continent = continent;
+        this.country = country;
+        this.schema = schema;
+    }
+
+    /**
+     * Parse a country in the form continent/country[:schema], for example europe/netherlands:nl.
+     * The country can be a sub region, like europe/germany/bayern:bayern.
+     */
+    public static Country parse(String value) {
+        var region = value.trim();
+        String schema = null;
+        int colon = region.lastIndexOf(':');
+        if (colon >= 0) {
+            schema = region.substring(colon + 1);
+            region = region.substring(0, colon);
+        }
+        int slash = region.indexOf('/');
+        if (slash <= 0 || region.endsWith("/") || region.contains("//") || region.contains(":") || "".equals(schema)) {
+            throw new IllegalArgumentException(String.format("Invalid country: %s.", value));
+        }
+        return new Country(region.substring(0, slash), region.substring(slash + 1), schema);
+    }
+
+    @Override
+    public String toString() {
+        return continent + "/" + country;
+    }
 }
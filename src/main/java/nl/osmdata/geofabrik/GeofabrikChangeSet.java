@@ -23,6 +23,11 @@ public class GeofabrikChangeSet {
     private ZonedDateTime fileTimestamp;
     private ZonedDateTime downloadTimestamp;
     private String status;
+    // Size of the change file and time it took to apply it, for the catch-up planner
+    private Long fileSize;
+    private Long applyMillis;
+    // Why the updater chose the way it caught up at this change set
+    private String note;
     
     public GeofabrikChangeSet() {
     }
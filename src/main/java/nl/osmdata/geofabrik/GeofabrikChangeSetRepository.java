@@ -1,19 +1,54 @@
 package nl.osmdata.geofabrik;
 
+import java.util.List;
+
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 public interface GeofabrikChangeSetRepository extends CrudRepository<GeofabrikChangeSet, Long> {
     static final String LAST_UPDATE_SQL = """
-SELECT gcs.* 
+SELECT gcs.*
+FROM geofabrik_change_set gcs
+WHERE gcs.status='updated'
+ORDER BY gcs.sequence_number DESC
+LIMIT 1
+""";
+
+    static final String LAST_COUNTRY_UPDATE_SQL = """
+SELECT gcs.*
 FROM geofabrik_change_set gcs
 WHERE gcs.status='updated'
+AND gcs.continent = :continent
+AND gcs.country = :country
 ORDER BY gcs.sequence_number DESC
 LIMIT 1
+""";
+
+    static final String APPLY_HISTORY_SQL = """
+SELECT gcs.*
+FROM geofabrik_change_set gcs
+WHERE gcs.status='updated'
+AND gcs.continent = :continent
+AND gcs.country = :country
+AND gcs.file_size IS NOT NULL
+AND gcs.apply_millis IS NOT NULL
+ORDER BY gcs.sequence_number DESC
+LIMIT :limit
 """;
     
     @Query(value = LAST_UPDATE_SQL, nativeQuery = true)
     GeofabrikChangeSet getLastChangeSet();
+
+    @Query(value = LAST_COUNTRY_UPDATE_SQL, nativeQuery = true)
+    GeofabrikChangeSet getLastChangeSet(@Param("continent") String continent, @Param("country") String country);
     
+    @Query(value = APPLY_HISTORY_SQL, nativeQuery = true)
+    List<GeofabrikChangeSet> getApplyHistory(@Param("continent") String continent, @Param("country") String country,
+            @Param("limit") int limit);
+
     GeofabrikChangeSet findBySequenceNumber(Integer sequenceNumber);
+
+    GeofabrikChangeSet findByContinentAndCountryAndSequenceNumber(String continent, String country,
+            Integer sequenceNumber);
 }
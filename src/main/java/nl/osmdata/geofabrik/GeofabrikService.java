@@ -1,7 +1,11 @@
 package nl.osmdata.geofabrik;
 
+import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -10,37 +14,112 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.GZIPInputStream;
 
 import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
 import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
 import org.openstreetmap.osmosis.core.database.DatabaseType;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
 import org.openstreetmap.osmosis.xml.common.CompressionMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.inject.Inject;
+import nl.osmdata.DumpLoader;
+import nl.osmdata.LoadOptions;
+import nl.osmdata.ProjectionProfile;
+import nl.osmdata.OsmCountryDownloader;
+import nl.osmdata.PbfDownloader;
+import nl.osmdata.change.OscReader;
+import nl.osmdata.geofabrik.CatchUpPlan.Strategy;
+import nl.osmdata.metrics.OsmMetrics;
 import nl.osmdata.snapshot.SnapshotChangeHandler;
+import nl.osmdata.snapshot.SnapshotPbfDumpWriter;
+import nl.osmdata.snapshot.SnapshotSchemaHelper;
 
 @Component
 public class GeofabrikService {
-    
+    private Logger logger = LoggerFactory.getLogger(GeofabrikService.class);
+
     @Value("${geofabrik.server.root}")
     private String serverRoot;
     @Value("${geofabrik.update.state_file}")
     private String stateFileName;
-    @Value("${geofabrik.continent}")
+    @Value("${geofabrik.continent:}")
     private String continent;
-    @Value("${geofabrik.country}")
+    @Value("${geofabrik.country:}")
     private String country;
+    @Value("${geofabrik.schema:}")
+    private String schema;
+    // Countries that are updated together, in the form continent/country[:schema]. The country
+    // can be a sub region, like europe/germany/bayern.
+    @Value("${geofabrik.countries:}")
+    private String countries;
     @Value("${temp_folder}")
     private Path tempPath;
+    @Value("${geofabrik.update.prefetch:4}")
+    private int prefetch;
+    @Value("${geofabrik.update.coalesce:1}")
+    private int coalesce;
+    @Value("${geofabrik.update.batched:false}")
+    private boolean batched;
+    @Value("${geofabrik.update.streaming:false}")
+    private boolean streaming;
+    @Value("${geofabrik.update.archive:false}")
+    private boolean archive;
+    @Value("${geofabrik.update.native_parser:false}")
+    private boolean nativeParser;
+    // Limits for all countries together
+    @Value("${geofabrik.limits.http_connections:8}")
+    private int httpConnections;
+    @Value("${geofabrik.limits.db_connections:4}")
+    private int dbConnections;
+    // The data that is stored, the same for the reloads and the change sets
+    @Value("${geofabrik.projection.metadata:true}")
+    private boolean projectionMetadata;
+    @Value("${geofabrik.projection.tag_keys:}")
+    private String projectionTagKeys;
+    @Value("${geofabrik.projection.denied_tag_keys:}")
+    private String projectionDeniedTagKeys;
+    @Value("${geofabrik.projection.way_geometries:false}")
+    private boolean wayGeometries;
+    // Choose between the change sets and a reload when a country is far behind
+    @Value("${geofabrik.planner.enabled:true}")
+    private boolean plannerEnabled;
+    @Value("${geofabrik.planner.min_change_sets:24}")
+    private int plannerMinChangeSets;
+    @Value("${geofabrik.planner.reload_factor:1.5}")
+    private double reloadFactor;
+    @Value("${geofabrik.planner.samples:16}")
+    private int plannerSamples;
+    @Value("${geofabrik.planner.history:50}")
+    private int plannerHistory;
 
     @Value("${spring.datasource.url}")
     private String datasourceUrl;
@@ -52,26 +131,361 @@ public class GeofabrikService {
     
     @Inject
     private GeofabrikChangeSetRepository changeSetRepository;
+
+    // Shared between updates, so a long running updater keeps its connections open
+    private final HttpClient httpClient = HttpClient.newBuilder()
+        .connectTimeout(Duration.ofSeconds(30))
+        .build();
+    private final Map<Country, SnapshotChangeHandler> changeHandlers = new HashMap<>();
+    private Semaphore httpPermits;
+    private Semaphore dbPermits;
+    private ProjectionProfile projection;
+    private final Counter downloadedBytes = OsmMetrics.downloadBytes("changeset");
+    private final Timer downloadTime = OsmMetrics.downloadTime("changeset");
+
+    @PostConstruct
+    public void init() {
+        httpPermits = new Semaphore(httpConnections, true);
+        dbPermits = new Semaphore(dbConnections, true);
+        projection = ProjectionProfile.parse(projectionMetadata, projectionTagKeys, projectionDeniedTagKeys);
+    }
     
     /**
      * Update the Osm database to include the changes from the latest Geofabrik
      * changeSet files for the current country;
      */
     public void updateDatabase() {
-        var statePath = downloadCountryStateFile();
-        var currentState = parseState(statePath);
-        var lastChangeSet = changeSetRepository.getLastChangeSet();
+        updateDatabase(getCountries().get(0));
+    }
+
+    /**
+     * Update the Osm data of a country to the latest Geofabrik change set.
+     */
+    public void updateDatabase(Country country) {
+        var statePath = downloadCountryStateFile(country);
+        updateDatabase(country, parseState(statePath));
+    }
+
+    /**
+     * The countries to update. These are the geofabrik.countries, or the single
+     * geofabrik.continent/geofabrik.country if no list is configured.
+     */
+    public List<Country> getCountries() {
+        var result = new ArrayList<Country>();
+        if (!countries.isBlank()) {
+            for (var value : countries.split(",")) {
+                result.add(Country.parse(value));
+            }
+        } else if (!country.isBlank()) {
+            result.add(new Country(continent, country, schema.isBlank() ? null : schema));
+        } else {
+            throw new IllegalStateException("No country configured, set geofabrik.country or geofabrik.countries.");
+        }
+        return result;
+    }
+
+    /**
+     * Read the current state of a country from the server, without saving it.
+     */
+    public UpdateState fetchCountryState(Country country) {
+        return readState(getCountryStateUri(country));
+    }
+
+    /**
+     * Apply the change sets of a country up to a given state.
+     *
+     * @param country The country
+     * @param currentState The state of the server
+     * @return The number of change sets that were applied. The change sets that are included
+     *     in a reload of the extract are not counted, the reload is logged by itself.
+     */
+    public int updateDatabase(Country country, UpdateState currentState) {
+        var lastChangeSet = changeSetRepository.getLastChangeSet(country.getContinent(), country.getCountry());
         if (lastChangeSet == null) {
-            throw new RuntimeException("The sequence number of the last changeSet is not known. Code" + 
-                    "to handle this issue hasn't been implemented yet");
+            lastChangeSet = bootstrap(country, currentState, null);
         }
         var firstNewChangeSet = lastChangeSet.getSequenceNumber() + 1;
         var lastNewChangeSet = currentState.getSequenceNumber().intValue();
-        for (int sequenceNumber = firstNewChangeSet; sequenceNumber<=lastNewChangeSet; sequenceNumber++) {
-            processChangeSet(sequenceNumber);
+        if (lastNewChangeSet < firstNewChangeSet) {
+            return 0;
+        }
+        int pending = lastNewChangeSet - firstNewChangeSet + 1;
+        int applied = 0;
+        String note = null;
+        if (plannerEnabled && pending >= plannerMinChangeSets) {
+            var plan = planCatchUp(country, firstNewChangeSet, lastNewChangeSet);
+            logger.info("{}: Catching up with {}", country, plan);
+            if (plan.getStrategy() == Strategy.RELOAD) {
+                lastChangeSet = reload(country, currentState, plan);
+                firstNewChangeSet = lastChangeSet.getSequenceNumber() + 1;
+            } else {
+                note = plan.toString();
+            }
+        }
+        if (firstNewChangeSet <= lastNewChangeSet) {
+            applyChangeSets(country, firstNewChangeSet, lastNewChangeSet);
+            applied = lastNewChangeSet - firstNewChangeSet + 1;
+            if (note != null) {
+                var changeSet = changeSetRepository.findByContinentAndCountryAndSequenceNumber(
+                    country.getContinent(), country.getCountry(), firstNewChangeSet);
+                changeSet.setNote(note);
+                changeSetRepository.save(changeSet);
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Estimate the cost of the change sets and of a reload of the extract.
+     */
+    private CatchUpPlan planCatchUp(Country country, int firstNewChangeSet, int lastNewChangeSet) {
+        Double applyBytesPerSecond = null;
+        long historyBytes = 0;
+        long historyMillis = 0;
+        for (var changeSet : changeSetRepository.getApplyHistory(country.getContinent(), country.getCountry(),
+                plannerHistory)) {
+            historyBytes += changeSet.getFileSize();
+            historyMillis += changeSet.getApplyMillis();
+        }
+        if (historyMillis > 0) {
+            applyBytesPerSecond = historyBytes * 1000.0 / historyMillis;
+        }
+        Long extractBytes = null;
+        Double loadBytesPerSecond = null;
+        try {
+            var baseline = readReplicationBaseline(country);
+            if (baseline != null && baseline.loadSeconds > 0) {
+                loadBytesPerSecond = baseline.pbfSize / baseline.loadSeconds;
+                extractBytes = getContentLength(getExtractUri(country));
+            }
+        } catch (RuntimeException e) {
+            logger.warn("{}: The cost of a reload can't be estimated: {}", country, e.getMessage());
+        }
+        return new CatchUpPlanner(reloadFactor).plan(lastNewChangeSet - firstNewChangeSet + 1,
+            estimateChangeSetBytes(country, firstNewChangeSet, lastNewChangeSet), applyBytesPerSecond,
+            extractBytes, loadBytesPerSecond);
+    }
+
+    /**
+     * The total size of the change files in a range. The sizes of a sample of the files
+     * are requested, and their average is used for the rest.
+     */
+    private long estimateChangeSetBytes(Country country, int firstNewChangeSet, int lastNewChangeSet) {
+        int count = lastNewChangeSet - firstNewChangeSet + 1;
+        int samples = Math.min(count, Math.max(plannerSamples, 1));
+        long bytes = 0;
+        for (int i = 0; i < samples; i++) {
+            int sequenceNumber = firstNewChangeSet + (int) ((long) i * count / samples);
+            bytes += getContentLength(getChangeSetUri(country, sequenceNumber));
+        }
+        return bytes * count / samples;
+    }
+
+    /**
+     * Replace the data of a country with a fresh load of its extract, and continue with the
+     * change sets after it.
+     *
+     * @return The change set that is included in the new extract
+     */
+    private GeofabrikChangeSet reload(Country country, UpdateState currentState, CatchUpPlan plan) {
+        // The change handler has statements on the tables that are replaced
+        synchronized (changeHandlers) {
+            var changeHandler = changeHandlers.remove(country);
+            if (changeHandler != null) {
+                changeHandler.close();
+            }
+        }
+        var options = new LoadOptions();
+        options.setStreaming(true);
+        options.setNativeDecoder(true);
+        options.setProjection(projection);
+        options.setWayGeometries(wayGeometries);
+        if (country.getSchema() != null) {
+            // The readers of the schema keep the old data until the new data is complete
+            options.setSchema(country.getSchema());
+            options.setBlueGreen(true);
+        }
+        var start = Instant.now();
+        var pbfFile = downloadExtract(country, options);
+        try {
+            // The load opens a connection per table when it streams, so it takes as many permits
+            var schemaHelper = new SnapshotSchemaHelper(wayGeometries);
+            int streamingConnections = schemaHelper.project(projection).getTables().size() + 1;
+            int connections = Math.min(dbConnections, streamingConnections);
+            if (connections < streamingConnections) {
+                // Too few connections to stream all tables at once, load dump files instead
+                options.setStreaming(false);
+            }
+            options.setLoadThreads(Math.max(1, connections - 1));
+            options.setIndexThreads(Math.max(1, connections - 1));
+            var properties = new Properties();
+            properties.setProperty("user", username);
+            properties.setProperty("password", password);
+            var dumpLoader = new DumpLoader(datasourceUrl, properties, schemaHelper, options);
+            var downloader = new OsmCountryDownloader(new SnapshotPbfDumpWriter(options), dumpLoader, options);
+            withDbPermits(connections, () -> downloader.load(pbfFile, start));
+        } finally {
+            try {
+                Files.deleteIfExists(pbfFile.toPath());
+            } catch (@SuppressWarnings("unused") IOException e) {
+                logger.warn("{}: Could not remove the extract {}", country, pbfFile);
+            }
+        }
+        var changeSet = bootstrap(country, currentState, plan.toString());
+        logger.info("{}: Reloaded the extract up to sequence {}", country, changeSet.getSequenceNumber());
+        return changeSet;
+    }
+
+    /**
+     * Download the extract of a country for a reload. The range requests count against the
+     * limit on HTTP connections, the download doesn't hold a database connection.
+     */
+    private File downloadExtract(Country country, LoadOptions options) {
+        var uri = getExtractUri(country);
+        int connections = Math.min(httpConnections, options.getDownloadConnections());
+        var pbfFile = tempPath.resolve(String.format("%s/%s-latest.osm.pbf", country.getContinent(),
+            country.getCountry())).toFile();
+        try {
+            httpPermits.acquire(connections);
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("The download of (%s) was interrupted unexpectedly.", uri));
+        }
+        try {
+            Files.createDirectories(pbfFile.toPath().getParent());
+            new PbfDownloader(connections).download(uri.toURL(), pbfFile);
+            return pbfFile;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("The download of (%s) failed with exception:%s.", uri, e.getMessage()));
+        } finally {
+            httpPermits.release(connections);
+        }
+    }
+
+    private void applyChangeSets(Country country, int firstNewChangeSet, int lastNewChangeSet) {
+        // The upcoming change sets are downloaded while the current one is applied
+        try (var prefetcher = new ChangeSetPrefetcher<>(firstNewChangeSet, lastNewChangeSet, prefetch,
+                sequenceNumber -> downloadChangeSet(country, sequenceNumber))) {
+            while (prefetcher.hasNext()) {
+                if (coalesce > 1) {
+                    var batch = new ArrayList<DownloadedChangeSet>();
+                    while (prefetcher.hasNext() && batch.size() < coalesce) {
+                        batch.add(prefetcher.next());
+                    }
+                    processChangeSets(country, batch);
+                } else {
+                    processChangeSet(country, prefetcher.next());
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the database connections that are kept between updates.
+     */
+    @PreDestroy
+    public void close() {
+        synchronized (changeHandlers) {
+            changeHandlers.values().forEach(SnapshotChangeHandler::close);
+            changeHandlers.clear();
         }
     }
 
+    /**
+     * Record the last change set that is included in the loaded extract, as the first
+     * update of a country after a load.
+     * The replication timestamp of the extract is read from the replication_baseline table
+     * that is written by the load. If the extract has no sequence number, the matching
+     * change set is found with a binary search over the state files.
+     *
+     * @param note Why the extract was loaded, or null
+     */
+    private GeofabrikChangeSet bootstrap(Country country, UpdateState currentState, String note) {
+        var baseline = readReplicationBaseline(country);
+        if (baseline == null) {
+            throw new RuntimeException(String.format(
+                "The replication baseline of %s is empty, load an extract with a replication timestamp.", country));
+        }
+        int sequenceNumber;
+        if (baseline.sequenceNumber != null) {
+            sequenceNumber = baseline.sequenceNumber.intValue();
+        } else {
+            sequenceNumber = findSequenceNumber(country, baseline.timestamp, currentState);
+        }
+        logger.info("{}: The extract of {} includes the change sets up to sequence {}", country,
+            baseline.timestamp, sequenceNumber);
+        var changeSet = changeSetRepository.findByContinentAndCountryAndSequenceNumber(country.getContinent(),
+            country.getCountry(), sequenceNumber);
+        if (changeSet == null) {
+            changeSet = new GeofabrikChangeSet(country.getContinent(), country.getCountry(), sequenceNumber);
+        }
+        changeSet.setFileTimestamp(baseline.timestamp);
+        changeSet.setDownloadTimestamp(ZonedDateTime.now(ZoneId.of("GMT")));
+        changeSet.setStatus("updated");
+        changeSet.setNote(note);
+        return changeSetRepository.save(changeSet);
+    }
+
+    /**
+     * Find the last change set with a state timestamp that is not after the given timestamp.
+     * The state timestamps increase with the sequence number, so this takes about log2(n)
+     * requests for n change sets. 0 means that all change sets are newer.
+     */
+    private int findSequenceNumber(Country country, ZonedDateTime timestamp, UpdateState currentState) {
+        int low = 0;
+        int high = currentState.getSequenceNumber().intValue();
+        if (!currentState.getTimeStamp().isAfter(timestamp)) {
+            return high;
+        }
+        // The change set at low is included in the extract, the one at high isn't
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            var state = readState(getChangeSetStateUri(country, middle));
+            if (state.getTimeStamp().isAfter(timestamp)) {
+                high = middle;
+            } else {
+                low = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Read the replication state of the extract from the database of a country.
+     *
+     * @return The baseline, or null if the table is empty
+     */
+    private ReplicationBaseline readReplicationBaseline(Country country) {
+        try (var connection = DriverManager.getConnection(datasourceUrl, username, password);
+                var stmt = connection.createStatement()) {
+            if (country.getSchema() != null) {
+                stmt.execute(String.format("SET search_path TO \"%s\", public",
+                    country.getSchema().replace("\"", "\"\"")));
+            }
+            try (var result = stmt.executeQuery(
+                    "SELECT tstamp, sequence_number, pbf_size, load_seconds FROM replication_baseline")) {
+                if (!result.next()) {
+                    return null;
+                }
+                var timestamp = result.getObject(1, LocalDateTime.class).atZone(ZoneId.of("GMT"));
+                long sequenceNumber = result.getLong(2);
+                return new ReplicationBaseline(timestamp, result.wasNull() ? null : sequenceNumber,
+                    result.getLong(3), result.getDouble(4));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(String.format(
+                "The replication baseline of %s could not be read.", country), e);
+        }
+    }
+
+    private DatabaseLoginCredentials getCredentials(Country country) {
+        var dbCredentials = getCredentials();
+        if (country.getSchema() != null) {
+            dbCredentials.setPostgresSchema(country.getSchema());
+        }
+        return dbCredentials;
+    }
+
     private DatabaseLoginCredentials getCredentials() {
         var parts = datasourceUrl.split(":");
         var database = parts[2];
@@ -90,49 +504,166 @@ public class GeofabrikService {
         return new DatabaseLoginCredentials("localhost", database, username, password, true, false, dbType);
     }
 
-    private void processChangeSet(int sequenceNumber) {
-        var changeSet = changeSetRepository.findBySequenceNumber(sequenceNumber);
-        if (changeSet == null) {
-            changeSet = new GeofabrikChangeSet(continent, country, sequenceNumber);
+    /**
+     * Download the state file and the change file of a change set.
+     * Runs on the prefetch threads, so it doesn't touch the database.
+     * In streaming mode only the state is read. The change file is streamed into the
+     * database when the change set is applied.
+     */
+    private DownloadedChangeSet downloadChangeSet(Country country, int sequenceNumber) {
+        if (streaming) {
+            var updateState = readState(getChangeSetStateUri(country, sequenceNumber));
+            return new DownloadedChangeSet(sequenceNumber, updateState, null,
+                ZonedDateTime.now(ZoneId.of("GMT")));
         }
-        changeSet = changeSetRepository.save(changeSet);
-        Path stateFile;
-        Path changeSetFile;
         try {
-            stateFile = downloadChangeSetStateFile(sequenceNumber);
+            var stateFile = downloadChangeSetStateFile(country, sequenceNumber);
             var updateState = parseState(stateFile);
-            changeSetFile = downloadChangeSetFile(sequenceNumber);
+            var changeSetFile = downloadChangeSetFile(country, sequenceNumber);
             var attributes = Files.readAttributes(changeSetFile, BasicFileAttributes.class);
             var timestamp = ZonedDateTime.ofInstant(attributes.creationTime().toInstant(), ZoneId.of("GMT"));
-            changeSet.setDownloadTimestamp(timestamp);
-            changeSet.setFileTimestamp(updateState.getTimeStamp());
-            changeSet.setStatus("downloaded");
-            changeSetRepository.save(changeSet);
+            return new DownloadedChangeSet(sequenceNumber, updateState, changeSetFile, timestamp);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+    }
+
+    /**
+     * Create the reader for the changes of a change set. In streaming mode the change file
+     * is parsed while it is downloaded. A raw copy is only kept when archiving is enabled.
+     */
+    private RunnableChangeSource createChangeReader(Country country, SnapshotChangeHandler changeHandler,
+            DownloadedChangeSet downloaded) {
+        if (downloaded.changeSetFile != null) {
+            return changeHandler.createChangeReader(downloaded.changeSetFile.toFile());
+        }
+        var archivePath = archive ? getChangeSetTargetPath(country, downloaded.sequenceNumber) : null;
+        return new StreamingChangeReader(getChangeSetUri(country, downloaded.sequenceNumber), archivePath);
+    }
+
+    private void processChangeSet(Country country, DownloadedChangeSet downloaded) {
+        var changeSet = saveDownloaded(country, downloaded);
         try {
-            var dbCredentials = getCredentials();
-            var changeHandler = new SnapshotChangeHandler(CompressionMethod.GZip);
-            changeHandler.writeChange(changeSetFile.toFile(), dbCredentials);
+            var dbCredentials = getCredentials(country);
+            var changeHandler = getChangeHandler(country);
+            var changeReader = createChangeReader(country, changeHandler, downloaded);
+            var applyTime = withDbPermit(country, () -> changeHandler.writeChange(changeReader, dbCredentials));
+            changeSet.setFileSize(getFileSize(downloaded, changeReader));
+            changeSet.setApplyMillis(applyTime.toMillis());
             changeSet.setStatus("updated");
             changeSetRepository.save(changeSet);
+            OsmMetrics.setReplicationTimestamp(country.toString(), downloaded.updateState.getTimeStamp().toInstant());
         } catch (OsmosisRuntimeException e) {
             throw e;
         }
     }
 
+    private SnapshotChangeHandler getChangeHandler(Country country) {
+        synchronized (changeHandlers) {
+            return changeHandlers.computeIfAbsent(country,
+                key -> new SnapshotChangeHandler(CompressionMethod.GZip, batched, nativeParser, projection,
+                    wayGeometries));
+        }
+    }
+
+    /**
+     * Run a database update within the global limit on database connections.
+     * The time of the update, without the wait for a connection, is recorded as the
+     * apply time of the country.
+     *
+     * @return The time of the update
+     */
+    private Duration withDbPermit(Country country, Runnable update) {
+        var applyTime = withDbPermits(1, update);
+        OsmMetrics.applyTime(country.toString()).record(applyTime);
+        return applyTime;
+    }
+
+    /**
+     * Run a database task that opens several connections within the global limit.
+     */
+    private Duration withDbPermits(int permits, Runnable update) {
+        try {
+            dbPermits.acquire(permits);
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a database connection.");
+        }
+        try {
+            var start = Instant.now();
+            update.run();
+            return Duration.between(start, Instant.now());
+        } finally {
+            dbPermits.release(permits);
+        }
+    }
+
+    /**
+     * The size of an applied change file, as downloaded or as streamed.
+     */
+    private static long getFileSize(DownloadedChangeSet downloaded, RunnableChangeSource changeReader) {
+        if (changeReader instanceof StreamingChangeReader streamingReader) {
+            return streamingReader.getBytes();
+        }
+        try {
+            return Files.size(downloaded.changeSetFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Record a change set with the status 'downloaded'.
+     */
+    private GeofabrikChangeSet saveDownloaded(Country country, DownloadedChangeSet downloaded) {
+        var changeSet = changeSetRepository.findByContinentAndCountryAndSequenceNumber(country.getContinent(),
+            country.getCountry(), downloaded.sequenceNumber);
+        if (changeSet == null) {
+            changeSet = new GeofabrikChangeSet(country.getContinent(), country.getCountry(), downloaded.sequenceNumber);
+        }
+        changeSet.setDownloadTimestamp(downloaded.downloadTimestamp);
+        changeSet.setFileTimestamp(downloaded.updateState.getTimeStamp());
+        changeSet.setStatus("downloaded");
+        return changeSetRepository.save(changeSet);
+    }
+
+    /**
+     * Apply a batch of consecutive change sets as a single net change.
+     * The change sets are marked as updated together, after the net change was applied.
+     */
+    private void processChangeSets(Country country, List<DownloadedChangeSet> batch) {
+        var changeHandler = getChangeHandler(country);
+        var changeSets = new ArrayList<GeofabrikChangeSet>();
+        var changeReaders = new ArrayList<RunnableChangeSource>();
+        for (var downloaded : batch) {
+            changeSets.add(saveDownloaded(country, downloaded));
+            changeReaders.add(createChangeReader(country, changeHandler, downloaded));
+        }
+        var applyTime = withDbPermit(country, () -> changeHandler.writeCoalesced(changeReaders, getCredentials(country)));
+        // The apply time of the net change is divided over the change sets by size
+        long batchSize = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            changeSets.get(i).setFileSize(getFileSize(batch.get(i), changeReaders.get(i)));
+            batchSize += changeSets.get(i).getFileSize();
+        }
+        for (var changeSet : changeSets) {
+            changeSet.setApplyMillis(batchSize == 0 ? 0 : applyTime.toMillis() * changeSet.getFileSize() / batchSize);
+            changeSet.setStatus("updated");
+        }
+        changeSetRepository.saveAll(changeSets);
+        var lastState = batch.get(batch.size() - 1).updateState;
+        OsmMetrics.setReplicationTimestamp(country.toString(), lastState.getTimeStamp().toInstant());
+    }
+
     /**
      * Download a file containing the state for the current country (state.txt)
      * and save it in a temporary location.
      * 
      * @return The path to the downloaded state file.
      */
-    private Path downloadCountryStateFile() {
-        var source = String.format("http://%s/%s/%s-updates/%s", 
-                serverRoot, continent, country, stateFileName);
-        var uri = createURI(source);
-        var targetName = String.format("%s/%s/%s", continent, country, stateFileName);
+    private Path downloadCountryStateFile(Country country) {
+        var uri = getCountryStateUri(country);
+        var targetName = String.format("%s/%s/%s", country.getContinent(), country.getCountry(), stateFileName);
         var targetPath = tempPath.resolve(targetName);
         return downloadFile(uri, targetPath);
     }
@@ -143,63 +674,193 @@ public class GeofabrikService {
      * 
      * @return The path to the downloaded state file.
      */
-    private Path downloadChangeSetStateFile(Integer sequenceNumber) {
-        long units = Math.floorMod(sequenceNumber, 1000);
-
-        var source = String.format("%s/%03d.state.txt", getSourceFolder(sequenceNumber), units);
-        var uri = createURI(source);
-        var targetName =String.format("%s/%s-%09d.state.txt", continent,
-                country, sequenceNumber);
+    private Path downloadChangeSetStateFile(Country country, Integer sequenceNumber) {
+        var uri = getChangeSetStateUri(country, sequenceNumber);
+        var targetName =String.format("%s/%s-%09d.state.txt", country.getContinent(),
+                country.getCountry(), sequenceNumber);
         var targetPath = tempPath.resolve(targetName);
         return downloadFile(uri, targetPath);
     }
 
-    private Path downloadChangeSetFile(Integer sequenceNumber) {
+    private Path downloadChangeSetFile(Country country, Integer sequenceNumber) {
+        return downloadFile(getChangeSetUri(country, sequenceNumber), getChangeSetTargetPath(country, sequenceNumber));
+    }
+
+    private URI getCountryStateUri(Country country) {
+        return createURI(String.format("http://%s/%s/%s-updates/%s", 
+                serverRoot, country.getContinent(), country.getCountry(), stateFileName));
+    }
+
+    private URI getExtractUri(Country country) {
+        return createURI(String.format("http://%s/%s/%s-latest.osm.pbf",
+                serverRoot, country.getContinent(), country.getCountry()));
+    }
+
+    private URI getChangeSetStateUri(Country country, Integer sequenceNumber) {
         long units = Math.floorMod(sequenceNumber, 1000);
+        return createURI(String.format("%s/%03d.state.txt", getSourceFolder(country, sequenceNumber), units));
+    }
 
-        var source = String.format("%s/%03d.osc.gz", getSourceFolder(sequenceNumber), units);
-        var uri = createURI(source);
-        var targetName =String.format("%s/%s-%09d.osc.gz", continent,
-                country, sequenceNumber);
-        var targetPath = tempPath.resolve(targetName);
-        return downloadFile(uri, targetPath);
+    private URI getChangeSetUri(Country country, Integer sequenceNumber) {
+        long units = Math.floorMod(sequenceNumber, 1000);
+        return createURI(String.format("%s/%03d.osc.gz", getSourceFolder(country, sequenceNumber), units));
+    }
+
+    private Path getChangeSetTargetPath(Country country, Integer sequenceNumber) {
+        var targetName =String.format("%s/%s-%09d.osc.gz", country.getContinent(),
+                country.getCountry(), sequenceNumber);
+        return tempPath.resolve(targetName);
+    }
+
+    private Path downloadFile(URI uri, Path targetPath) {
+        try { 
+            Files.createDirectories(targetPath.getParent());
+            try (
+                var is = openStream(uri);
+                var os = new FileOutputStream(targetPath.toFile());
+            ){
+                is.transferTo(os);
+            }
+            return targetPath;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("The download of (%s) failed with exception:%s.", uri, e.getMessage()));
+        }
+    }
+
+    /**
+     * Read a state file without saving it.
+     */
+    private UpdateState readState(URI uri) {
+        try (var reader = new InputStreamReader(openStream(uri), StandardCharsets.UTF_8)) {
+            return parseState(reader);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("The download of (%s) failed with exception:%s.", uri, e.getMessage()));
+        }
+    }
+
+    /**
+     * Request a file and return the response body, with the content encoding removed.
+     * The request counts against the global limit on HTTP connections until the
+     * returned stream is closed.
+     * The download timer records the time of the request and of the reads of the body,
+     * not the time in between. In streaming mode the changes are applied while the body is
+     * read, so that time is left out.
+     */
+    private InputStream openStream(URI uri) throws IOException {
+        acquireHttpPermit(uri);
+        var permit = new AtomicBoolean(true);
+        Runnable release = () -> {
+            if (permit.getAndSet(false)) {
+                httpPermits.release();
+            }
+        };
+        try {
+            long start = System.nanoTime();
+            var body = sendRequest(uri);
+            long requestNanos = System.nanoTime() - start;
+            return new FilterInputStream(body) {
+                private long downloadNanos = requestNanos;
+
+                @Override
+                public int read() throws IOException {
+                    long readStart = System.nanoTime();
+                    int b = super.read();
+                    downloadNanos += System.nanoTime() - readStart;
+                    if (b >= 0) {
+                        downloadedBytes.increment();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    long readStart = System.nanoTime();
+                    int n = super.read(b, off, len);
+                    downloadNanos += System.nanoTime() - readStart;
+                    if (n > 0) {
+                        downloadedBytes.increment(n);
+                    }
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (permit.get()) {
+                            downloadTime.record(downloadNanos, TimeUnit.NANOSECONDS);
+                        }
+                        release.run();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            release.run();
+            throw e;
+        }
     }
 
-    private static Path downloadFile(URI uri, Path targetPath) {
-//        HttpResponse<Path> response;
+    private void acquireHttpPermit(URI uri) {
+        try {
+            httpPermits.acquire();
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("The download of (%s) was interrupted unexpectedly.", uri));
+        }
+    }
+
+    /**
+     * Request the size of a file without downloading it.
+     */
+    private long getContentLength(URI uri) {
+        acquireHttpPermit(uri);
+        try {
+            var request = HttpRequest.newBuilder()
+                .uri(uri)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+            var response = httpClient.send(request, BodyHandlers.discarding());
+            if (response.statusCode() != 200) {
+                throw new RuntimeException(String.format("The request for (%s) failed with status %d.",
+                    uri, response.statusCode()));
+            }
+            return response.headers().firstValueAsLong("Content-Length").orElseThrow(() -> new RuntimeException(
+                String.format("The size of (%s) is not known.", uri)));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("The request for (%s) failed with exception:%s.", uri, e.getMessage()));
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("The request for (%s) was interrupted unexpectedly.", uri));
+        } finally {
+            httpPermits.release();
+        }
+    }
+
+    private InputStream sendRequest(URI uri) throws IOException {
         HttpResponse<InputStream> response;
         try { 
-            HttpClient client = HttpClient.newBuilder().build();
             var request = HttpRequest.newBuilder()
                 .uri(uri)
                 .header("Accept", "text/html,application/xhtml+xml,application/xml,application/x-gzip;q=0.9,*/*;q=0.8")
                 .header("Accept-Encoding", "gzip")
                 .GET()
                 .build();
-            Files.createDirectories(targetPath.getParent());
-//            response = client.send(request, BodyHandlers.ofFile(targetPath));
             var bodyHandler = BodyHandlers.ofInputStream();
-            response = client.send(request, bodyHandler);
+            response = httpClient.send(request, bodyHandler);
             switch (response.statusCode()) {
             case 404:
-//                Files.delete(response.body());
+                response.body().close();
                 throw new RuntimeException(String.format("The requested file (%s) could not be found", uri.toString()));
-            case 200: {
-                try (
-                    var is = createInputStream(response);
-                    var os = new FileOutputStream(targetPath.toFile());
-                ){
-                    is.transferTo(os);
-                }
-                return targetPath;
-            }
+            case 200:
+                return createInputStream(response);
             default:
-                throw new RuntimeException();
+                response.body().close();
+                throw new RuntimeException(String.format("The request for (%s) failed with status %d.",
+                    uri, response.statusCode()));
             }
         } catch (@SuppressWarnings("unused") InterruptedException e) {
             throw new RuntimeException(String.format("The download of (%s) was interrupted unexpectedly.", uri));
-        } catch (IOException e) {
-            throw new RuntimeException(String.format("The download of (%s) failed with exception:%s.", uri, e.getMessage()));
         }
     }
     
@@ -216,12 +877,20 @@ public class GeofabrikService {
     }
     
     public static UpdateState parseState(Path stateFile) {
-        var state = new UpdateState();
-        String key = "unknown";
-        String value = "unknown";
         try (
             FileReader reader = new FileReader(stateFile.toFile());)
         {
+            return parseState(reader);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static UpdateState parseState(Reader reader) {
+        var state = new UpdateState();
+        String key = "unknown";
+        String value = "unknown";
+        try {
             var stateProperties = new Properties();
             stateProperties.load(reader);
             key = "sequenceNumber";
@@ -247,12 +916,126 @@ public class GeofabrikService {
         }
     }
     
-    private String getSourceFolder(Integer sequenceNumber) {
+    private String getSourceFolder(Country country, Integer sequenceNumber) {
         long millions = Math.floorDiv(sequenceNumber, 1000000);
         long thousands = Math.floorMod(Math.floorDiv(sequenceNumber, 1000), 1000);
         long units = Math.floorMod(sequenceNumber, 1000);
 
         return String.format("http://%s/%s/%s-updates/%03d/%03d", 
-                serverRoot, continent, country, millions, thousands, units);
+                serverRoot, country.getContinent(), country.getCountry(), millions, thousands, units);
+    }
+
+    /**
+     * Change source that parses a change file while it is downloaded.
+     * The raw file is copied to the archive path, when one is given.
+     */
+    private class StreamingChangeReader implements RunnableChangeSource {
+        private final URI uri;
+        private final Path archivePath;
+        private ChangeSink changeSink;
+        private long bytes;
+
+        public StreamingChangeReader(URI uri, Path archivePath) {
+            super();
+            this.uri = uri;
+            this.archivePath = archivePath;
+        }
+
+        @Override
+        public void setChangeSink(ChangeSink changeSink) {
+            this.changeSink = changeSink;
+        }
+
+        /**
+         * The number of bytes of the change file that were read.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void run() {
+            InputStream in = null;
+            try {
+                in = new FilterInputStream(openStream(uri)) {
+                    @Override
+                    public int read() throws IOException {
+                        int b = super.read();
+                        if (b >= 0) {
+                            bytes++;
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int n = super.read(b, off, len);
+                        if (n > 0) {
+                            bytes += n;
+                        }
+                        return n;
+                    }
+                };
+                ArchivingInputStream archive = null;
+                if (archivePath != null) {
+                    archive = new ArchivingInputStream(in, archivePath);
+                    in = archive;
+                }
+                in = new GZIPInputStream(in, 64 * 1024);
+                if (archive != null) {
+                    in = archive.completeAtEndOf(in);
+                }
+            } catch (IOException e) {
+                closeQuietly(in);
+                throw new RuntimeException(String.format("The download of (%s) failed with exception:%s.", uri, e.getMessage()));
+            }
+            var changeReader = new OscReader(in);
+            changeReader.setChangeSink(changeSink);
+            changeReader.run();
+        }
+
+        private static void closeQuietly(InputStream in) {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (@SuppressWarnings("unused") IOException e) {
+                    // The original exception is more relevant
+                }
+            }
+        }
+    }
+
+    /**
+     * The replication state of the loaded extract, and the size and time of its load.
+     */
+    private static class ReplicationBaseline {
+        private final ZonedDateTime timestamp;
+        private final Long sequenceNumber;
+        private final long pbfSize;
+        private final double loadSeconds;
+
+        public ReplicationBaseline(ZonedDateTime timestamp, Long sequenceNumber, long pbfSize, double loadSeconds) {
+            super();
+            this.timestamp = timestamp;
+            this.sequenceNumber = sequenceNumber;
+            this.pbfSize = pbfSize;
+            this.loadSeconds = loadSeconds;
+        }
+    }
+
+    private static class DownloadedChangeSet {
+        private final int sequenceNumber;
+        private final UpdateState updateState;
+        private final Path changeSetFile;
+        private final ZonedDateTime downloadTimestamp;
+
+        public DownloadedChangeSet(int sequenceNumber, UpdateState updateState, Path changeSetFile,
+                ZonedDateTime downloadTimestamp) {
+            super();
+            this.sequenceNumber = sequenceNumber;
+            this.updateState = updateState;
+            this.changeSetFile = changeSetFile;
+            this.downloadTimestamp = downloadTimestamp;
+        }
     }
 }
@@ -0,0 +1,125 @@
+package nl.osmdata.geofabrik;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+
+/**
+ * Long running updater that applies new change sets as soon as they are published.
+ *
+ * The state of every country is polled on an adaptive schedule. The service, its HTTP client
+ * and its database connection stay alive between updates, so an update only costs the
+ * download and the apply of the new change sets.
+ */
+@Component
+public class ReplicationDaemon {
+    private Logger logger = LoggerFactory.getLogger(ReplicationDaemon.class);
+
+    private static final long STOP_JOIN_MILLIS = 10_000;
+
+    @Value("${geofabrik.daemon.min_interval:PT10S}")
+    private Duration minInterval;
+    @Value("${geofabrik.daemon.max_interval:PT15M}")
+    private Duration maxInterval;
+
+    @Inject
+    private GeofabrikService service;
+
+    // Time for the running updates to finish when the daemon is stopped, before they are interrupted
+    @Value("${geofabrik.daemon.stop_timeout:PT60S}")
+    private Duration stopTimeout;
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+    /**
+     * Poll and update all countries until the daemon is stopped. Every country has its own
+     * poll schedule and thread.
+     */
+    public void run() {
+        logger.info("Replication daemon started");
+        for (var country : service.getCountries()) {
+            var thread = new Thread(() -> run(country), "replication-" + country.getCountry());
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (var thread : threads) {
+                thread.join();
+            }
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop();
+        }
+        logger.info("Replication daemon stopped");
+    }
+
+    private void run(Country country) {
+        var schedule = new AdaptivePollSchedule(minInterval, maxInterval);
+        while (stopped.getCount() > 0) {
+            try {
+                var state = service.fetchCountryState(country);
+                schedule.observe(state.getSequenceNumber(), state.getTimeStamp().toInstant());
+                int applied = service.updateDatabase(country, state);
+                if (applied > 0) {
+                    var lag = Duration.between(state.getTimeStamp().toInstant(), Instant.now());
+                    logger.info("{}: Applied {} change set(s) up to sequence {}, replication lag {} s", country,
+                        applied, state.getSequenceNumber(), lag.toSeconds());
+                }
+            } catch (RuntimeException e) {
+                logger.error("{}: Update failed: {}", country, e.getMessage(), e);
+                schedule.failed();
+            }
+            var delay = schedule.nextDelay(Instant.now());
+            logger.debug("{}: Next poll in {} s, publication interval {}", country, delay.toSeconds(),
+                schedule.getPeriod());
+            try {
+                stopped.await(delay.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (@SuppressWarnings("unused") InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Stop the daemon after the current updates. Updates that take longer than the stop
+     * timeout are interrupted. This returns when the country threads ended, or a while after
+     * the interrupt, so the service and the database connections are not closed under a
+     * running update.
+     */
+    @PreDestroy
+    public void stop() {
+        stopped.countDown();
+        var deadline = Instant.now().plus(stopTimeout);
+        try {
+            for (var thread : threads) {
+                thread.join(Math.max(1, Duration.between(Instant.now(), deadline).toMillis()));
+            }
+            for (var thread : threads) {
+                if (thread.isAlive()) {
+                    logger.warn("Interrupting {}, its update didn't finish in {} s", thread.getName(),
+                        stopTimeout.toSeconds());
+                    thread.interrupt();
+                    thread.join(STOP_JOIN_MILLIS);
+                    if (thread.isAlive()) {
+                        logger.warn("{} is still running after the interrupt", thread.getName());
+                    }
+                }
+            }
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
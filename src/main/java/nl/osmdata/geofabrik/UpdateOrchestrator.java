@@ -0,0 +1,60 @@
+package nl.osmdata.geofabrik;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import jakarta.inject.Inject;
+
+/**
+ * Update all configured countries concurrently.
+ *
+ * Every country is updated on its own thread. The service limits the number of HTTP
+ * connections and database connections over all countries together. A failure of one
+ * country doesn't stop the updates of the other countries.
+ */
+@Component
+public class UpdateOrchestrator {
+    private Logger logger = LoggerFactory.getLogger(UpdateOrchestrator.class);
+
+    @Inject
+    private GeofabrikService service;
+
+    /**
+     * Update all countries to the latest change set.
+     */
+    public void updateAll() {
+        var countries = service.getCountries();
+        var executor = Executors.newFixedThreadPool(countries.size());
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (var country : countries) {
+                futures.add(executor.submit(() -> service.updateDatabase(country)));
+            }
+            var failed = new ArrayList<Country>();
+            for (int i = 0; i < countries.size(); i++) {
+                var country = countries.get(i);
+                try {
+                    futures.get(i).get();
+                    logger.info("{}: Update finished", country);
+                } catch (ExecutionException e) {
+                    logger.error("{}: Update failed: {}", country, e.getCause().getMessage(), e.getCause());
+                    failed.add(country);
+                }
+            }
+            if (!failed.isEmpty()) {
+                throw new RuntimeException(String.format("The update of %s failed.", failed));
+            }
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("The update was interrupted unexpectedly.");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
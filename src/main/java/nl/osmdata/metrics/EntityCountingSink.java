@@ -0,0 +1,48 @@
+package nl.osmdata.metrics;
+
+import java.util.Map;
+
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+
+/**
+ * Counts the decoded entities on their way to an Osmosis sink, for the sinks of Osmosis
+ * itself. The counts are added to the metrics when the sink completes, like the
+ * project's own sinks do. The bounds are not counted.
+ */
+public class EntityCountingSink implements Sink {
+    private final Sink sink;
+    private final long[] entityCounts = new long[EntityType.values().length];
+
+    public EntityCountingSink(Sink sink) {
+        super();
+        this.sink = sink;
+    }
+
+    @Override
+    public void initialize(Map<String, Object> metaData) {
+        sink.initialize(metaData);
+    }
+
+    @Override
+    public void process(EntityContainer entityContainer) {
+        entityCounts[entityContainer.getEntity().getType().ordinal()]++;
+        sink.process(entityContainer);
+    }
+
+    @Override
+    public void complete() {
+        sink.complete();
+        for (var type : EntityType.values()) {
+            if (type != EntityType.Bound && entityCounts[type.ordinal()] > 0) {
+                OsmMetrics.decodedEntities(type.name().toLowerCase()).increment(entityCounts[type.ordinal()]);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        sink.close();
+    }
+}
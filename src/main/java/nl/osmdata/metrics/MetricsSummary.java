@@ -0,0 +1,133 @@
+package nl.osmdata.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Collect the meters of a single run and write them to a JSON file when the run is done.
+ *
+ * Every meter is written with its tags and statistics. Counters with a stage timer also
+ * get their rate per second, for example the rows/s of a table. The file is written when
+ * the summary is closed, also after a failed run.
+ */
+public class MetricsSummary implements AutoCloseable {
+    private Logger logger = LoggerFactory.getLogger(MetricsSummary.class);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Path summaryFile;
+    private final Instant start = Instant.now();
+
+    /**
+     * @param summaryFile The JSON file to write
+     */
+    public MetricsSummary(Path summaryFile) {
+        super();
+        this.summaryFile = summaryFile;
+        Metrics.addRegistry(registry);
+    }
+
+    @Override
+    public void close() {
+        Metrics.removeRegistry(registry);
+        try {
+            Files.writeString(summaryFile, toJson(Duration.between(start, Instant.now())));
+            logger.info("Wrote the metrics summary to {}", summaryFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not write the metrics summary %s.", summaryFile), e);
+        } finally {
+            registry.close();
+        }
+    }
+
+    private String toJson(Duration runTime) {
+        var json = new StringBuilder();
+        json.append("{\n  \"run_seconds\": ").append(format(runTime.toMillis() / 1000.0)).append(",\n");
+        json.append("  \"meters\": [");
+        var separator = "\n";
+        for (var meter : registry.getMeters()) {
+            json.append(separator).append("    {\"name\": ").append(quote(meter.getId().getName()));
+            json.append(", \"tags\": {");
+            var tagSeparator = "";
+            for (var tag : meter.getId().getTags()) {
+                json.append(tagSeparator).append(quote(tag.getKey())).append(": ").append(quote(tag.getValue()));
+                tagSeparator = ", ";
+            }
+            json.append("}");
+            for (var measurement : meter.measure()) {
+                json.append(", ").append(quote(measurement.getStatistic().getTagValueRepresentation()))
+                    .append(": ").append(format(measurement.getValue()));
+            }
+            var rate = getRate(meter);
+            if (rate != null) {
+                json.append(", \"per_second\": ").append(format(rate));
+            }
+            json.append("}");
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * The rate of a counter over the time of its stage timer with the same tags.
+     */
+    private Double getRate(Meter meter) {
+        var timerName = OsmMetrics.STAGE_TIMERS.get(meter.getId().getName());
+        if (timerName == null) {
+            return null;
+        }
+        var tags = meter.getId().getTags();
+        for (var other : registry.getMeters()) {
+            if (other instanceof Timer timer && other.getId().getName().equals(timerName)
+                    && tags.containsAll(other.getId().getTags())) {
+                double seconds = timer.totalTime(TimeUnit.SECONDS);
+                if (seconds > 0) {
+                    double count = 0;
+                    for (var measurement : meter.measure()) {
+                        count += measurement.getValue();
+                    }
+                    return count / seconds;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "null";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quote(String value) {
+        var result = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+}
@@ -0,0 +1,105 @@
+package nl.osmdata.metrics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * The meters of the stages of a load and of the replication.
+ *
+ * The meters are created in the global Micrometer registry, so the classes that aren't
+ * Spring beans can record them too. They only record something after a registry was added
+ * to the global registry, see {@link PrometheusEndpoint} and {@link MetricsSummary}.
+ * Rates like bytes/s follow from a counter and the timer of the same stage.
+ */
+public final class OsmMetrics {
+    public static final String DOWNLOAD_BYTES = "osm.download.bytes";
+    public static final String DOWNLOAD_TIME = "osm.download.time";
+    public static final String DECODE_ENTITIES = "osm.decode.entities";
+    public static final String DECODE_TIME = "osm.decode.time";
+    public static final String LOAD_ROWS = "osm.load.rows";
+    public static final String LOAD_BYTES = "osm.load.bytes";
+    public static final String LOAD_TIME = "osm.load.time";
+    public static final String INDEX_TIME = "osm.index.time";
+    public static final String APPLY_TIME = "osm.replication.apply.time";
+    public static final String REPLICATION_LAG = "osm.replication.lag";
+
+    /**
+     * The timer of the stage of each counter, to compute the rate of the counter.
+     */
+    static final Map<String, String> STAGE_TIMERS = Map.of(
+        DOWNLOAD_BYTES, DOWNLOAD_TIME,
+        DECODE_ENTITIES, DECODE_TIME,
+        LOAD_ROWS, LOAD_TIME,
+        LOAD_BYTES, LOAD_TIME);
+
+    // Timestamp (epoch ms) of the last applied state per country
+    private static final Map<String, AtomicLong> replicationTimestamps = new ConcurrentHashMap<>();
+
+    private OsmMetrics() {
+    }
+
+    /**
+     * @param source The kind of download, "pbf" or "changeset"
+     */
+    public static Counter downloadBytes(String source) {
+        return Metrics.counter(DOWNLOAD_BYTES, "source", source);
+    }
+
+    public static Timer downloadTime(String source) {
+        return Metrics.timer(DOWNLOAD_TIME, "source", source);
+    }
+
+    /**
+     * @param type The entity type, "node", "way" or "relation"
+     */
+    public static Counter decodedEntities(String type) {
+        return Metrics.counter(DECODE_ENTITIES, "type", type);
+    }
+
+    public static Timer decodeTime() {
+        return Metrics.timer(DECODE_TIME);
+    }
+
+    /**
+     * Record the load of (a part of) a table.
+     */
+    public static void recordLoad(String table, long rows, long bytes, Duration time) {
+        Metrics.counter(LOAD_ROWS, "table", table).increment(rows);
+        Metrics.counter(LOAD_BYTES, "table", table).increment(bytes);
+        Metrics.timer(LOAD_TIME, "table", table).record(time);
+    }
+
+    /**
+     * @param table The table of the index
+     * @param statement The name of the index or constraint
+     */
+    public static Timer indexTime(String table, String statement) {
+        return Metrics.timer(INDEX_TIME, "table", table, "statement", statement);
+    }
+
+    public static Timer applyTime(String country) {
+        return Metrics.timer(APPLY_TIME, "country", country);
+    }
+
+    /**
+     * Record the timestamp of the last applied state of a country. The replication lag
+     * gauge reports the time since that timestamp in seconds, so the lag keeps growing
+     * while no new change sets are applied.
+     */
+    public static void setReplicationTimestamp(String country, Instant timestamp) {
+        replicationTimestamps.computeIfAbsent(country, key -> {
+            var value = new AtomicLong();
+            Metrics.gauge(REPLICATION_LAG, Tags.of("country", key), value,
+                ts -> (System.currentTimeMillis() - ts.get()) / 1000.0);
+            return value;
+        }).set(timestamp.toEpochMilli());
+    }
+}
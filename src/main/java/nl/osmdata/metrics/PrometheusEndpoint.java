@@ -0,0 +1,60 @@
+package nl.osmdata.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+
+/**
+ * Publish the meters of the global registry on http://host:port/metrics in the
+ * Prometheus text format.
+ *
+ * The updater isn't a web application, so the endpoint is served by the HTTP server
+ * of the JDK instead of Spring Boot Actuator.
+ */
+public class PrometheusEndpoint implements AutoCloseable {
+    private Logger logger = LoggerFactory.getLogger(PrometheusEndpoint.class);
+
+    private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    private final HttpServer server;
+
+    public PrometheusEndpoint(int port) {
+        super();
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not start the metrics endpoint on port %d.", port), e);
+        }
+        server.createContext("/metrics", this::scrape);
+        server.start();
+        Metrics.addRegistry(registry);
+        logger.info("Metrics are available on http://localhost:{}/metrics", server.getAddress().getPort());
+    }
+
+    private void scrape(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", TextFormat.CONTENT_TYPE_004);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        Metrics.removeRegistry(registry);
+        registry.close();
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * Micrometer meters of the download, dump, load, index and replication stages, and the
+ * ways they are published: a Prometheus endpoint for the long running updater and a JSON
+ * summary file for a single run.
+ */
+package nl.osmdata.metrics;
@@ -0,0 +1,25 @@
+package nl.osmdata.pbf;
+
+import nl.osmdata.copy.CopyTarget;
+import nl.osmdata.store.MappedNodeLocationStore;
+
+/**
+ * Encoder of the table rows of a schema, for the entities in a decoded pbf block.
+ * The users table is written by the caller, which knows the users that were seen
+ * in earlier blocks.
+ */
+public interface BlockEncoder {
+
+    public void encode(PbfBlock block, CopyTarget target);
+
+    /**
+     * Encode the rows that need node locations, like way geometries. Called in file order,
+     * after the locations of the nodes in this block and all earlier blocks are stored.
+     *
+     * @param nodeLocations The store with the node locations, or null if they are not kept
+     */
+    public default void encodeOrdered(PbfBlock block, CopyTarget target, MappedNodeLocationStore nodeLocations) {
+        // No rows need node locations
+    }
+
+}
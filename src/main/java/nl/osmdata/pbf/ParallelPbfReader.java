@@ -0,0 +1,177 @@
+package nl.osmdata.pbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import crosby.binary.Fileformat;
+import crosby.binary.Osmformat;
+
+/**
+ * Reader for pbf files that decodes the data blocks on a fork-join pool.
+ *
+ * The file is memory-mapped, so the blobs are parsed without copying them to the heap
+ * first. Each block is decoded, and transformed by the decoder stage, on one of the
+ * pool threads. The results are passed to the ordered stage on the calling thread in
+ * the order of the blocks in the file.
+ */
+public class ParallelPbfReader {
+    private static final long WINDOW_SIZE = 1L << 30;
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+    private static final List<String> SUPPORTED_FEATURES = List.of("OsmSchema-V0.6", "DenseNodes");
+
+    private final File file;
+    private final int threads;
+    private Osmformat.HeaderBlock header;
+
+    /**
+     * @param file The pbf file
+     * @param threads The number of threads that decode blocks
+     */
+    public ParallelPbfReader(File file, int threads) {
+        super();
+        this.file = file;
+        this.threads = threads;
+    }
+
+    /**
+     * The header block of the file, or null if the header hasn't been read yet.
+     */
+    public Osmformat.HeaderBlock getHeader() {
+        return header;
+    }
+
+    /**
+     * Read only the header block of a pbf file.
+     *
+     * @param file The pbf file
+     * @return The header block
+     */
+    public static Osmformat.HeaderBlock readHeader(File file) {
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            var blobs = new BlobReader(channel);
+            var blobHeader = blobs.nextHeader();
+            if (!blobHeader.getType().equals("OSMHeader")) {
+                throw new IOException(String.format("Unexpected first blob type %s.", blobHeader.getType()));
+            }
+            return PbfBlockDecoder.decodeHeader(blobs.nextData(blobHeader.getDatasize()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not read the header of pbf file %s.", file), e);
+        }
+    }
+
+    /**
+     * Read the file.
+     *
+     * @param decoderStage Function applied to every decoded block, on a pool thread
+     * @param orderedStage Consumer of the results of the decoder stage, called in file order
+     */
+    public <T> void run(Function<PbfBlock, T> decoderStage, Consumer<T> orderedStage) {
+        var pool = new ForkJoinPool(threads);
+        var pending = new ArrayDeque<ForkJoinTask<T>>();
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            var blobs = new BlobReader(channel);
+            while (blobs.hasNext()) {
+                var blobHeader = blobs.nextHeader();
+                var data = blobs.nextData(blobHeader.getDatasize());
+                switch (blobHeader.getType()) {
+                case "OSMHeader":
+                    header = PbfBlockDecoder.decodeHeader(data);
+                    checkFeatures(header);
+                    break;
+                case "OSMData":
+                    pending.add(pool.submit(() -> decoderStage.apply(decode(data))));
+                    break;
+                default:
+                    // Unknown blob types are skipped, as the file format requires
+                }
+                while (pending.size() >= threads * 4) {
+                    orderedStage.accept(pending.poll().join());
+                }
+            }
+            while (!pending.isEmpty()) {
+                orderedStage.accept(pending.poll().join());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not read pbf file %s.", file), e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static PbfBlock decode(ByteBuffer data) {
+        try {
+            return PbfBlockDecoder.decode(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not decode pbf block.", e);
+        }
+    }
+
+    private static void checkFeatures(Osmformat.HeaderBlock header) {
+        for (String feature : header.getRequiredFeaturesList()) {
+            if (!SUPPORTED_FEATURES.contains(feature)) {
+                throw new RuntimeException(String.format("The pbf file requires the unsupported feature %s.", feature));
+            }
+        }
+    }
+
+    /**
+     * Reads the blobs of a file through a mapped window that moves over the file.
+     */
+    private static class BlobReader {
+        private final FileChannel channel;
+        private final long size;
+        private long position = 0;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        public BlobReader(FileChannel channel) throws IOException {
+            super();
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        public boolean hasNext() {
+            return position < size;
+        }
+
+        public Fileformat.BlobHeader nextHeader() throws IOException {
+            int length = next(4).getInt();
+            if (length <= 0 || length > MAX_HEADER_SIZE) {
+                throw new IOException(String.format("Invalid blob header size %d at position %d.", length, position - 4));
+            }
+            return Fileformat.BlobHeader.parseFrom(next(length));
+        }
+
+        public ByteBuffer nextData(int length) throws IOException {
+            if (length < 0 || length > MAX_BLOB_SIZE) {
+                throw new IOException(String.format("Invalid blob size %d at position %d.", length, position));
+            }
+            return next(length);
+        }
+
+        private ByteBuffer next(int length) throws IOException {
+            if (position + length > size) {
+                throw new IOException("Unexpected end of file.");
+            }
+            if (window == null || position + length > windowStart + window.capacity()) {
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+            }
+            var buffer = window.slice((int) (position - windowStart), length);
+            position += length;
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package nl.osmdata.pbf;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+import lombok.Getter;
+
+/**
+ * The contents of a decoded pbf data block, kept as primitive arrays.
+ *
+ * The tags and the role names refer to the string table of the block. The arrays can be
+ * longer than the number of used elements; the counts tell how many are valid.
+ */
+@Getter
+public class PbfBlock {
+    private final String[] strings;
+    private final Entities nodes = new Entities();
+    private final Entities ways = new Entities();
+    private final Entities relations = new Entities();
+
+    public PbfBlock(String[] strings) {
+        super();
+        this.strings = strings;
+    }
+
+    /**
+     * The columns of the nodes, ways or relations of a block.
+     *
+     * Tags are stored as key and value indexes, the tags of entity i are found in the
+     * range [getTagStart(i), getTagEnd(i)). The way node ids and the relation members
+     * are stored in the refs arrays in the same way.
+     * Nodes have their location in the latitudes and longitudes.
+     * Relation members have their type in memberTypes and their role in memberRoles.
+     */
+    @Getter
+    public static class Entities {
+        private int count = 0;
+        private long[] ids = new long[256];
+        private int[] versions = new int[256];
+        private long[] timestamps = new long[256];
+        private long[] changesets = new long[256];
+        private int[] userIds = new int[256];
+        private int[] userSids = new int[256];
+        private int[] tagStarts = new int[256];
+        private int[] refStarts = new int[256];
+        private double[] latitudes = new double[0];
+        private double[] longitudes = new double[0];
+
+        private int tagCount = 0;
+        private int[] tagKeys = new int[256];
+        private int[] tagValues = new int[256];
+
+        private int refCount = 0;
+        private long[] refs = new long[0];
+        private char[] memberTypes = new char[0];
+        private int[] memberRoles = new int[0];
+
+        public int getTagStart(int index) {
+            return tagStarts[index];
+        }
+
+        public int getTagEnd(int index) {
+            return index + 1 < count ? tagStarts[index + 1] : tagCount;
+        }
+
+        public int getRefStart(int index) {
+            return refStarts[index];
+        }
+
+        public int getRefEnd(int index) {
+            return index + 1 < count ? refStarts[index + 1] : refCount;
+        }
+
+        void addEntity(long id, int version, long timestamp, long changeset, int userId, int userSid) {
+            if (count == ids.length) {
+                int length = count * 2;
+                ids = Arrays.copyOf(ids, length);
+                versions = Arrays.copyOf(versions, length);
+                timestamps = Arrays.copyOf(timestamps, length);
+                changesets = Arrays.copyOf(changesets, length);
+                userIds = Arrays.copyOf(userIds, length);
+                userSids = Arrays.copyOf(userSids, length);
+                tagStarts = Arrays.copyOf(tagStarts, length);
+                refStarts = Arrays.copyOf(refStarts, length);
+            }
+            ids[count] = id;
+            versions[count] = version;
+            timestamps[count] = timestamp;
+            changesets[count] = changeset;
+            userIds[count] = userId;
+            userSids[count] = userSid;
+            tagStarts[count] = tagCount;
+            refStarts[count] = refCount;
+            count++;
+        }
+
+        /**
+         * Set the location of the last added node.
+         */
+        void setLocation(double latitude, double longitude) {
+            if (latitudes.length < ids.length) {
+                latitudes = Arrays.copyOf(latitudes, ids.length);
+                longitudes = Arrays.copyOf(longitudes, ids.length);
+            }
+            latitudes[count - 1] = latitude;
+            longitudes[count - 1] = longitude;
+        }
+
+        void addTag(int key, int value) {
+            if (tagCount == tagKeys.length) {
+                tagKeys = Arrays.copyOf(tagKeys, tagCount * 2);
+                tagValues = Arrays.copyOf(tagValues, tagCount * 2);
+            }
+            tagKeys[tagCount] = key;
+            tagValues[tagCount] = value;
+            tagCount++;
+        }
+
+        /**
+         * Remove the tags with a key that is not accepted, keeping the order of the others.
+         */
+        public void retainTags(IntPredicate keyFilter) {
+            int target = 0;
+            for (int i = 0; i < count; i++) {
+                int end = getTagEnd(i);
+                int start = tagStarts[i];
+                tagStarts[i] = target;
+                for (int tag = start; tag < end; tag++) {
+                    if (keyFilter.test(tagKeys[tag])) {
+                        tagKeys[target] = tagKeys[tag];
+                        tagValues[target] = tagValues[tag];
+                        target++;
+                    }
+                }
+            }
+            tagCount = target;
+        }
+
+        void addRef(long ref) {
+            if (refCount == refs.length) {
+                refs = Arrays.copyOf(refs, Math.max(1024, refCount * 2));
+            }
+            refs[refCount++] = ref;
+        }
+
+        void addMember(long memberId, char memberType, int memberRole) {
+            if (refCount == refs.length || refCount == memberTypes.length) {
+                int length = Math.max(1024, refs.length * 2);
+                refs = Arrays.copyOf(refs, length);
+                memberTypes = Arrays.copyOf(memberTypes, length);
+                memberRoles = Arrays.copyOf(memberRoles, length);
+            }
+            memberTypes[refCount] = memberType;
+            memberRoles[refCount] = memberRole;
+            refs[refCount++] = memberId;
+        }
+    }
+}
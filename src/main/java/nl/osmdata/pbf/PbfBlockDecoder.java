@@ -0,0 +1,184 @@
+package nl.osmdata.pbf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import crosby.binary.Fileformat;
+import crosby.binary.Osmformat;
+import crosby.binary.Osmformat.PrimitiveBlock;
+
+/**
+ * Decode the blobs of a pbf file into primitive arrays.
+ * The decoder is stateless, so blocks can be decoded on any number of threads.
+ */
+public class PbfBlockDecoder {
+    // Values for entities without metadata, the same as the Osmosis pbf reader uses
+    private static final int EMPTY_VERSION = -1;
+    private static final long EMPTY_TIMESTAMP = 0;
+    private static final long EMPTY_CHANGESET = -1;
+    private static final int EMPTY_USER = -1;
+
+    private PbfBlockDecoder() {
+        super();
+    }
+
+    public static Osmformat.HeaderBlock decodeHeader(ByteBuffer blobData) throws IOException {
+        return Osmformat.HeaderBlock.parseFrom(inflate(Fileformat.Blob.parseFrom(blobData)));
+    }
+
+    public static PbfBlock decode(ByteBuffer blobData) throws IOException {
+        var primitiveBlock = PrimitiveBlock.parseFrom(inflate(Fileformat.Blob.parseFrom(blobData)));
+        var stringTable = primitiveBlock.getStringtable();
+        var strings = new String[stringTable.getSCount()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = stringTable.getS(i).toStringUtf8();
+        }
+        var block = new PbfBlock(strings);
+        for (var group : primitiveBlock.getPrimitivegroupList()) {
+            if (group.hasDense()) {
+                decodeDenseNodes(primitiveBlock, group.getDense(), block.getNodes());
+            }
+            for (var node : group.getNodesList()) {
+                decodeNode(primitiveBlock, node, block.getNodes());
+            }
+            for (var way : group.getWaysList()) {
+                decodeWay(primitiveBlock, way, block.getWays());
+            }
+            for (var relation : group.getRelationsList()) {
+                decodeRelation(primitiveBlock, relation, block.getRelations());
+            }
+        }
+        return block;
+    }
+
+    private static void decodeDenseNodes(PrimitiveBlock primitiveBlock, Osmformat.DenseNodes dense, PbfBlock.Entities nodes) {
+        var info = dense.getDenseinfo();
+        boolean hasInfo = dense.hasDenseinfo() && info.getVersionCount() > 0;
+        boolean hasTags = dense.getKeysValsCount() > 0;
+        long id = 0;
+        long latitude = 0;
+        long longitude = 0;
+        long timestamp = 0;
+        long changeset = 0;
+        int userId = 0;
+        int userSid = 0;
+        int keyValue = 0;
+        for (int i = 0; i < dense.getIdCount(); i++) {
+            id += dense.getId(i);
+            latitude += dense.getLat(i);
+            longitude += dense.getLon(i);
+            if (hasInfo) {
+                timestamp += info.getTimestamp(i);
+                changeset += info.getChangeset(i);
+                userId += info.getUid(i);
+                userSid += info.getUserSid(i);
+                nodes.addEntity(id, info.getVersion(i), timestamp * primitiveBlock.getDateGranularity(), changeset,
+                    userId, userSid);
+            } else {
+                nodes.addEntity(id, EMPTY_VERSION, EMPTY_TIMESTAMP, EMPTY_CHANGESET, EMPTY_USER, EMPTY_USER);
+            }
+            nodes.setLocation(toLatitude(primitiveBlock, latitude), toLongitude(primitiveBlock, longitude));
+            if (hasTags) {
+                // The tags of the nodes are separated by a 0
+                while (dense.getKeysVals(keyValue) != 0) {
+                    nodes.addTag(dense.getKeysVals(keyValue), dense.getKeysVals(keyValue + 1));
+                    keyValue += 2;
+                }
+                keyValue++;
+            }
+        }
+    }
+
+    private static void decodeNode(PrimitiveBlock primitiveBlock, Osmformat.Node node, PbfBlock.Entities nodes) {
+        addEntity(primitiveBlock, node.getId(), node.hasInfo() ? node.getInfo() : null, nodes);
+        nodes.setLocation(toLatitude(primitiveBlock, node.getLat()), toLongitude(primitiveBlock, node.getLon()));
+        for (int i = 0; i < node.getKeysCount(); i++) {
+            nodes.addTag(node.getKeys(i), node.getVals(i));
+        }
+    }
+
+    private static void decodeWay(PrimitiveBlock primitiveBlock, Osmformat.Way way, PbfBlock.Entities ways) {
+        addEntity(primitiveBlock, way.getId(), way.hasInfo() ? way.getInfo() : null, ways);
+        for (int i = 0; i < way.getKeysCount(); i++) {
+            ways.addTag(way.getKeys(i), way.getVals(i));
+        }
+        long nodeId = 0;
+        for (int i = 0; i < way.getRefsCount(); i++) {
+            nodeId += way.getRefs(i);
+            ways.addRef(nodeId);
+        }
+    }
+
+    private static void decodeRelation(PrimitiveBlock primitiveBlock, Osmformat.Relation relation, PbfBlock.Entities relations) {
+        addEntity(primitiveBlock, relation.getId(), relation.hasInfo() ? relation.getInfo() : null, relations);
+        for (int i = 0; i < relation.getKeysCount(); i++) {
+            relations.addTag(relation.getKeys(i), relation.getVals(i));
+        }
+        long memberId = 0;
+        for (int i = 0; i < relation.getMemidsCount(); i++) {
+            memberId += relation.getMemids(i);
+            relations.addMember(memberId, getMemberType(relation.getTypes(i)), relation.getRolesSid(i));
+        }
+    }
+
+    private static void addEntity(PrimitiveBlock primitiveBlock, long id, Osmformat.Info info, PbfBlock.Entities entities) {
+        if (info == null) {
+            entities.addEntity(id, EMPTY_VERSION, EMPTY_TIMESTAMP, EMPTY_CHANGESET, EMPTY_USER, EMPTY_USER);
+        } else {
+            entities.addEntity(id, info.getVersion(), info.getTimestamp() * primitiveBlock.getDateGranularity(),
+                info.getChangeset(), info.hasUid() ? info.getUid() : EMPTY_USER, info.getUserSid());
+        }
+    }
+
+    private static char getMemberType(Osmformat.Relation.MemberType memberType) {
+        switch (memberType) {
+        case NODE:
+            return 'N';
+        case WAY:
+            return 'W';
+        case RELATION:
+            return 'R';
+        default:
+            throw new IllegalArgumentException(String.format("Unsupported member type: %s.", memberType));
+        }
+    }
+
+    private static double toLatitude(PrimitiveBlock primitiveBlock, long value) {
+        return 1e-9 * (primitiveBlock.getLatOffset() + (long) primitiveBlock.getGranularity() * value);
+    }
+
+    private static double toLongitude(PrimitiveBlock primitiveBlock, long value) {
+        return 1e-9 * (primitiveBlock.getLonOffset() + (long) primitiveBlock.getGranularity() * value);
+    }
+
+    private static ByteString inflate(Fileformat.Blob blob) throws IOException {
+        if (blob.hasRaw()) {
+            return blob.getRaw();
+        }
+        if (!blob.hasZlibData()) {
+            throw new IOException(String.format("Unsupported blob compression: %s.", blob.getDataCase()));
+        }
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(blob.getZlibData().asReadOnlyByteBuffer());
+            byte[] data = new byte[blob.getRawSize()];
+            int length = 0;
+            while (length < data.length && !inflater.finished() && !inflater.needsInput()) {
+                length += inflater.inflate(data, length, data.length - length);
+            }
+            if (length != data.length) {
+                throw new IOException("The size of the inflated blob doesn't match its header.");
+            }
+            return UnsafeByteOperations.unsafeWrap(data);
+        } catch (DataFormatException e) {
+            throw new IOException("Could not inflate blob.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
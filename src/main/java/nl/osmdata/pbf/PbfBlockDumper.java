@@ -0,0 +1,141 @@
+package nl.osmdata.pbf;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import nl.osmdata.ProjectionProfile;
+import nl.osmdata.copy.CopyTarget;
+import nl.osmdata.copy.RowFragments;
+import nl.osmdata.copy.RowWriter;
+import nl.osmdata.metrics.OsmMetrics;
+import nl.osmdata.store.MappedNodeLocationStore;
+
+/**
+ * Write the table rows of a pbf file with the native block decoder.
+ *
+ * The blocks are decoded and encoded as COPY rows on all threads of the reader. The
+ * encoded rows are appended to the target in file order, together with the users that
+ * weren't seen before and the node locations. The node locations therefore arrive
+ * sorted in the store. The tags that the projection profile doesn't store are removed
+ * from the blocks before they are encoded, and the users are only written when the
+ * profile stores the metadata. Rows that need the node locations, like way geometries,
+ * are encoded in the ordered stage, after the locations of the nodes before them are stored.
+ */
+public class PbfBlockDumper {
+    private final BlockEncoder encoder;
+    private final int threads;
+    private final ProjectionProfile profile;
+
+    public PbfBlockDumper(BlockEncoder encoder, int threads) {
+        this(encoder, threads, ProjectionProfile.FULL);
+    }
+
+    public PbfBlockDumper(BlockEncoder encoder, int threads, ProjectionProfile profile) {
+        super();
+        this.encoder = encoder;
+        this.threads = threads;
+        this.profile = profile;
+    }
+
+    /**
+     * @param pbfFile The pbf file
+     * @param target The target for the table rows
+     * @param nodeLocations Store for the node locations, or null if they are not needed
+     */
+    public void dump(File pbfFile, CopyTarget target, MappedNodeLocationStore nodeLocations) {
+        var userWriter = profile.isMetadata() ? target.getRowWriter("users") : null;
+        Set<Integer> userIds = new HashSet<>();
+        var nodeCounter = OsmMetrics.decodedEntities("node");
+        var wayCounter = OsmMetrics.decodedEntities("way");
+        var relationCounter = OsmMetrics.decodedEntities("relation");
+        var reader = new ParallelPbfReader(pbfFile, threads);
+        reader.run(block -> {
+            if (!profile.isFull()) {
+                profile.filterTags(block);
+            }
+            var fragments = new RowFragments(target.getFormat());
+            encoder.encode(block, fragments);
+            return new EncodedBlock(block, fragments, userWriter != null ? getUsers(block) : new long[0]);
+        }, encoded -> {
+            if (nodeLocations != null) {
+                storeLocations(encoded.block.getNodes(), nodeLocations);
+            }
+            if (userWriter != null) {
+                writeUsers(encoded, userIds, userWriter);
+            }
+            encoded.fragments.writeTo(target);
+            encoder.encodeOrdered(encoded.block, target, nodeLocations);
+            nodeCounter.increment(encoded.block.getNodes().getCount());
+            wayCounter.increment(encoded.block.getWays().getCount());
+            relationCounter.increment(encoded.block.getRelations().getCount());
+        });
+    }
+
+    private static void storeLocations(PbfBlock.Entities nodes, MappedNodeLocationStore nodeLocations) {
+        var ids = nodes.getIds();
+        var latitudes = nodes.getLatitudes();
+        var longitudes = nodes.getLongitudes();
+        for (int i = 0; i < nodes.getCount(); i++) {
+            nodeLocations.put(ids[i], longitudes[i], latitudes[i]);
+        }
+    }
+
+    private static void writeUsers(EncodedBlock encoded, Set<Integer> userIds, RowWriter userWriter) {
+        var strings = encoded.block.getStrings();
+        for (long user : encoded.users) {
+            int userId = (int) (user >>> 32);
+            if (userIds.add(userId)) {
+                userWriter.writeField(userId);
+                userWriter.writeField(strings[(int) user]);
+                userWriter.endRow();
+            }
+        }
+    }
+
+    /**
+     * Find the distinct users of a block, without creating an object per entity.
+     *
+     * @return The user ids in the upper and the string indexes of the names in the lower
+     *     32 bits, sorted by user id
+     */
+    private static long[] getUsers(PbfBlock block) {
+        var entities = new PbfBlock.Entities[] {block.getNodes(), block.getWays(), block.getRelations()};
+        int count = 0;
+        for (var e : entities) {
+            count += e.getCount();
+        }
+        long[] users = new long[count];
+        count = 0;
+        for (var e : entities) {
+            for (int i = 0; i < e.getCount(); i++) {
+                // Entities without a user have a negative user id
+                if (e.getUserIds()[i] >= 0) {
+                    users[count++] = ((long) e.getUserIds()[i] << 32) | (e.getUserSids()[i] & 0xFFFFFFFFL);
+                }
+            }
+        }
+        Arrays.sort(users, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || users[i] >>> 32 != users[distinct - 1] >>> 32) {
+                users[distinct++] = users[i];
+            }
+        }
+        return Arrays.copyOf(users, distinct);
+    }
+
+    private static class EncodedBlock {
+        private final PbfBlock block;
+        private final RowFragments fragments;
+        private final long[] users;
+
+        public EncodedBlock(PbfBlock block, RowFragments fragments, long[] users) {
+            super();
+            this.block = block;
+            this.fragments = fragments;
+            this.users = users;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package nl.osmdata.pbf;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+
+import crosby.binary.Osmformat;
+import crosby.binary.StringTable;
+import crosby.binary.file.BlockOutputStream;
+import crosby.binary.file.FileBlock;
+
+/**
+ * Write entities to a pbf file.
+ *
+ * The entities are collected in blocks of at most 8000 entities of the same type. Nodes
+ * are written in the dense format. All entities are written with their metadata.
+ * Bounds are not written. The replication timestamp is written to the header when it is set.
+ */
+public class PbfFileWriter implements Sink {
+    private static final int BLOCK_SIZE = 8000;
+    // Coordinates in units of 100 nanodegrees and timestamps in milliseconds, the pbf defaults
+    private static final int GRANULARITY = 100;
+    private static final int DATE_GRANULARITY = 1000;
+
+    private final File outputFile;
+    private final List<Entity> entities = new ArrayList<>(BLOCK_SIZE);
+    private BlockOutputStream output;
+    private Instant replicationTimestamp;
+
+    public PbfFileWriter(File outputFile) {
+        super();
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * @param replicationTimestamp The time up to which the file contains the changes
+     */
+    public void setReplicationTimestamp(Instant replicationTimestamp) {
+        this.replicationTimestamp = replicationTimestamp;
+    }
+
+    @Override
+    public void initialize(Map<String, Object> metaData) {
+        try {
+            output = new BlockOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
+            output.setCompress("deflate");
+            var header = Osmformat.HeaderBlock.newBuilder()
+                .addRequiredFeatures("OsmSchema-V0.6")
+                .addRequiredFeatures("DenseNodes")
+                .setWritingprogram("osm_database");
+            if (replicationTimestamp != null) {
+                header.setOsmosisReplicationTimestamp(replicationTimestamp.getEpochSecond());
+            }
+            output.write(FileBlock.newInstance("OSMHeader", header.build().toByteString(), null));
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not create pbf file %s.", outputFile), e);
+        }
+    }
+
+    @Override
+    public void process(EntityContainer entityContainer) {
+        var entity = entityContainer.getEntity();
+        if (entity.getType() == EntityType.Bound) {
+            return;
+        }
+        if (entities.size() == BLOCK_SIZE
+                || (!entities.isEmpty() && entities.get(0).getType() != entity.getType())) {
+            writeBlock();
+        }
+        entities.add(entity);
+    }
+
+    @Override
+    public void complete() {
+        if (!entities.isEmpty()) {
+            writeBlock();
+        }
+        try {
+            output.close();
+            output = null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not complete pbf file %s.", outputFile), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (@SuppressWarnings("unused") IOException e) {
+                // The incomplete file is of no use anyway
+            }
+            output = null;
+        }
+    }
+
+    private void writeBlock() {
+        var strings = new StringTable();
+        for (var entity : entities) {
+            strings.incr(entity.getUser().getName());
+            for (var tag : entity.getTags()) {
+                strings.incr(tag.getKey());
+                strings.incr(tag.getValue());
+            }
+            if (entity instanceof Relation relation) {
+                relation.getMembers().forEach(member -> strings.incr(member.getMemberRole()));
+            }
+        }
+        strings.finish();
+        var group = Osmformat.PrimitiveGroup.newBuilder();
+        switch (entities.get(0).getType()) {
+        case Node:
+            group.setDense(encodeNodes(strings));
+            break;
+        case Way:
+            entities.forEach(entity -> group.addWays(encodeWay((Way) entity, strings)));
+            break;
+        default:
+            entities.forEach(entity -> group.addRelations(encodeRelation((Relation) entity, strings)));
+            break;
+        }
+        var block = Osmformat.PrimitiveBlock.newBuilder()
+            .setStringtable(strings.serialize())
+            .addPrimitivegroup(group)
+            .setGranularity(GRANULARITY)
+            .setDateGranularity(DATE_GRANULARITY);
+        try {
+            output.write(FileBlock.newInstance("OSMData", block.build().toByteString(), null));
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not write to pbf file %s.", outputFile), e);
+        }
+        entities.clear();
+    }
+
+    private Osmformat.DenseNodes.Builder encodeNodes(StringTable strings) {
+        var dense = Osmformat.DenseNodes.newBuilder();
+        var info = Osmformat.DenseInfo.newBuilder();
+        long id = 0;
+        long latitude = 0;
+        long longitude = 0;
+        long timestamp = 0;
+        long changeset = 0;
+        int userId = 0;
+        int userSid = 0;
+        for (var entity : entities) {
+            var node = (Node) entity;
+            dense.addId(node.getId() - id);
+            id = node.getId();
+            long nodeLatitude = Math.round(node.getLatitude() * 1E9 / GRANULARITY);
+            long nodeLongitude = Math.round(node.getLongitude() * 1E9 / GRANULARITY);
+            dense.addLat(nodeLatitude - latitude);
+            dense.addLon(nodeLongitude - longitude);
+            latitude = nodeLatitude;
+            longitude = nodeLongitude;
+            long nodeTimestamp = node.getTimestamp().getTime() / DATE_GRANULARITY;
+            int nodeUserSid = strings.getIndex(node.getUser().getName());
+            info.addVersion(node.getVersion());
+            info.addTimestamp(nodeTimestamp - timestamp);
+            info.addChangeset(node.getChangesetId() - changeset);
+            info.addUid(node.getUser().getId() - userId);
+            info.addUserSid(nodeUserSid - userSid);
+            timestamp = nodeTimestamp;
+            changeset = node.getChangesetId();
+            userId = node.getUser().getId();
+            userSid = nodeUserSid;
+            for (var tag : node.getTags()) {
+                dense.addKeysVals(strings.getIndex(tag.getKey()));
+                dense.addKeysVals(strings.getIndex(tag.getValue()));
+            }
+            dense.addKeysVals(0);
+        }
+        return dense.setDenseinfo(info);
+    }
+
+    private static Osmformat.Way.Builder encodeWay(Way way, StringTable strings) {
+        var builder = Osmformat.Way.newBuilder().setId(way.getId()).setInfo(encodeInfo(way, strings));
+        for (var tag : way.getTags()) {
+            builder.addKeys(strings.getIndex(tag.getKey()));
+            builder.addVals(strings.getIndex(tag.getValue()));
+        }
+        long ref = 0;
+        for (var wayNode : way.getWayNodes()) {
+            builder.addRefs(wayNode.getNodeId() - ref);
+            ref = wayNode.getNodeId();
+        }
+        return builder;
+    }
+
+    private static Osmformat.Relation.Builder encodeRelation(Relation relation, StringTable strings) {
+        var builder = Osmformat.Relation.newBuilder().setId(relation.getId())
+            .setInfo(encodeInfo(relation, strings));
+        for (var tag : relation.getTags()) {
+            builder.addKeys(strings.getIndex(tag.getKey()));
+            builder.addVals(strings.getIndex(tag.getValue()));
+        }
+        long memberId = 0;
+        for (var member : relation.getMembers()) {
+            builder.addRolesSid(strings.getIndex(member.getMemberRole()));
+            builder.addMemids(member.getMemberId() - memberId);
+            memberId = member.getMemberId();
+            builder.addTypes(getMemberType(member.getMemberType()));
+        }
+        return builder;
+    }
+
+    private static Osmformat.Info.Builder encodeInfo(Entity entity, StringTable strings) {
+        return Osmformat.Info.newBuilder()
+            .setVersion(entity.getVersion())
+            .setTimestamp(entity.getTimestamp().getTime() / DATE_GRANULARITY)
+            .setChangeset(entity.getChangesetId())
+            .setUid(entity.getUser().getId())
+            .setUserSid(strings.getIndex(entity.getUser().getName()));
+    }
+
+    private static Osmformat.Relation.MemberType getMemberType(EntityType entityType) {
+        switch (entityType) {
+        case Node:
+            return Osmformat.Relation.MemberType.NODE;
+        case Way:
+            return Osmformat.Relation.MemberType.WAY;
+        default:
+            return Osmformat.Relation.MemberType.RELATION;
+        }
+    }
+}
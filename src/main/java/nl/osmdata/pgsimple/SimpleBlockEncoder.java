@@ -0,0 +1,100 @@
+package nl.osmdata.pgsimple;
+
+import nl.osmdata.ProjectionProfile;
+import nl.osmdata.copy.CopyTarget;
+import nl.osmdata.copy.RowWriter;
+import nl.osmdata.pbf.BlockEncoder;
+import nl.osmdata.pbf.PbfBlock;
+
+/**
+ * Encode decoded pbf blocks as COPY rows for the simple schema.
+ * The rows are the same as the ones written by the SimpleCopySink.
+ * The tags of the block are expected to be filtered on the projection profile already.
+ */
+public class SimpleBlockEncoder implements BlockEncoder {
+    private final ProjectionProfile profile;
+
+    public SimpleBlockEncoder() {
+        this(ProjectionProfile.FULL);
+    }
+
+    public SimpleBlockEncoder(ProjectionProfile profile) {
+        super();
+        this.profile = profile;
+    }
+
+    @Override
+    public void encode(PbfBlock block, CopyTarget target) {
+        var strings = block.getStrings();
+        var nodes = block.getNodes();
+        if (nodes.getCount() > 0) {
+            var nodeWriter = target.getRowWriter("nodes");
+            var nodeTagWriter = target.getRowWriter("node_tags");
+            for (int i = 0; i < nodes.getCount(); i++) {
+                writeCommonFields(nodeWriter, nodes, i);
+                nodeWriter.writePoint(nodes.getLongitudes()[i], nodes.getLatitudes()[i]);
+                nodeWriter.endRow();
+                writeTags(nodeTagWriter, strings, nodes, i);
+            }
+        }
+        var ways = block.getWays();
+        if (ways.getCount() > 0) {
+            var wayWriter = target.getRowWriter("ways");
+            var wayTagWriter = target.getRowWriter("way_tags");
+            var wayNodeWriter = target.getRowWriter("way_nodes");
+            for (int i = 0; i < ways.getCount(); i++) {
+                writeCommonFields(wayWriter, ways, i);
+                wayWriter.endRow();
+                writeTags(wayTagWriter, strings, ways, i);
+                int sequenceId = 0;
+                for (int j = ways.getRefStart(i); j < ways.getRefEnd(i); j++) {
+                    wayNodeWriter.writeField(ways.getIds()[i]);
+                    wayNodeWriter.writeField(ways.getRefs()[j]);
+                    wayNodeWriter.writeField(sequenceId++);
+                    wayNodeWriter.endRow();
+                }
+            }
+        }
+        var relations = block.getRelations();
+        if (relations.getCount() > 0) {
+            var relationWriter = target.getRowWriter("relations");
+            var relationTagWriter = target.getRowWriter("relation_tags");
+            var relationMemberWriter = target.getRowWriter("relation_members");
+            for (int i = 0; i < relations.getCount(); i++) {
+                writeCommonFields(relationWriter, relations, i);
+                relationWriter.endRow();
+                writeTags(relationTagWriter, strings, relations, i);
+                int sequenceId = 0;
+                for (int j = relations.getRefStart(i); j < relations.getRefEnd(i); j++) {
+                    relationMemberWriter.writeField(relations.getIds()[i]);
+                    relationMemberWriter.writeField(relations.getRefs()[j]);
+                    relationMemberWriter.writeField(relations.getMemberTypes()[j]);
+                    relationMemberWriter.writeField(strings[relations.getMemberRoles()[j]]);
+                    relationMemberWriter.writeField(sequenceId++);
+                    relationMemberWriter.endRow();
+                }
+            }
+        }
+    }
+
+    private void writeCommonFields(RowWriter writer, PbfBlock.Entities entities, int index) {
+        writer.writeField(entities.getIds()[index]);
+        if (profile.isMetadata()) {
+            writer.writeField(entities.getVersions()[index]);
+            writer.writeField(entities.getUserIds()[index]);
+        }
+        writer.writeTimestamp(entities.getTimestamps()[index]);
+        if (profile.isMetadata()) {
+            writer.writeField(entities.getChangesets()[index]);
+        }
+    }
+
+    private static void writeTags(RowWriter writer, String[] strings, PbfBlock.Entities entities, int index) {
+        for (int j = entities.getTagStart(index); j < entities.getTagEnd(index); j++) {
+            writer.writeField(entities.getIds()[index]);
+            writer.writeField(strings[entities.getTagKeys()[j]]);
+            writer.writeField(strings[entities.getTagValues()[j]]);
+            writer.endRow();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package nl.osmdata.pgsimple;
+
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.RelationContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+
+import nl.osmdata.ProjectionProfile;
+import nl.osmdata.copy.CopyTarget;
+import nl.osmdata.copy.EntityCopySink;
+import nl.osmdata.copy.RowWriter;
+
+/**
+ * Sink that writes entities as COPY rows for the simple schema.
+ */
+public class SimpleCopySink extends EntityCopySink {
+    private final RowWriter nodeWriter;
+    private final RowWriter nodeTagWriter;
+    private final RowWriter wayWriter;
+    private final RowWriter wayTagWriter;
+    private final RowWriter wayNodeWriter;
+    private final RowWriter relationWriter;
+    private final RowWriter relationTagWriter;
+    private final RowWriter relationMemberWriter;
+
+    public SimpleCopySink(CopyTarget target) {
+        this(target, ProjectionProfile.FULL);
+    }
+
+    /**
+     * The pgsimple schema has no way geometries, so the sink doesn't keep node locations.
+     */
+    public SimpleCopySink(CopyTarget target, ProjectionProfile profile) {
+        super(target, null, profile);
+        this.nodeWriter = target.getRowWriter("nodes");
+        this.nodeTagWriter = target.getRowWriter("node_tags");
+        this.wayWriter = target.getRowWriter("ways");
+        this.wayTagWriter = target.getRowWriter("way_tags");
+        this.wayNodeWriter = target.getRowWriter("way_nodes");
+        this.relationWriter = target.getRowWriter("relations");
+        this.relationTagWriter = target.getRowWriter("relation_tags");
+        this.relationMemberWriter = target.getRowWriter("relation_members");
+    }
+
+    @Override
+    public void process(NodeContainer nodeContainer) {
+        var node = nodeContainer.getEntity();
+        writeUser(node.getUser());
+        writeEntityFields(nodeWriter, node);
+        nodeWriter.writePoint(node.getLongitude(), node.getLatitude());
+        nodeWriter.endRow();
+        writeTags(nodeTagWriter, node);
+    }
+
+    @Override
+    public void process(WayContainer wayContainer) {
+        var way = wayContainer.getEntity();
+        writeUser(way.getUser());
+        writeEntityFields(wayWriter, way);
+        wayWriter.endRow();
+        writeTags(wayTagWriter, way);
+        int sequenceId = 0;
+        for (var wayNode : way.getWayNodes()) {
+            wayNodeWriter.writeField(way.getId());
+            wayNodeWriter.writeField(wayNode.getNodeId());
+            wayNodeWriter.writeField(sequenceId++);
+            wayNodeWriter.endRow();
+        }
+    }
+
+    @Override
+    public void process(RelationContainer relationContainer) {
+        var relation = relationContainer.getEntity();
+        writeUser(relation.getUser());
+        writeEntityFields(relationWriter, relation);
+        relationWriter.endRow();
+        writeTags(relationTagWriter, relation);
+        int sequenceId = 0;
+        for (var member : relation.getMembers()) {
+            relationMemberWriter.writeField(relation.getId());
+            relationMemberWriter.writeField(member.getMemberId());
+            relationMemberWriter.writeField(getMemberType(member.getMemberType()));
+            relationMemberWriter.writeField(member.getMemberRole());
+            relationMemberWriter.writeField(sequenceId++);
+            relationMemberWriter.endRow();
+        }
+    }
+
+    private void writeTags(RowWriter writer, Entity entity) {
+        for (Tag tag : getTags(entity)) {
+            writer.writeField(entity.getId());
+            writer.writeField(tag.getKey());
+            writer.writeField(tag.getValue());
+            writer.endRow();
+        }
+    }
+}
@@ -1,22 +1,87 @@
 package nl.osmdata.pgsimple;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 import org.openstreetmap.osmosis.pbf2.v0_6.PbfReader;
 import org.openstreetmap.osmosis.pgsimple.common.NodeLocationStoreType;
 import org.openstreetmap.osmosis.pgsimple.v0_6.PostgreSqlDumpWriter;
 
+import nl.osmdata.LoadOptions;
 import nl.osmdata.PbfDumpWriter;
+import nl.osmdata.copy.CopyFileTarget;
+import nl.osmdata.copy.CopyFormat;
+import nl.osmdata.copy.CopyTarget;
+import nl.osmdata.metrics.EntityCountingSink;
+import nl.osmdata.pbf.PbfBlockDumper;
+import nl.osmdata.store.NodeStoreType;
 
 public class SimplePbfDumpWriter implements PbfDumpWriter {
-    private final static int workers = 4; 
-    
+    private final LoadOptions options;
+
+    public SimplePbfDumpWriter() {
+        this(new LoadOptions());
+    }
+
+    public SimplePbfDumpWriter(LoadOptions options) {
+        super();
+        this.options = options;
+    }
+
     @Override
     public void writeDump(File inputFile, File outputFolder) {
-        var pbfReader = new PbfReader(inputFile, workers);
-        try (var dumpWriter = new PostgreSqlDumpWriter(outputFolder, false, false, false, NodeLocationStoreType.TempFile)) {
-            pbfReader.setSink(dumpWriter);
+        // The node store type doesn't matter here, pgsimple has no way geometries
+        if (options.getCopyFormat() != CopyFormat.TEXT || options.isNativeDecoder()
+                || !options.getProjection().isFull()) {
+            writeCopyFiles(inputFile, outputFolder);
+            return;
+        }
+        var pbfReader = new PbfReader(inputFile, options.getDecoderThreads());
+        try (var dumpWriter = new PostgreSqlDumpWriter(outputFolder, false, false, false, getOsmosisStoreType())) {
+            pbfReader.setSink(new EntityCountingSink(dumpWriter));
         }
         pbfReader.run();
     }
+
+    /**
+     * Write the dump files with the project's own sink, which supports all COPY formats
+     * and projection profiles.
+     */
+    private void writeCopyFiles(File inputFile, File outputFolder) {
+        try (var target = new CopyFileTarget(outputFolder, options.getCopyFormat())) {
+            decode(inputFile, target);
+            // Tables without rows, like the tags when the profile drops them all, still need a file
+            new SimpleSchemaHelper().project(options.getProjection()).getTables().forEach(target::getRowWriter);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the dump files.", e);
+        }
+    }
+
+    @Override
+    public void streamDump(File inputFile, CopyTarget target) {
+        decode(inputFile, target);
+    }
+
+    private void decode(File inputFile, CopyTarget target) {
+        if (options.isNativeDecoder()) {
+            new PbfBlockDumper(new SimpleBlockEncoder(options.getProjection()), options.getDecoderThreads(),
+                options.getProjection()).dump(inputFile, target, null);
+            return;
+        }
+        var pbfReader = new PbfReader(inputFile, options.getDecoderThreads());
+        pbfReader.setSink(new SimpleCopySink(target, options.getProjection()));
+        pbfReader.run();
+    }
+
+    private NodeLocationStoreType getOsmosisStoreType() {
+        switch (options.getNodeStoreType()) {
+        case IN_MEMORY:
+            return NodeLocationStoreType.InMemory;
+        case COMPACT_TEMP_FILE:
+            return NodeLocationStoreType.CompactTempFile;
+        default:
+            return NodeLocationStoreType.TempFile;
+        }
+    }
 }
@@ -29,6 +29,7 @@ DROP TABLE IF EXISTS relations;
 DROP TABLE IF EXISTS relation_members;
 DROP TABLE IF EXISTS relation_tags;
 DROP TABLE IF EXISTS schema_info;
+DROP TABLE IF EXISTS replication_baseline;
 
 -- Drop all stored procedures if they exist.
 DROP FUNCTION IF EXISTS osmosisUpdate();
@@ -116,6 +117,14 @@ CREATE TABLE relation_tags (
     v text NOT NULL
 );
 
+-- Create a table with the replication state of the loaded extract, where the updates start.
+CREATE TABLE replication_baseline (
+    tstamp timestamp without time zone NOT NULL,
+    sequence_number bigint,
+    pbf_size bigint NOT NULL,
+    load_seconds double precision NOT NULL
+);
+
 
 -- Configure the schema version.
 INSERT INTO schema_info (version) VALUES (5);""";
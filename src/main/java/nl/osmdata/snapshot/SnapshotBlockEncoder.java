@@ -0,0 +1,123 @@
+package nl.osmdata.snapshot;
+
+import nl.osmdata.ProjectionProfile;
+import nl.osmdata.copy.CopyTarget;
+import nl.osmdata.copy.RowWriter;
+import nl.osmdata.copy.WayGeometryWriter;
+import nl.osmdata.pbf.BlockEncoder;
+import nl.osmdata.pbf.PbfBlock;
+import nl.osmdata.store.MappedNodeLocationStore;
+
+/**
+ * Encode decoded pbf blocks as COPY rows for the snapshot schema.
+ * The rows are the same as the ones written by the SnapshotCopySink.
+ * The tags of the block are expected to be filtered on the projection profile already.
+ * With way geometries, the ways rows are encoded in the ordered stage, when the locations
+ * of their nodes are known.
+ */
+public class SnapshotBlockEncoder implements BlockEncoder {
+    private final ProjectionProfile profile;
+    private final boolean wayGeometries;
+
+    public SnapshotBlockEncoder() {
+        this(ProjectionProfile.FULL);
+    }
+
+    public SnapshotBlockEncoder(ProjectionProfile profile) {
+        this(profile, false);
+    }
+
+    /**
+     * @param profile The data that is stored
+     * @param wayGeometries Write the bbox and linestring columns of the ways
+     */
+    public SnapshotBlockEncoder(ProjectionProfile profile, boolean wayGeometries) {
+        super();
+        this.profile = profile;
+        this.wayGeometries = wayGeometries;
+    }
+
+    @Override
+    public void encode(PbfBlock block, CopyTarget target) {
+        var strings = block.getStrings();
+        var nodes = block.getNodes();
+        if (nodes.getCount() > 0) {
+            var nodeWriter = target.getRowWriter("nodes");
+            for (int i = 0; i < nodes.getCount(); i++) {
+                writeCommonFields(nodeWriter, strings, nodes, i);
+                nodeWriter.writePoint(nodes.getLongitudes()[i], nodes.getLatitudes()[i]);
+                nodeWriter.endRow();
+            }
+        }
+        var ways = block.getWays();
+        if (ways.getCount() > 0) {
+            var wayWriter = target.getRowWriter("ways");
+            var wayNodeWriter = target.getRowWriter("way_nodes");
+            var refs = ways.getRefs();
+            for (int i = 0; i < ways.getCount(); i++) {
+                if (!wayGeometries) {
+                    writeCommonFields(wayWriter, strings, ways, i);
+                    wayWriter.writeNodeIds(refs, ways.getRefStart(i), ways.getRefEnd(i));
+                    wayWriter.endRow();
+                }
+                int sequenceId = 0;
+                for (int j = ways.getRefStart(i); j < ways.getRefEnd(i); j++) {
+                    wayNodeWriter.writeField(ways.getIds()[i]);
+                    wayNodeWriter.writeField(refs[j]);
+                    wayNodeWriter.writeField(sequenceId++);
+                    wayNodeWriter.endRow();
+                }
+            }
+        }
+        var relations = block.getRelations();
+        if (relations.getCount() > 0) {
+            var relationWriter = target.getRowWriter("relations");
+            var relationMemberWriter = target.getRowWriter("relation_members");
+            for (int i = 0; i < relations.getCount(); i++) {
+                writeCommonFields(relationWriter, strings, relations, i);
+                relationWriter.endRow();
+                int sequenceId = 0;
+                for (int j = relations.getRefStart(i); j < relations.getRefEnd(i); j++) {
+                    relationMemberWriter.writeField(relations.getIds()[i]);
+                    relationMemberWriter.writeField(relations.getRefs()[j]);
+                    relationMemberWriter.writeField(relations.getMemberTypes()[j]);
+                    relationMemberWriter.writeField(strings[relations.getMemberRoles()[j]]);
+                    relationMemberWriter.writeField(sequenceId++);
+                    relationMemberWriter.endRow();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void encodeOrdered(PbfBlock block, CopyTarget target, MappedNodeLocationStore nodeLocations) {
+        var ways = block.getWays();
+        if (!wayGeometries || ways.getCount() == 0) {
+            return;
+        }
+        var strings = block.getStrings();
+        var refs = ways.getRefs();
+        var wayWriter = target.getRowWriter("ways");
+        var geometryWriter = new WayGeometryWriter(nodeLocations);
+        for (int i = 0; i < ways.getCount(); i++) {
+            writeCommonFields(wayWriter, strings, ways, i);
+            wayWriter.writeNodeIds(refs, ways.getRefStart(i), ways.getRefEnd(i));
+            geometryWriter.write(wayWriter, refs, ways.getRefStart(i), ways.getRefEnd(i));
+            wayWriter.endRow();
+        }
+    }
+
+    private void writeCommonFields(RowWriter writer, String[] strings, PbfBlock.Entities entities, int index) {
+        writer.writeField(entities.getIds()[index]);
+        if (profile.isMetadata()) {
+            writer.writeField(entities.getVersions()[index]);
+            writer.writeField(entities.getUserIds()[index]);
+        }
+        writer.writeTimestamp(entities.getTimestamps()[index]);
+        if (profile.isMetadata()) {
+            writer.writeField(entities.getChangesets()[index]);
+        }
+        writer.writeHstore(strings, entities.getTagKeys(), entities.getTagValues(), entities.getTagStart(index),
+            entities.getTagEnd(index));
+    }
+}
@@ -0,0 +1,384 @@
+package nl.osmdata.snapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nl.osmdata.ProjectionProfile;
+import nl.osmdata.copy.CopyFormat;
+import nl.osmdata.copy.CopyStream;
+import nl.osmdata.copy.EntityCopySink;
+import nl.osmdata.copy.RowFragments;
+import nl.osmdata.copy.RowWriter;
+
+/**
+ * Change sink that applies a change to the snapshot schema with set based statements.
+ *
+ * The changes are copied into temporary staging tables. When the change is complete, every
+ * entity type is applied with a handful of DELETE ... USING, UPDATE ... FROM and
+ * INSERT ... SELECT statements, so a large change takes a few round trips instead of
+ * several statements per entity. The way_nodes and relation_members rows of the changed
+ * ways and relations are replaced as a whole. The change is applied in a single transaction.
+ * The staging tables always have all columns; the projection profile decides which columns
+ * and tags reach the entity tables, and whether the users are stored.
+ * With way geometries, the bbox and linestring of the changed ways, and of the ways with a
+ * changed node, are rebuilt from the nodes table after the nodes and ways are applied.
+ * The net changes are recorded in the actions table before the osmosisUpdate() hook is called.
+ */
+public class SnapshotChangeApplier implements ChangeSink {
+    private Logger logger = LoggerFactory.getLogger(SnapshotChangeApplier.class);
+
+    // Staged rows are copied to the server when the buffers grow beyond this size
+    private static final long FLUSH_SIZE = 64L * 1024 * 1024;
+
+    private static final String STAGING_DDL = """
+CREATE TEMP TABLE stage_users (seq bigint, id int, name text) ON COMMIT DROP;
+CREATE TEMP TABLE stage_nodes (seq bigint, action character(1), id bigint, version int, user_id int,
+    tstamp timestamp without time zone, changeset_id bigint, tags hstore, geom geometry) ON COMMIT DROP;
+CREATE TEMP TABLE stage_ways (seq bigint, action character(1), id bigint, version int, user_id int,
+    tstamp timestamp without time zone, changeset_id bigint, tags hstore, nodes bigint[]) ON COMMIT DROP;
+CREATE TEMP TABLE stage_relations (seq bigint, action character(1), id bigint, version int, user_id int,
+    tstamp timestamp without time zone, changeset_id bigint, tags hstore) ON COMMIT DROP;
+CREATE TEMP TABLE stage_relation_members (relation_id bigint, version int, member_id bigint,
+    member_type character(1), member_role text, sequence_id int) ON COMMIT DROP""";
+
+    // An entity can be changed more than once in a change. The staged rows are numbered
+    // in the order of the changes (seq), so the last change of an entity and the last name of a user win.
+    private static final String NET_DDL = """
+CREATE TEMP TABLE net_%1$s ON COMMIT DROP AS
+    SELECT DISTINCT ON (id) * FROM stage_%1$s ORDER BY id, seq DESC;
+ANALYZE net_%1$s""";
+
+    private static final String USERS_SQL = """
+INSERT INTO users (id, name)
+SELECT DISTINCT ON (id) id, name FROM stage_users ORDER BY id, seq DESC
+ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name""";
+
+    private static final String DELETE_SQL = """
+DELETE FROM %1$s t USING net_%1$s s WHERE t.id = s.id AND s.action = 'D'""";
+
+    private static final String UPDATE_SQL = """
+UPDATE %1$s t SET %2$s
+FROM net_%1$s s WHERE t.id = s.id AND s.action <> 'D'""";
+
+    private static final String INSERT_SQL = """
+INSERT INTO %1$s (id, %2$s)
+SELECT s.id, %3$s FROM net_%1$s s
+WHERE s.action <> 'D' AND NOT EXISTS (SELECT 1 FROM %1$s t WHERE t.id = s.id)""";
+
+    private static final List<String> WAY_NODES_SQL = List.of("""
+DELETE FROM way_nodes t USING net_ways s WHERE t.way_id = s.id""", """
+INSERT INTO way_nodes (way_id, node_id, sequence_id)
+SELECT s.id, n.node_id, (n.ordinality - 1)::int
+FROM net_ways s, unnest(s.nodes) WITH ORDINALITY AS n(node_id, ordinality)
+WHERE s.action <> 'D'""");
+
+    private static final List<String> RELATION_MEMBERS_SQL = List.of("""
+DELETE FROM relation_members t USING net_relations s WHERE t.relation_id = s.id""", """
+INSERT INTO relation_members (relation_id, member_id, member_type, member_role, sequence_id)
+SELECT DISTINCT ON (m.relation_id, m.sequence_id) m.relation_id, m.member_id, m.member_type, m.member_role, m.sequence_id
+FROM stage_relation_members m
+JOIN net_relations s ON s.id = m.relation_id AND s.version = m.version
+WHERE s.action <> 'D'
+ORDER BY m.relation_id, m.sequence_id""");
+
+    // The ways that were changed or have a changed node. A node that moves changes the geometry
+    // of its ways, without a change of the ways themselves.
+    private static final List<String> WAY_GEOMETRIES_SQL = List.of("""
+CREATE TEMP TABLE geometry_ways ON COMMIT DROP AS
+SELECT id FROM net_ways WHERE action <> 'D'
+UNION
+SELECT w.way_id FROM way_nodes w JOIN net_nodes n ON w.node_id = n.id""", """
+WITH lines AS (
+    SELECT g.id, ST_MakeLine(n.geom ORDER BY w.sequence_id) AS line, count(*) AS points
+    FROM geometry_ways g
+    JOIN way_nodes w ON w.way_id = g.id
+    JOIN nodes n ON n.id = w.node_id
+    GROUP BY g.id)
+UPDATE ways t SET bbox = ST_MakeEnvelope(ST_XMin(l.line), ST_YMin(l.line), ST_XMax(l.line), ST_YMax(l.line), 4326),
+    linestring = CASE WHEN l.points > 1 THEN l.line END
+FROM geometry_ways g LEFT JOIN lines l ON l.id = g.id
+WHERE t.id = g.id""");
+
+    // The net changes for the osmosisUpdate() hook, like the Osmosis change writer records them
+    private static final List<String> ACTIONS_SQL = List.of("""
+DELETE FROM actions""", """
+INSERT INTO actions (data_type, action, id)
+SELECT 'N', action, id FROM net_nodes
+UNION ALL SELECT 'W', action, id FROM net_ways
+UNION ALL SELECT 'R', action, id FROM net_relations""");
+
+    private final Connection conn;
+    private final CopyFormat format;
+    private final ProjectionProfile profile;
+    private final boolean wayGeometries;
+    private final RowFragments fragments;
+    // The last staged name of every user, a user is only staged again when the name changed
+    private final Map<Integer, String> userNames = new HashMap<>();
+    private long changeCount = 0;
+    // The number of the next staged row
+    private long sequence = 0;
+    private boolean committed = false;
+
+    /**
+     * @param conn The database connection. It is used for the duration of one change.
+     * @param format The COPY format for the staging tables
+     */
+    public SnapshotChangeApplier(Connection conn, CopyFormat format) {
+        this(conn, format, ProjectionProfile.FULL);
+    }
+
+    /**
+     * @param conn The database connection. It is used for the duration of one change.
+     * @param format The COPY format for the staging tables
+     * @param profile The data that is stored, the same as for the load of the schema
+     */
+    public SnapshotChangeApplier(Connection conn, CopyFormat format, ProjectionProfile profile) {
+        this(conn, format, profile, false);
+    }
+
+    /**
+     * @param conn The database connection. It is used for the duration of one change.
+     * @param format The COPY format for the staging tables
+     * @param profile The data that is stored, the same as for the load of the schema
+     * @param wayGeometries Maintain the bbox and linestring columns of the ways
+     */
+    public SnapshotChangeApplier(Connection conn, CopyFormat format, ProjectionProfile profile,
+            boolean wayGeometries) {
+        super();
+        this.conn = conn;
+        this.format = format;
+        this.profile = profile;
+        this.wayGeometries = wayGeometries;
+        this.fragments = new RowFragments(format);
+    }
+
+    @Override
+    public void initialize(Map<String, Object> metaData) {
+        try {
+            conn.setAutoCommit(false);
+            execute(STAGING_DDL);
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not create the staging tables.", e);
+        }
+    }
+
+    @Override
+    public void process(ChangeContainer change) {
+        var entity = change.getEntityContainer().getEntity();
+        var action = getAction(change.getAction());
+        switch (entity.getType()) {
+        case Node: {
+            var node = (Node) entity;
+            var writer = fragments.getRowWriter("stage_nodes");
+            writeCommonFields(writer, action, node);
+            writer.writePoint(node.getLongitude(), node.getLatitude());
+            writer.endRow();
+            break;
+        }
+        case Way: {
+            var writer = fragments.getRowWriter("stage_ways");
+            writeCommonFields(writer, action, entity);
+            writer.writeNodeIds(((Way) entity).getWayNodes());
+            writer.endRow();
+            break;
+        }
+        case Relation: {
+            var writer = fragments.getRowWriter("stage_relations");
+            writeCommonFields(writer, action, entity);
+            writer.endRow();
+            var memberWriter = fragments.getRowWriter("stage_relation_members");
+            int sequenceId = 0;
+            for (var member : ((Relation) entity).getMembers()) {
+                memberWriter.writeField(entity.getId());
+                memberWriter.writeField(entity.getVersion());
+                memberWriter.writeField(member.getMemberId());
+                memberWriter.writeField(EntityCopySink.getMemberType(member.getMemberType()));
+                memberWriter.writeField(member.getMemberRole());
+                memberWriter.writeField(sequenceId++);
+                memberWriter.endRow();
+            }
+            break;
+        }
+        default:
+            // Bounds are not stored in the database
+            return;
+        }
+        if (profile.isMetadata()) {
+            writeUser(entity.getUser());
+        }
+        changeCount++;
+        if (fragments.getSize() > FLUSH_SIZE) {
+            flush();
+        }
+    }
+
+    @Override
+    public void complete() {
+        flush();
+        Instant start = Instant.now();
+        try {
+            if (profile.isMetadata()) {
+                execute(USERS_SQL);
+            }
+            int nodes = apply("nodes", "geom");
+            int ways = apply("ways", "nodes");
+            for (String sql : WAY_NODES_SQL) {
+                execute(sql);
+            }
+            if (wayGeometries) {
+                for (String sql : WAY_GEOMETRIES_SQL) {
+                    execute(sql);
+                }
+            }
+            int relations = apply("relations");
+            for (String sql : RELATION_MEMBERS_SQL) {
+                execute(sql);
+            }
+            // Schemas that were loaded before the actions table was added don't have it
+            if (hasTable("actions")) {
+                for (String sql : ACTIONS_SQL) {
+                    execute(sql);
+                }
+            }
+            execute("SELECT osmosisUpdate()");
+            conn.commit();
+            committed = true;
+            logger.info("Applied {} changes ({} nodes, {} ways, {} relations) in {} ms", changeCount, nodes, ways,
+                relations, Duration.between(start, Instant.now()).toMillis());
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not apply the change.", e);
+        }
+    }
+
+    /**
+     * Roll back the change if it wasn't completed.
+     */
+    @Override
+    public void close() {
+        if (!committed) {
+            try {
+                conn.rollback();
+            } catch (@SuppressWarnings("unused") SQLException e) {
+                // The transaction is discarded anyway when the connection is closed
+            }
+        }
+    }
+
+    /**
+     * Apply the net changes of one entity table.
+     *
+     * @param table The entity table
+     * @param tableColumns The columns of the table besides the metadata and the tags
+     * @return The number of changed entities
+     */
+    private int apply(String table, String... tableColumns) throws SQLException {
+        var columns = new ArrayList<String>();
+        if (profile.isMetadata()) {
+            columns.addAll(List.of("version", "user_id", "tstamp", "changeset_id", "tags"));
+        } else {
+            columns.addAll(List.of("tstamp", "tags"));
+        }
+        columns.addAll(List.of(tableColumns));
+        var updateColumns = columns.stream().map(c -> c + " = s." + c).collect(Collectors.joining(", "));
+        var insertColumns = String.join(", ", columns);
+        var insertValues = columns.stream().map(c -> "s." + c).collect(Collectors.joining(", "));
+        execute(String.format(NET_DDL, table));
+        int deleted = executeUpdate(String.format(DELETE_SQL, table));
+        int updated = executeUpdate(String.format(UPDATE_SQL, table, updateColumns));
+        int inserted = executeUpdate(String.format(INSERT_SQL, table, insertColumns, insertValues));
+        return deleted + updated + inserted;
+    }
+
+    /**
+     * Copy the buffered rows into the staging tables.
+     */
+    private void flush() {
+        for (String table : fragments.getTableNames()) {
+            var stream = new CopyStream(conn, table, format.getCopySql(table));
+            try (var writer = format.createRowWriter(stream)) {
+                fragments.writeTo(table, writer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Could not copy the changes into %s.", table), e);
+            }
+        }
+        fragments.clear();
+    }
+
+    private void writeUser(OsmUser user) {
+        if (user.equals(OsmUser.NONE) || user.getName().equals(userNames.put(user.getId(), user.getName()))) {
+            return;
+        }
+        var writer = fragments.getRowWriter("stage_users");
+        writer.writeField(sequence++);
+        writer.writeField(user.getId());
+        writer.writeField(user.getName());
+        writer.endRow();
+    }
+
+    private void writeCommonFields(RowWriter writer, char action, Entity entity) {
+        writer.writeField(sequence++);
+        writer.writeField(action);
+        writer.writeField(entity.getId());
+        writer.writeField(entity.getVersion());
+        writer.writeField(entity.getUser().getId());
+        writer.writeTimestamp(entity.getTimestamp());
+        writer.writeField(entity.getChangesetId());
+        writer.writeHstore(profile.filterTags(entity.getTags()));
+    }
+
+    private static char getAction(ChangeAction action) {
+        switch (action) {
+        case Create:
+            return 'C';
+        case Modify:
+            return 'M';
+        case Delete:
+            return 'D';
+        default:
+            throw new IllegalArgumentException(String.format("Unsupported change action: %s.", action));
+        }
+    }
+
+    private boolean hasTable(String table) throws SQLException {
+        try (var stmt = conn.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            stmt.setString(1, table);
+            try (var rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getBoolean(1);
+            }
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private int executeUpdate(String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            return stmt.executeUpdate(sql);
+        }
+    }
+}
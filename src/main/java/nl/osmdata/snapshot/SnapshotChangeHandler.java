@@ -1,27 +1,194 @@
 package nl.osmdata.snapshot;
 
 import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 import org.openstreetmap.osmosis.core.database.DatabaseLoginCredentials;
 import org.openstreetmap.osmosis.core.database.DatabasePreferences;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
 import org.openstreetmap.osmosis.pgsnapshot.v0_6.PostgreSqlChangeWriter;
 import org.openstreetmap.osmosis.xml.common.CompressionMethod;
 import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
 
-public class SnapshotChangeHandler {
+import nl.osmdata.ProjectionProfile;
+import nl.osmdata.change.ChangeCoalescer;
+import nl.osmdata.change.OscReader;
+import nl.osmdata.copy.CopyFormat;
+
+/**
+ * Apply change files to the snapshot schema.
+ *
+ * In batched mode the handler keeps its database connection open between changes, so it
+ * should be closed when it is no longer used.
+ */
+public class SnapshotChangeHandler implements AutoCloseable {
     private final CompressionMethod compressionMethod;
+    private final boolean batched;
+    private final boolean nativeParser;
+    private final ProjectionProfile profile;
+    private final boolean wayGeometries;
+    private Connection conn;
     
     public SnapshotChangeHandler(CompressionMethod compressionMethod) {
+        this(compressionMethod, false, false);
+    }
+
+    /**
+     * @param compressionMethod The compression of the change files
+     * @param batched Apply the changes with set based statements through staging tables,
+     *     instead of the Osmosis change writer.
+     * @param nativeParser Read change files with the OscReader instead of the Osmosis XmlChangeReader.
+     */
+    public SnapshotChangeHandler(CompressionMethod compressionMethod, boolean batched, boolean nativeParser) {
+        this(compressionMethod, batched, nativeParser, ProjectionProfile.FULL);
+    }
+
+    /**
+     * @param compressionMethod The compression of the change files
+     * @param batched Apply the changes with set based statements through staging tables,
+     *     instead of the Osmosis change writer.
+     * @param nativeParser Read change files with the OscReader instead of the Osmosis XmlChangeReader.
+     * @param profile The data that is stored. The Osmosis change writer writes all data, so
+     *     other profiles are always applied in batched mode.
+     */
+    public SnapshotChangeHandler(CompressionMethod compressionMethod, boolean batched, boolean nativeParser,
+            ProjectionProfile profile) {
+        this(compressionMethod, batched, nativeParser, profile, false);
+    }
+
+    /**
+     * @param compressionMethod The compression of the change files
+     * @param batched Apply the changes with set based statements through staging tables,
+     *     instead of the Osmosis change writer.
+     * @param nativeParser Read change files with the OscReader instead of the Osmosis XmlChangeReader.
+     * @param profile The data that is stored. The Osmosis change writer writes all data, so
+     *     other profiles are always applied in batched mode.
+     * @param wayGeometries Maintain the bbox and linestring columns of the ways, also for the
+     *     ways of nodes that move. Always applied in batched mode.
+     */
+    public SnapshotChangeHandler(CompressionMethod compressionMethod, boolean batched, boolean nativeParser,
+            ProjectionProfile profile, boolean wayGeometries) {
         super();
         this.compressionMethod = compressionMethod;
+        this.batched = batched || !profile.isFull() || wayGeometries;
+        this.nativeParser = nativeParser && compressionMethod != CompressionMethod.BZip2;
+        this.profile = profile;
+        this.wayGeometries = wayGeometries;
     }
 
     public void writeChange(File inputFile, DatabaseLoginCredentials dbCredentials) {
-        DatabasePreferences dbPreferences = new DatabasePreferences(false, false);
-        var changeReader = new XmlChangeReader(inputFile, false, compressionMethod);
-        try (var changeWriter = new PostgreSqlChangeWriter(dbCredentials, dbPreferences, false, false)) {
-            changeReader.setChangeSink(changeWriter);
+        writeChange(createChangeReader(inputFile), dbCredentials);
+    }
+
+    /**
+     * Create the reader for a change file.
+     */
+    public RunnableChangeSource createChangeReader(File inputFile) {
+        if (nativeParser) {
+            return new OscReader(inputFile, compressionMethod);
+        }
+        return new XmlChangeReader(inputFile, false, compressionMethod);
+    }
+
+    /**
+     * Apply the changes of a change source, for example a change file that is streamed
+     * from the server.
+     */
+    public void writeChange(RunnableChangeSource changeReader, DatabaseLoginCredentials dbCredentials) {
+        writeTo(dbCredentials, changeSink -> {
+            changeReader.setChangeSink(changeSink);
             changeReader.run();
+        });
+    }
+
+    /**
+     * Merge consecutive change files into one net change and apply it in a single run.
+     *
+     * @param inputFiles The change files in sequence order
+     * @param dbCredentials The database credentials
+     */
+    public void writeChanges(List<File> inputFiles, DatabaseLoginCredentials dbCredentials) {
+        var changeReaders = new ArrayList<RunnableChangeSource>();
+        for (File inputFile : inputFiles) {
+            changeReaders.add(createChangeReader(inputFile));
+        }
+        writeCoalesced(changeReaders, dbCredentials);
+    }
+
+    /**
+     * Merge the changes of consecutive change sources into one net change and apply it in a single run.
+     *
+     * @param changeReaders The change sources in sequence order. They are run one after the other.
+     * @param dbCredentials The database credentials
+     */
+    public void writeCoalesced(List<? extends RunnableChangeSource> changeReaders, DatabaseLoginCredentials dbCredentials) {
+        var coalescer = new ChangeCoalescer();
+        for (var changeReader : changeReaders) {
+            changeReader.setChangeSink(coalescer);
+            changeReader.run();
+        }
+        writeTo(dbCredentials, coalescer::writeTo);
+    }
+
+    /**
+     * Run a change source against the change sink for the database.
+     */
+    private void writeTo(DatabaseLoginCredentials dbCredentials, Consumer<ChangeSink> source) {
+        if (!batched) {
+            DatabasePreferences dbPreferences = new DatabasePreferences(false, false);
+            try (var changeWriter = new PostgreSqlChangeWriter(dbCredentials, dbPreferences, false, false)) {
+                source.accept(changeWriter);
+            }
+            return;
+        }
+        try (var changeApplier = new SnapshotChangeApplier(getConnection(dbCredentials), CopyFormat.TEXT, profile,
+                wayGeometries)) {
+            source.accept(changeApplier);
+        } catch (SQLException e) {
+            throw new RuntimeException(String.format("Could not connect to database %s.",
+                dbCredentials.getDatabase()), e);
+        }
+    }
+
+    /**
+     * Close the database connection of the batched mode.
+     */
+    @Override
+    public void close() {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (@SuppressWarnings("unused") SQLException e) {
+                // The connection is no longer used
+            }
+            conn = null;
+        }
+    }
+
+    /**
+     * Get the connection for the batched mode. The connection is reused for the next
+     * change, unless it was broken. If the credentials have a schema, the tables of that
+     * schema are used.
+     */
+    private Connection getConnection(DatabaseLoginCredentials dbCredentials) throws SQLException {
+        if (conn != null && conn.isValid(5)) {
+            return conn;
+        }
+        close();
+        var dbUrl = String.format("jdbc:postgresql://%s/%s", dbCredentials.getHost(), dbCredentials.getDatabase());
+        conn = DriverManager.getConnection(dbUrl, dbCredentials.getUser(), dbCredentials.getPassword());
+        var schema = dbCredentials.getPostgresSchema();
+        if (schema != null && !schema.isEmpty()) {
+            try (var stmt = conn.createStatement()) {
+                stmt.execute(String.format("SET search_path TO \"%s\", public", schema.replace("\"", "\"\"")));
+            }
         }
+        return conn;
     }
 }
@@ -0,0 +1,109 @@
+package nl.osmdata.snapshot;
+
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.RelationContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+
+import nl.osmdata.ProjectionProfile;
+import nl.osmdata.copy.CopyTarget;
+import nl.osmdata.copy.EntityCopySink;
+import nl.osmdata.copy.RowWriter;
+import nl.osmdata.copy.WayGeometryWriter;
+import nl.osmdata.store.MappedNodeLocationStore;
+
+/**
+ * Sink that writes entities as COPY rows for the snapshot schema.
+ */
+public class SnapshotCopySink extends EntityCopySink {
+    private final RowWriter nodeWriter;
+    private final RowWriter wayWriter;
+    private final RowWriter wayNodeWriter;
+    private final RowWriter relationWriter;
+    private final RowWriter relationMemberWriter;
+    private final WayGeometryWriter geometryWriter;
+
+    public SnapshotCopySink(CopyTarget target) {
+        this(target, null);
+    }
+
+    public SnapshotCopySink(CopyTarget target, MappedNodeLocationStore nodeLocations) {
+        this(target, nodeLocations, ProjectionProfile.FULL);
+    }
+
+    public SnapshotCopySink(CopyTarget target, MappedNodeLocationStore nodeLocations, ProjectionProfile profile) {
+        this(target, nodeLocations, profile, false);
+    }
+
+    /**
+     * @param target The target for the table rows
+     * @param nodeLocations Store for the node locations, or null if they are not needed
+     * @param profile The data that is stored
+     * @param wayGeometries Write the bbox and linestring columns of the ways. Requires
+     *     the node location store.
+     */
+    public SnapshotCopySink(CopyTarget target, MappedNodeLocationStore nodeLocations, ProjectionProfile profile,
+            boolean wayGeometries) {
+        super(target, nodeLocations, profile);
+        if (wayGeometries && nodeLocations == null) {
+            throw new IllegalArgumentException("Way geometries require a node location store.");
+        }
+        this.geometryWriter = wayGeometries ? new WayGeometryWriter(nodeLocations) : null;
+        this.nodeWriter = target.getRowWriter("nodes");
+        this.wayWriter = target.getRowWriter("ways");
+        this.wayNodeWriter = target.getRowWriter("way_nodes");
+        this.relationWriter = target.getRowWriter("relations");
+        this.relationMemberWriter = target.getRowWriter("relation_members");
+    }
+
+    @Override
+    public void process(NodeContainer nodeContainer) {
+        var node = nodeContainer.getEntity();
+        storeLocation(node);
+        writeUser(node.getUser());
+        writeCommonFields(nodeWriter, node);
+        nodeWriter.writePoint(node.getLongitude(), node.getLatitude());
+        nodeWriter.endRow();
+    }
+
+    @Override
+    public void process(WayContainer wayContainer) {
+        var way = wayContainer.getEntity();
+        writeUser(way.getUser());
+        writeCommonFields(wayWriter, way);
+        wayWriter.writeNodeIds(way.getWayNodes());
+        if (geometryWriter != null) {
+            geometryWriter.write(wayWriter, way.getWayNodes());
+        }
+        wayWriter.endRow();
+        int sequenceId = 0;
+        for (var wayNode : way.getWayNodes()) {
+            wayNodeWriter.writeField(way.getId());
+            wayNodeWriter.writeField(wayNode.getNodeId());
+            wayNodeWriter.writeField(sequenceId++);
+            wayNodeWriter.endRow();
+        }
+    }
+
+    @Override
+    public void process(RelationContainer relationContainer) {
+        var relation = relationContainer.getEntity();
+        writeUser(relation.getUser());
+        writeCommonFields(relationWriter, relation);
+        relationWriter.endRow();
+        int sequenceId = 0;
+        for (var member : relation.getMembers()) {
+            relationMemberWriter.writeField(relation.getId());
+            relationMemberWriter.writeField(member.getMemberId());
+            relationMemberWriter.writeField(getMemberType(member.getMemberType()));
+            relationMemberWriter.writeField(member.getMemberRole());
+            relationMemberWriter.writeField(sequenceId++);
+            relationMemberWriter.endRow();
+        }
+    }
+
+    private void writeCommonFields(RowWriter writer, Entity entity) {
+        writeEntityFields(writer, entity);
+        writer.writeHstore(getTags(entity));
+    }
+}
@@ -1,22 +1,98 @@
 package nl.osmdata.snapshot;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 import org.openstreetmap.osmosis.pbf2.v0_6.PbfReader;
 import org.openstreetmap.osmosis.pgsnapshot.common.NodeLocationStoreType;
 import org.openstreetmap.osmosis.pgsnapshot.v0_6.PostgreSqlDumpWriter;
 
+import nl.osmdata.LoadOptions;
 import nl.osmdata.PbfDumpWriter;
+import nl.osmdata.copy.CopyFileTarget;
+import nl.osmdata.copy.CopyFormat;
+import nl.osmdata.copy.CopyTarget;
+import nl.osmdata.metrics.EntityCountingSink;
+import nl.osmdata.pbf.PbfBlockDumper;
+import nl.osmdata.store.MappedNodeLocationStore;
+import nl.osmdata.store.NodeStoreType;
 
 public class SnapshotPbfDumpWriter implements PbfDumpWriter {
-    private final static int workers = 4; 
-    
+    private final LoadOptions options;
+
+    public SnapshotPbfDumpWriter() {
+        this(new LoadOptions());
+    }
+
+    public SnapshotPbfDumpWriter(LoadOptions options) {
+        super();
+        this.options = options;
+    }
+
     @Override
     public void writeDump(File inputFile, File outputFolder) {
-        var pbfReader = new PbfReader(inputFile, workers);
-        try (var dumpWriter = new PostgreSqlDumpWriter(outputFolder, false, false, false, NodeLocationStoreType.TempFile, false)) {
-            pbfReader.setSink(dumpWriter);
+        if (options.getCopyFormat() != CopyFormat.TEXT || options.getNodeStoreType() == NodeStoreType.MAPPED
+                || options.isNativeDecoder() || !options.getProjection().isFull()) {
+            writeCopyFiles(inputFile, outputFolder);
+            return;
+        }
+        var pbfReader = new PbfReader(inputFile, options.getDecoderThreads());
+        boolean wayGeometries = options.isWayGeometries();
+        try (var dumpWriter = new PostgreSqlDumpWriter(outputFolder, wayGeometries, wayGeometries, false,
+                getOsmosisStoreType(), false)) {
+            pbfReader.setSink(new EntityCountingSink(dumpWriter));
         }
         pbfReader.run();
     }
+
+    /**
+     * Write the dump files with the project's own sink, which supports all COPY formats
+     * and projection profiles.
+     */
+    private void writeCopyFiles(File inputFile, File outputFolder) {
+        try (var target = new CopyFileTarget(outputFolder, options.getCopyFormat())) {
+            decode(inputFile, target);
+            // Tables without rows, like the tags when the profile drops them all, still need a file
+            new SnapshotSchemaHelper().project(options.getProjection()).getTables().forEach(target::getRowWriter);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the dump files.", e);
+        }
+    }
+
+    @Override
+    public void streamDump(File inputFile, CopyTarget target) {
+        decode(inputFile, target);
+    }
+
+    private void decode(File inputFile, CopyTarget target) {
+        if (options.isNativeDecoder()) {
+            try (var nodeLocations = createNodeLocationStore()) {
+                var encoder = new SnapshotBlockEncoder(options.getProjection(), options.isWayGeometries());
+                new PbfBlockDumper(encoder, options.getDecoderThreads(), options.getProjection())
+                    .dump(inputFile, target, nodeLocations);
+            }
+            return;
+        }
+        var pbfReader = new PbfReader(inputFile, options.getDecoderThreads());
+        pbfReader.setSink(new SnapshotCopySink(target, createNodeLocationStore(), options.getProjection(),
+            options.isWayGeometries()));
+        pbfReader.run();
+    }
+
+    private MappedNodeLocationStore createNodeLocationStore() {
+        return options.getNodeStoreType() == NodeStoreType.MAPPED || options.isWayGeometries()
+                ? new MappedNodeLocationStore() : null;
+    }
+
+    private NodeLocationStoreType getOsmosisStoreType() {
+        switch (options.getNodeStoreType()) {
+        case IN_MEMORY:
+            return NodeLocationStoreType.InMemory;
+        case COMPACT_TEMP_FILE:
+            return NodeLocationStoreType.CompactTempFile;
+        default:
+            return NodeLocationStoreType.TempFile;
+        }
+    }
 }
@@ -3,6 +3,10 @@ package nl.osmdata.snapshot;
 import java.util.List;
 import nl.osmdata.SchemaHelper;
 
+/**
+ * The pgsnapshot schema of Osmosis. With way geometries, the ways table has the optional
+ * bbox and linestring columns of Osmosis, with GiST indexes.
+ */
 public class SnapshotSchemaHelper implements SchemaHelper {
     private static List<String> tables = List.of(
 //            "actions",
@@ -27,6 +31,7 @@ DROP TABLE IF EXISTS relation_members;
 DROP TABLE IF EXISTS schema_info;
 DROP TABLE IF EXISTS replication_changes;
 DROP TABLE IF EXISTS sql_changes;
+DROP TABLE IF EXISTS replication_baseline;
 
 -- Drop all stored procedures if they exist.
 DROP FUNCTION IF EXISTS osmosisUpdate();
@@ -37,6 +42,14 @@ CREATE TABLE schema_info (
 );
 
 
+-- Create a table which will contain a summary of the changes applied to the database.
+CREATE TABLE actions (
+    data_type character(1) NOT NULL,
+    action character(1) NOT NULL,
+    id bigint NOT NULL
+);
+
+
 -- Create a table for users.
 CREATE TABLE users (
     id int NOT NULL,
@@ -126,6 +139,14 @@ CREATE TABLE sql_changes (
   arguments text
 );
 
+-- Create a table with the replication state of the loaded extract, where the updates start.
+CREATE TABLE replication_baseline (
+    tstamp timestamp without time zone NOT NULL,
+    sequence_number bigint,
+    pbf_size bigint NOT NULL,
+    load_seconds double precision NOT NULL
+);
+
 
 -- Configure the schema version.
 INSERT INTO schema_info (version) VALUES (6);""";
@@ -134,6 +155,8 @@ INSERT INTO schema_info (version) VALUES (6);""";
 -- Add primary keys to tables.
 ALTER TABLE ONLY schema_info ADD CONSTRAINT pk_schema_info PRIMARY KEY (version);
 
+ALTER TABLE ONLY actions ADD CONSTRAINT pk_actions PRIMARY KEY (data_type, id);
+
 ALTER TABLE ONLY users ADD CONSTRAINT pk_users PRIMARY KEY (id);
 
 ALTER TABLE ONLY nodes ADD CONSTRAINT pk_nodes PRIMARY KEY (id);
@@ -158,6 +181,19 @@ CREATE INDEX idx_relation_members_member_id_and_type ON relation_members USING b
 -- Add geo index(es) to tables.
 CREATE INDEX idx_nodes_geom ON nodes USING gist (geom);""";
 
+   private static final String wayGeometriesDdl = """
+
+-- Add postgis columns holding the bounding box and the linestring of the ways.
+SELECT AddGeometryColumn('ways', 'bbox', 4326, 'GEOMETRY', 2);
+SELECT AddGeometryColumn('ways', 'linestring', 4326, 'GEOMETRY', 2);""";
+
+   private static final String wayGeoIndexesDdl = """
+
+-- Add geo index(es) to ways.
+CREATE INDEX idx_ways_bbox ON ways USING gist (bbox);
+
+CREATE INDEX idx_ways_linestring ON ways USING gist (linestring);""";
+
    private static final String finalTasksDdl = """
 
 -- Create customisable hook function that is called within the replication update transaction.
@@ -167,6 +203,20 @@ BEGIN
 END;
 $$ LANGUAGE plpgsql;""";
 
+    private final boolean wayGeometries;
+
+    public SnapshotSchemaHelper() {
+        this(false);
+    }
+
+    /**
+     * @param wayGeometries Add the bbox and linestring columns to the ways table
+     */
+    public SnapshotSchemaHelper(boolean wayGeometries) {
+        super();
+        this.wayGeometries = wayGeometries;
+    }
+
     @Override
     public List<String> getTables() {
         return tables;
@@ -174,7 +224,7 @@ $$ LANGUAGE plpgsql;""";
 
     @Override
     public String getBasicSchemaDdl() {
-        return basicSchemaDdl;
+        return wayGeometries ? basicSchemaDdl + wayGeometriesDdl : basicSchemaDdl;
     }
     
     @Override
@@ -189,7 +239,7 @@ $$ LANGUAGE plpgsql;""";
     
     @Override
     public String getCreateGeoIndexesDdl() {
-        return geoIndexesDdl;
+        return wayGeometries ? geoIndexesDdl + wayGeoIndexesDdl : geoIndexesDdl;
     }
 
     @Override
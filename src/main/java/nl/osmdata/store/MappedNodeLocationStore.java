@@ -0,0 +1,247 @@
+package nl.osmdata.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Off-heap store for node locations, backed by a memory-mapped temporary file.
+ *
+ * The node id range is divided in pages of 65536 ids. The locations are kept as fixed
+ * point integers with the OSM precision of 1e-7 degrees. A page where most ids are used
+ * is stored as a dense array indexed by id. A page with few nodes, which is the common
+ * case for a country extract, is stored as a sorted list of id offsets with their
+ * locations. Pages without nodes take no space at all.
+ *
+ * The nodes are expected in ascending id order, as in a sorted pbf file. Nodes that
+ * arrive out of order, or that are repeated, are kept in an on-heap map.
+ */
+public class MappedNodeLocationStore implements AutoCloseable {
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int DENSE_ENTRY_SIZE = 8;
+    private static final int SPARSE_ENTRY_SIZE = 10;
+    private static final double FIXED_PRECISION = 1e7;
+    // Added to the latitude, so a stored latitude is never 0 and 0 marks an unused slot
+    private static final int LATITUDE_OFFSET = 1_000_000_000;
+
+    private final File file;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    // Directory of the written pages, in ascending page order
+    private long[] pageIds = new long[1024];
+    private long[] pagePositions = new long[1024];
+    private int[] pageCounts = new int[1024];
+    private int pageCount = 0;
+    private final Map<Long, Long> unsorted = new HashMap<>();
+    private long fileSize = 0;
+
+    // The page that is currently being filled
+    private long currentPage = -1;
+    private int count = 0;
+    private final short[] offsets = new short[PAGE_SIZE];
+    private final int[] latitudes = new int[PAGE_SIZE];
+    private final int[] longitudes = new int[PAGE_SIZE];
+
+    public MappedNodeLocationStore() {
+        try {
+            this.file = Files.createTempFile("osmdata-nodes", ".bin").toFile();
+            this.file.deleteOnExit();
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create the node location store", e);
+        }
+    }
+
+    public void put(long nodeId, double longitude, double latitude) {
+        long page = nodeId >>> PAGE_BITS;
+        if (nodeId < 0 || page < currentPage || (page == currentPage && count > 0
+                && (nodeId & PAGE_MASK) <= (offsets[count - 1] & 0xFFFF))) {
+            unsorted.put(nodeId, pack(longitude, latitude));
+            return;
+        }
+        if (page != currentPage) {
+            flushPage();
+            currentPage = page;
+        }
+        offsets[count] = (short) (nodeId & PAGE_MASK);
+        latitudes[count] = toFixed(latitude) + LATITUDE_OFFSET;
+        longitudes[count] = toFixed(longitude);
+        count++;
+    }
+
+    /**
+     * Look up the location of a node.
+     *
+     * @param nodeId The id of the node
+     * @param lonLat Array of length 2 that receives the longitude and latitude
+     * @return true if the location of the node is known
+     */
+    public boolean get(long nodeId, double[] lonLat) {
+        if (!unsorted.isEmpty()) {
+            var location = unsorted.get(nodeId);
+            if (location != null) {
+                return unpack((int) (location >>> 32), (int) location.longValue(), lonLat);
+            }
+        }
+        long page = nodeId >>> PAGE_BITS;
+        int offset = (int) (nodeId & PAGE_MASK);
+        if (page == currentPage) {
+            int index = binarySearch(offset);
+            if (index >= 0) {
+                return unpack(latitudes[index], longitudes[index], lonLat);
+            }
+        } else {
+            int index = Arrays.binarySearch(pageIds, 0, pageCount, page);
+            if (index >= 0) {
+                return getFromPage(index, offset, lonLat);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            segments.clear();
+            pageCount = 0;
+            channel.close();
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not remove the node location store", e);
+        }
+    }
+
+    private void flushPage() {
+        if (count == 0) {
+            return;
+        }
+        boolean dense = (long) count * SPARSE_ENTRY_SIZE >= (long) PAGE_SIZE * DENSE_ENTRY_SIZE;
+        int size = dense ? PAGE_SIZE * DENSE_ENTRY_SIZE : count * SPARSE_ENTRY_SIZE;
+        long position = allocate(size);
+        var buffer = segmentFor(position);
+        int start = (int) (position % SEGMENT_SIZE);
+        if (dense) {
+            for (int i = 0; i < count; i++) {
+                int slot = start + (offsets[i] & 0xFFFF) * DENSE_ENTRY_SIZE;
+                buffer.putInt(slot, latitudes[i]);
+                buffer.putInt(slot + 4, longitudes[i]);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                int slot = start + i * SPARSE_ENTRY_SIZE;
+                buffer.putShort(slot, offsets[i]);
+                buffer.putInt(slot + 2, latitudes[i]);
+                buffer.putInt(slot + 6, longitudes[i]);
+            }
+        }
+        if (pageCount == pageIds.length) {
+            pageIds = Arrays.copyOf(pageIds, pageCount * 2);
+            pagePositions = Arrays.copyOf(pagePositions, pageCount * 2);
+            pageCounts = Arrays.copyOf(pageCounts, pageCount * 2);
+        }
+        pageIds[pageCount] = currentPage;
+        pagePositions[pageCount] = position;
+        pageCounts[pageCount] = dense ? -1 : count;
+        pageCount++;
+        count = 0;
+    }
+
+    private boolean getFromPage(int index, int offset, double[] lonLat) {
+        var buffer = segments.get((int) (pagePositions[index] / SEGMENT_SIZE));
+        int start = (int) (pagePositions[index] % SEGMENT_SIZE);
+        int entries = pageCounts[index];
+        if (entries < 0) {
+            int slot = start + offset * DENSE_ENTRY_SIZE;
+            return unpack(buffer.getInt(slot), buffer.getInt(slot + 4), lonLat);
+        }
+        int low = 0;
+        int high = entries - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int slot = start + mid * SPARSE_ENTRY_SIZE;
+            int value = buffer.getShort(slot) & 0xFFFF;
+            if (value < offset) {
+                low = mid + 1;
+            } else if (value > offset) {
+                high = mid - 1;
+            } else {
+                return unpack(buffer.getInt(slot + 2), buffer.getInt(slot + 6), lonLat);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reserve space in the file. A block never crosses a segment boundary.
+     */
+    private long allocate(int size) {
+        long segmentRemaining = SEGMENT_SIZE - (fileSize % SEGMENT_SIZE);
+        if (size > segmentRemaining) {
+            fileSize += segmentRemaining;
+        }
+        long position = fileSize;
+        fileSize += size;
+        return position;
+    }
+
+    private MappedByteBuffer segmentFor(long position) {
+        int index = (int) (position / SEGMENT_SIZE);
+        try {
+            while (segments.size() <= index) {
+                var segment = channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE);
+                segment.order(ByteOrder.nativeOrder());
+                segments.add(segment);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not extend the node location store", e);
+        }
+        return segments.get(index);
+    }
+
+    private int binarySearch(int offset) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = offsets[mid] & 0xFFFF;
+            if (value < offset) {
+                low = mid + 1;
+            } else if (value > offset) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int toFixed(double degrees) {
+        return (int) Math.round(degrees * FIXED_PRECISION);
+    }
+
+    private static long pack(double longitude, double latitude) {
+        return ((long) (toFixed(latitude) + LATITUDE_OFFSET) << 32) | (toFixed(longitude) & 0xFFFFFFFFL);
+    }
+
+    private static boolean unpack(int latitude, int longitude, double[] lonLat) {
+        if (latitude == 0) {
+            return false;
+        }
+        lonLat[0] = longitude / FIXED_PRECISION;
+        lonLat[1] = (latitude - LATITUDE_OFFSET) / FIXED_PRECISION;
+        return true;
+    }
+}
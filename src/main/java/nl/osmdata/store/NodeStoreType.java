@@ -0,0 +1,23 @@
+package nl.osmdata.store;
+
+/**
+ * The store that keeps node locations while the ways of a pbf file are processed.
+ */
+public enum NodeStoreType {
+    /**
+     * The Osmosis store in a temporary file.
+     */
+    TEMP_FILE,
+    /**
+     * The Osmosis store in a temporary file, optimized for sparse node ids.
+     */
+    COMPACT_TEMP_FILE,
+    /**
+     * The Osmosis store on the heap.
+     */
+    IN_MEMORY,
+    /**
+     * The MappedNodeLocationStore. Only available for the project's own sinks.
+     */
+    MAPPED
+}
@@ -0,0 +1 @@
+package nl.osmdata.store;
\ No newline at end of file
@@ -0,0 +1,161 @@
+package nl.osmdata;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server for the download tests.
+ *
+ * It serves files from memory, answers HEAD requests, conditional HEAD requests with
+ * If-None-Match, and range requests with If-Range. The requests are recorded as
+ * "METHOD path [range]", so the tests can check what the client asked for.
+ */
+class FileServer implements AutoCloseable {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    private final List<String> requests = new ArrayList<>();
+    private final AtomicInteger activeRanges = new AtomicInteger();
+    private final AtomicInteger maxActiveRanges = new AtomicInteger();
+    private volatile boolean acceptRanges = true;
+    private volatile long rangeDelay = 0;
+
+    FileServer() throws IOException {
+        super();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    void put(String path, byte[] data, String etag) {
+        files.put(path, data);
+        if (etag == null) {
+            etags.remove(path);
+        } else {
+            etags.put(path, etag);
+        }
+    }
+
+    void remove(String path) {
+        files.remove(path);
+        etags.remove(path);
+    }
+
+    /**
+     * Serve ranges, or ignore the Range header and always send the whole file.
+     */
+    void setAcceptRanges(boolean acceptRanges) {
+        this.acceptRanges = acceptRanges;
+    }
+
+    /**
+     * Hold every range response for a while, so concurrent requests overlap.
+     */
+    void setRangeDelay(long millis) {
+        this.rangeDelay = millis;
+    }
+
+    URL url(String path) throws MalformedURLException {
+        return new URL(String.format("http://localhost:%d%s", server.getAddress().getPort(), path));
+    }
+
+    List<String> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    void clearRequests() {
+        synchronized (requests) {
+            requests.clear();
+        }
+    }
+
+    int getMaxActiveRanges() {
+        return maxActiveRanges.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var path = exchange.getRequestURI().getPath();
+            var requestHeaders = exchange.getRequestHeaders();
+            var range = acceptRanges ? requestHeaders.getFirst("Range") : null;
+            synchronized (requests) {
+                requests.add(exchange.getRequestMethod() + " " + path + (range == null ? "" : " " + range));
+            }
+            var data = files.get(path);
+            if (data == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            var etag = etags.get(path);
+            var headers = exchange.getResponseHeaders();
+            if (etag != null) {
+                headers.set("ETag", etag);
+            }
+            if (acceptRanges) {
+                headers.set("Accept-Ranges", "bytes");
+            }
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                if (etag != null && etag.equals(requestHeaders.getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    headers.set("Content-Length", Integer.toString(data.length));
+                    exchange.sendResponseHeaders(200, -1);
+                }
+                return;
+            }
+            var ifRange = requestHeaders.getFirst("If-Range");
+            var matcher = range == null ? null : RANGE.matcher(range);
+            if (matcher != null && matcher.matches() && (ifRange == null || ifRange.equals(etag))) {
+                int start = Integer.parseInt(matcher.group(1));
+                int end = Math.min(data.length - 1, Integer.parseInt(matcher.group(2)));
+                sendRange(exchange, data, start, end);
+            } else {
+                exchange.sendResponseHeaders(200, data.length);
+                exchange.getResponseBody().write(data);
+            }
+        }
+    }
+
+    private void sendRange(HttpExchange exchange, byte[] data, int start, int end) throws IOException {
+        int active = activeRanges.incrementAndGet();
+        maxActiveRanges.accumulateAndGet(active, Math::max);
+        try {
+            if (rangeDelay > 0) {
+                Thread.sleep(rangeDelay);
+            }
+            exchange.getResponseHeaders().set("Content-Range", String.format("bytes %d-%d/%d", start, end, data.length));
+            exchange.sendResponseHeaders(206, end - start + 1);
+            exchange.getResponseBody().write(Arrays.copyOfRange(data, start, end + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            activeRanges.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package nl.osmdata;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PbfCacheTest {
+    private static final int SIZE = 1000;
+
+    @TempDir
+    File cacheDir;
+
+    private FileServer server;
+    private PbfCache cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FileServer();
+        cache = new PbfCache(cacheDir, 2500, new PbfDownloader(2, 400));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void reusesUnchangedFile() throws Exception {
+        var data = put("/monaco.osm.pbf", 1, "\"v1\"");
+        var file = cache.get(server.url("/monaco.osm.pbf"));
+        server.clearRequests();
+
+        var cached = cache.get(server.url("/monaco.osm.pbf"));
+
+        assertEquals(file, cached);
+        assertArrayEquals(data, Files.readAllBytes(cached.toPath()));
+        // Only the conditional HEAD request, answered with 304
+        assertEquals(List.of("HEAD /monaco.osm.pbf"), server.getRequests());
+    }
+
+    @Test
+    void downloadsChangedFile() throws Exception {
+        put("/monaco.osm.pbf", 1, "\"v1\"");
+        cache.get(server.url("/monaco.osm.pbf"));
+        var data = put("/monaco.osm.pbf", 2, "\"v2\"");
+        server.clearRequests();
+
+        var file = cache.get(server.url("/monaco.osm.pbf"));
+
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+        assertTrue(server.getRequests().stream().anyMatch(request -> request.startsWith("GET /monaco.osm.pbf bytes=")));
+    }
+
+    @Test
+    void downloadsCorruptFileAgain() throws Exception {
+        var data = put("/monaco.osm.pbf", 1, "\"v1\"");
+        var file = cache.get(server.url("/monaco.osm.pbf"));
+        Files.write(file.toPath(), new byte[SIZE]);
+
+        cache.get(server.url("/monaco.osm.pbf"));
+
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    void usesCachedFileWhenServerIsDown() throws Exception {
+        var data = put("/monaco.osm.pbf", 1, "\"v1\"");
+        var url = server.url("/monaco.osm.pbf");
+        cache.get(url);
+        server.close();
+
+        var file = cache.get(url);
+
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws Exception {
+        put("/a.osm.pbf", 1, "\"a\"");
+        put("/b.osm.pbf", 2, "\"b\"");
+        put("/c.osm.pbf", 3, "\"c\"");
+        var a = cache.get(server.url("/a.osm.pbf"));
+        var b = cache.get(server.url("/b.osm.pbf"));
+        long now = System.currentTimeMillis();
+        assertTrue(metadataFile(a).setLastModified(now - 20_000));
+        assertTrue(metadataFile(b).setLastModified(now - 10_000));
+        // Using a makes b the least recently used entry
+        cache.get(server.url("/a.osm.pbf"));
+
+        var c = cache.get(server.url("/c.osm.pbf"));
+
+        assertTrue(a.exists());
+        assertFalse(b.exists());
+        assertFalse(metadataFile(b).exists());
+        assertTrue(c.exists());
+    }
+
+    private byte[] put(String path, long seed, String etag) throws Exception {
+        var data = new byte[SIZE];
+        new Random(seed).nextBytes(data);
+        server.put(path, data, etag);
+        return data;
+    }
+
+    private static File metadataFile(File file) {
+        return new File(file.getPath().replace(".pbf", ".properties"));
+    }
+}
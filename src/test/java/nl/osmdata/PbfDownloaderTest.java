@@ -0,0 +1,165 @@
+package nl.osmdata;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PbfDownloaderTest {
+    private static final String PATH = "/europe/monaco-latest.osm.pbf";
+    private static final String ETAG = "\"v2\"";
+    private static final int CHUNK_SIZE = 1000;
+    private static final int CHUNKS = 10;
+
+    @TempDir
+    File tempDir;
+
+    private FileServer server;
+    private byte[] data;
+    private File outputFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        data = new byte[CHUNK_SIZE * CHUNKS - 123];
+        new Random(42).nextBytes(data);
+        server = new FileServer();
+        server.put(PATH, data, ETAG);
+        server.put(PATH + ".md5", (md5(data) + "  monaco-latest.osm.pbf\n").getBytes(StandardCharsets.US_ASCII), null);
+        outputFile = new File(tempDir, "monaco.osm.pbf");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void downloadsRangesOverSeveralConnections() throws Exception {
+        server.setRangeDelay(50);
+        var checksum = new PbfDownloader(4, CHUNK_SIZE).download(server.url(PATH), outputFile);
+
+        assertEquals(md5(data), checksum);
+        assertArrayEquals(data, Files.readAllBytes(outputFile.toPath()));
+        assertEquals(CHUNKS, rangeRequests().size());
+        assertTrue(rangeRequests().contains("GET " + PATH + " bytes=9000-9876"));
+        assertTrue(server.getMaxActiveRanges() > 1);
+        assertFalse(partFile().exists());
+        assertFalse(sidecarFile().exists());
+    }
+
+    @Test
+    void resumesFromPartFile() throws Exception {
+        writePartialDownload(ETAG, 0, 1, 2);
+
+        new PbfDownloader(2, CHUNK_SIZE).download(server.url(PATH), outputFile);
+
+        assertArrayEquals(data, Files.readAllBytes(outputFile.toPath()));
+        var ranges = rangeRequests();
+        assertEquals(CHUNKS - 3, ranges.size());
+        assertFalse(ranges.contains("GET " + PATH + " bytes=0-999"));
+        assertFalse(ranges.contains("GET " + PATH + " bytes=2000-2999"));
+        assertTrue(ranges.contains("GET " + PATH + " bytes=3000-3999"));
+    }
+
+    @Test
+    void restartsWhenEtagChanged() throws Exception {
+        writePartialDownload("\"v1\"", 0, 1, 2);
+
+        new PbfDownloader(2, CHUNK_SIZE).download(server.url(PATH), outputFile);
+
+        assertArrayEquals(data, Files.readAllBytes(outputFile.toPath()));
+        assertEquals(CHUNKS, rangeRequests().size());
+        assertTrue(rangeRequests().contains("GET " + PATH + " bytes=0-999"));
+    }
+
+    @Test
+    void rejectsChecksumMismatch() throws Exception {
+        server.put(PATH + ".md5", "0123456789abcdef0123456789abcdef  monaco-latest.osm.pbf\n"
+            .getBytes(StandardCharsets.US_ASCII), null);
+        var downloader = new PbfDownloader(2, CHUNK_SIZE);
+
+        var e = assertThrows(IOException.class, () -> downloader.download(server.url(PATH), outputFile));
+        assertTrue(e.getMessage().startsWith("Checksum mismatch"));
+        assertFalse(outputFile.exists());
+        assertFalse(partFile().exists());
+        assertFalse(sidecarFile().exists());
+    }
+
+    @Test
+    void downloadsWithoutChecksumFile() throws Exception {
+        server.remove(PATH + ".md5");
+
+        var checksum = new PbfDownloader(2, CHUNK_SIZE).download(server.url(PATH), outputFile);
+
+        assertEquals(md5(data), checksum);
+        assertArrayEquals(data, Files.readAllBytes(outputFile.toPath()));
+    }
+
+    @Test
+    void fallsBackToSingleRequestWithoutRanges() throws Exception {
+        server.setAcceptRanges(false);
+
+        new PbfDownloader(4, CHUNK_SIZE).download(server.url(PATH), outputFile);
+
+        assertArrayEquals(data, Files.readAllBytes(outputFile.toPath()));
+        assertEquals(List.of("HEAD " + PATH, "GET " + PATH, "GET " + PATH + ".md5"), server.getRequests());
+    }
+
+    /**
+     * Leave a ".part" file with the given chunks and a sidecar file, as an interrupted
+     * download does. The other chunks are zeros.
+     */
+    private void writePartialDownload(String validator, int... chunks) throws IOException {
+        var done = new StringBuilder();
+        try (var raf = new RandomAccessFile(partFile(), "rw")) {
+            raf.setLength(data.length);
+            for (int chunk : chunks) {
+                raf.seek((long) chunk * CHUNK_SIZE);
+                raf.write(data, chunk * CHUNK_SIZE, CHUNK_SIZE);
+                done.append(done.length() == 0 ? "" : ",").append(chunk);
+            }
+        }
+        var properties = new Properties();
+        properties.setProperty("length", Integer.toString(data.length));
+        properties.setProperty("validator", validator);
+        properties.setProperty("chunkSize", Integer.toString(CHUNK_SIZE));
+        properties.setProperty("done", done.toString());
+        try (var out = new FileOutputStream(sidecarFile())) {
+            properties.store(out, "Download progress");
+        }
+    }
+
+    private List<String> rangeRequests() {
+        return server.getRequests().stream().filter(request -> request.contains("bytes=")).toList();
+    }
+
+    private File partFile() {
+        return new File(outputFile.getPath() + ".part");
+    }
+
+    private File sidecarFile() {
+        return new File(outputFile.getPath() + ".part.properties");
+    }
+
+    static String md5(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(data));
+    }
+}
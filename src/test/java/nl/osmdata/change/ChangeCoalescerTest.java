@@ -0,0 +1,185 @@
+package nl.osmdata.change;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.openstreetmap.osmosis.core.container.v0_6.BoundContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.NodeContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.RelationContainer;
+import org.openstreetmap.osmosis.core.container.v0_6.WayContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Bound;
+import org.openstreetmap.osmosis.core.domain.v0_6.CommonEntityData;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+
+class ChangeCoalescerTest {
+    /**
+     * The actions on one entity, in the order they are fed, and the net action.
+     * The entity gets a new version with every action.
+     */
+    @ParameterizedTest(name = "{0} -> {1}")
+    @CsvSource(delimiter = '|', value = {
+        "create               | create",
+        "modify               | modify",
+        "delete               | delete",
+        "create modify        | create",
+        "create delete        | none",
+        "modify delete        | delete",
+        "delete create        | modify",
+        "modify modify        | modify",
+        "create modify delete | none",
+        "create delete create | create",
+        "delete create delete | delete",
+        "modify delete create | modify",
+    })
+    void coalescesActions(String actions, String expected) {
+        var coalescer = new ChangeCoalescer();
+        int version = 0;
+        for (var action : actions.split(" ")) {
+            coalescer.process(change(action, node(1, ++version)));
+        }
+
+        var changes = write(coalescer);
+
+        assertEquals(actions.split(" ").length, coalescer.getChangeCount());
+        if (expected.equals("none")) {
+            assertEquals(List.of(), changes);
+        } else {
+            assertEquals(1, changes.size());
+            assertEquals(action(expected), changes.get(0).getAction());
+            // The net change carries the last version
+            assertEquals(version, changes.get(0).getEntityContainer().getEntity().getVersion());
+        }
+    }
+
+    @Test
+    void keepsLastVersionAcrossChangeFiles() {
+        var coalescer = new ChangeCoalescer();
+        var last = node(1, 3);
+        coalescer.process(change("modify", node(1, 1)));
+        coalescer.process(change("modify", node(2, 7)));
+        // The next change file is read by another reader
+        coalescer.complete();
+        coalescer.close();
+        coalescer.process(change("modify", node(1, 2)));
+        coalescer.process(change("modify", last));
+
+        var changes = write(coalescer);
+
+        assertEquals(List.of("modify node 1 v3", "modify node 2 v7"), describe(changes));
+        assertSame(last.getEntity(), changes.get(0).getEntityContainer().getEntity());
+    }
+
+    @Test
+    void writesInDependencyOrder() {
+        var coalescer = new ChangeCoalescer();
+        coalescer.process(change("delete", node(5, 2)));
+        coalescer.process(change("create", relation(30, 1)));
+        coalescer.process(change("delete", way(21, 4)));
+        coalescer.process(change("modify", way(20, 3)));
+        coalescer.process(change("create", node(2, 1)));
+        coalescer.process(change("delete", relation(31, 6)));
+        coalescer.process(change("modify", node(1, 2)));
+
+        var changes = write(coalescer);
+
+        assertEquals(List.of(
+            "modify node 1 v2",
+            "create node 2 v1",
+            "modify way 20 v3",
+            "create relation 30 v1",
+            "delete relation 31 v6",
+            "delete way 21 v4",
+            "delete node 5 v2"), describe(changes));
+    }
+
+    @Test
+    void ignoresBounds() {
+        var coalescer = new ChangeCoalescer();
+        coalescer.process(new ChangeContainer(new BoundContainer(new Bound("test")), ChangeAction.Create));
+
+        assertEquals(0, coalescer.getChangeCount());
+        assertEquals(List.of(), write(coalescer));
+    }
+
+    private static List<ChangeContainer> write(ChangeCoalescer coalescer) {
+        var changes = new ArrayList<ChangeContainer>();
+        coalescer.writeTo(new ChangeSink() {
+            @Override
+            public void initialize(Map<String, Object> metaData) {
+                // Nothing to initialize
+            }
+
+            @Override
+            public void process(ChangeContainer change) {
+                changes.add(change);
+            }
+
+            @Override
+            public void complete() {
+                // Nothing to complete
+            }
+
+            @Override
+            public void close() {
+                // Nothing to release
+            }
+        });
+        return changes;
+    }
+
+    private static List<String> describe(List<ChangeContainer> changes) {
+        return changes.stream().map(change -> {
+            var entity = change.getEntityContainer().getEntity();
+            return String.format("%s %s %d v%d", change.getAction().name().toLowerCase(),
+                entity.getType().name().toLowerCase(), entity.getId(), entity.getVersion());
+        }).toList();
+    }
+
+    private static ChangeContainer change(String action, EntityContainer container) {
+        return new ChangeContainer(container, action(action));
+    }
+
+    private static ChangeAction action(String action) {
+        switch (action) {
+        case "create":
+            return ChangeAction.Create;
+        case "modify":
+            return ChangeAction.Modify;
+        case "delete":
+            return ChangeAction.Delete;
+        default:
+            throw new IllegalArgumentException(String.format("Unknown action: %s.", action));
+        }
+    }
+
+    private static NodeContainer node(long id, int version) {
+        return new NodeContainer(new Node(entityData(id, version), 52.0, 4.0));
+    }
+
+    private static WayContainer way(long id, int version) {
+        return new WayContainer(new Way(entityData(id, version)));
+    }
+
+    private static RelationContainer relation(long id, int version) {
+        return new RelationContainer(new Relation(entityData(id, version)));
+    }
+
+    private static CommonEntityData entityData(long id, int version) {
+        return new CommonEntityData(id, version, new Date(version * 1000L), OsmUser.NONE, version);
+    }
+}
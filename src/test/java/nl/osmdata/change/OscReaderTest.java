@@ -0,0 +1,201 @@
+package nl.osmdata.change;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openstreetmap.osmosis.core.container.v0_6.ChangeContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.task.common.ChangeAction;
+import org.openstreetmap.osmosis.core.task.v0_6.ChangeSink;
+import org.openstreetmap.osmosis.core.task.v0_6.RunnableChangeSource;
+import org.openstreetmap.osmosis.xml.common.CompressionMethod;
+import org.openstreetmap.osmosis.xml.v0_6.XmlChangeReader;
+
+class OscReaderTest {
+    private static final String DOCUMENT = """
+        <?xml version='1.0' encoding='UTF-8'?>
+        <osmChange version="0.6" generator="osmium/1.14.0">
+          <create>
+            <node id="1" version="1" timestamp="2024-05-01T10:15:30Z" uid="7" user="alice" changeset="100" lat="52.3731" lon="4.8922">
+              <tag k="name" v="Caf&#233; &amp; Bar"/>
+              <tag k="amenity" v="cafe"/>
+            </node>
+            <node id="-2" version="1" timestamp="2024-05-01T10:15:31Z" changeset="100" lat="-33.8688197" lon="151.2092955"/>
+          </create>
+          <modify>
+            <way id="10" version="3" timestamp="2024-05-01T10:16:00Z" uid="7" user="alice" changeset="101">
+              <nd ref="1"/>
+              <nd ref="2"/>
+              <nd ref="1"/>
+              <tag k="highway" v="residential"/>
+            </way>
+            <relation id="20" version="2" timestamp="2024-05-01T10:17:00Z" uid="8" user="bob" changeset="102">
+              <member type="way" ref="10" role="outer"/>
+              <member type="node" ref="1" role=""/>
+              <member type="relation" ref="21" role="sub &lt;area&gt;"/>
+              <tag k="type" v="multipolygon"/>
+            </relation>
+          </modify>
+          <delete>
+            <node id="3" version="5" timestamp="2024-05-01T10:18:00Z" uid="7" user="alice (renamed)" changeset="103" lat="0" lon="0"/>
+            <way id="11" version="2" timestamp="2024-05-01T10:18:00Z" uid="9" user="" changeset="103"/>
+          </delete>
+        </osmChange>
+        """;
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void readsLikeTheOsmosisReader() throws Exception {
+        var file = write("change.osc", DOCUMENT);
+
+        var expected = read(new XmlChangeReader(file, true, CompressionMethod.None));
+        var changes = read(new OscReader(file, CompressionMethod.None));
+
+        assertEquals(expected.size(), changes.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameChange(expected.get(i), changes.get(i));
+        }
+    }
+
+    @Test
+    void readsEntities() throws Exception {
+        var changes = read(new OscReader(stream(DOCUMENT)));
+
+        assertEquals(List.of(ChangeAction.Create, ChangeAction.Create, ChangeAction.Modify, ChangeAction.Modify,
+            ChangeAction.Delete, ChangeAction.Delete), changes.stream().map(ChangeContainer::getAction).toList());
+        var node = (Node) changes.get(0).getEntityContainer().getEntity();
+        assertEquals(1, node.getId());
+        assertEquals(52.3731, node.getLatitude());
+        assertEquals(4.8922, node.getLongitude());
+        assertEquals("Café & Bar", node.getTags().iterator().next().getValue());
+        assertEquals(OsmUser.NONE, changes.get(1).getEntityContainer().getEntity().getUser());
+        var way = (Way) changes.get(2).getEntityContainer().getEntity();
+        assertEquals(List.of(1L, 2L, 1L), way.getWayNodes().stream().map(wayNode -> wayNode.getNodeId()).toList());
+        var relation = (Relation) changes.get(3).getEntityContainer().getEntity();
+        assertEquals(List.of(EntityType.Way, EntityType.Node, EntityType.Relation),
+            relation.getMembers().stream().map(member -> member.getMemberType()).toList());
+        assertEquals("sub <area>", relation.getMembers().get(2).getMemberRole());
+    }
+
+    @Test
+    void sharesUsersUntilTheyAreRenamed() throws Exception {
+        var changes = read(new OscReader(stream(DOCUMENT)));
+
+        var alice = changes.get(0).getEntityContainer().getEntity().getUser();
+        assertSame(alice, changes.get(2).getEntityContainer().getEntity().getUser());
+        var renamed = changes.get(4).getEntityContainer().getEntity().getUser();
+        assertEquals(7, renamed.getId());
+        assertEquals("alice (renamed)", renamed.getName());
+        assertEquals("", changes.get(5).getEntityContainer().getEntity().getUser().getName());
+    }
+
+    @Test
+    void readsCompressedFile() throws Exception {
+        var file = new File(tempDir, "change.osc.gz");
+        try (var out = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8)) {
+            out.write(DOCUMENT);
+        }
+
+        var changes = read(new OscReader(file, CompressionMethod.GZip));
+
+        assertEquals(6, changes.size());
+    }
+
+    @Test
+    void rejectsBZip2() {
+        assertThrows(IllegalArgumentException.class, () -> new OscReader(new File(tempDir, "change.osc.bz2"),
+            CompressionMethod.BZip2));
+    }
+
+    @Test
+    void rejectsEntityOutsideAction() {
+        var reader = new OscReader(stream("<osmChange><node id='1' lat='0' lon='0'/></osmChange>"));
+
+        var e = assertThrows(IllegalStateException.class, () -> read(reader));
+        assertTrue(e.getMessage().startsWith("Found a node outside of a change action"), e.getMessage());
+    }
+
+    @Test
+    void rejectsTruncatedDocument() {
+        var truncated = DOCUMENT.substring(0, DOCUMENT.indexOf("<nd ref=\"2\"/>") + 5);
+        var reader = new OscReader(stream(truncated));
+
+        assertThrows(UncheckedIOException.class, () -> read(reader));
+    }
+
+    private static void assertSameChange(ChangeContainer expected, ChangeContainer actual) {
+        assertEquals(expected.getAction(), actual.getAction());
+        Entity expectedEntity = expected.getEntityContainer().getEntity();
+        Entity actualEntity = actual.getEntityContainer().getEntity();
+        var description = String.format("%s %d", expectedEntity.getType(), expectedEntity.getId());
+        assertEquals(expectedEntity.getType(), actualEntity.getType(), description);
+        assertEquals(expectedEntity.getVersion(), actualEntity.getVersion(), description);
+        assertEquals(expectedEntity.getTimestamp(), actualEntity.getTimestamp(), description);
+        assertEquals(expectedEntity.getChangesetId(), actualEntity.getChangesetId(), description);
+        assertEquals(expectedEntity.getUser(), actualEntity.getUser(), description);
+        assertEquals(expectedEntity.getUser().getName(), actualEntity.getUser().getName(), description);
+        // The entities compare all their fields, including the tags, way nodes and members
+        assertEquals(expectedEntity, actualEntity, description);
+    }
+
+    private File write(String name, String content) throws IOException {
+        var file = new File(tempDir, name);
+        Files.writeString(file.toPath(), content);
+        return file;
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<ChangeContainer> read(RunnableChangeSource source) {
+        var changes = new ArrayList<ChangeContainer>();
+        source.setChangeSink(new ChangeSink() {
+            @Override
+            public void initialize(Map<String, Object> metaData) {
+                // Nothing to initialize
+            }
+
+            @Override
+            public void process(ChangeContainer change) {
+                changes.add(change);
+            }
+
+            @Override
+            public void complete() {
+                // Nothing to complete
+            }
+
+            @Override
+            public void close() {
+                // Nothing to release
+            }
+        });
+        source.run();
+        return changes;
+    }
+}
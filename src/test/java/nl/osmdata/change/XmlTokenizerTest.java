@@ -0,0 +1,227 @@
+package nl.osmdata.change;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class XmlTokenizerTest {
+    private static final String DOCUMENT = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <!DOCTYPE osmChange>
+        <!-- generated by a <test> -->
+        <osmChange version="0.6" generator='test'>
+          <?processing instruction <node id="1"/> ?>
+          <modify>
+            <node id="1" lat="52.1" lon='4.3'/>
+            <![CDATA[ <node id="2"/> ]]>
+            <way id = "3" >text<nd ref="4"></nd></way>
+          </modify>
+        </osmChange>
+        """;
+
+    @Test
+    void readsStartAndEndTags() throws Exception {
+        assertEquals(List.of(
+            "<osmChange version=0.6 generator=test>",
+            "<modify>",
+            "<node id=1 lat=52.1 lon=4.3>",
+            "</node>",
+            "<way id=3>",
+            "<nd ref=4>",
+            "</nd>",
+            "</way>",
+            "</modify>",
+            "</osmChange>"), events(DOCUMENT, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void readsInputSplitAcrossBuffers() throws Exception {
+        var expected = events(DOCUMENT, Integer.MAX_VALUE);
+        for (int chunk = 1; chunk < 8; chunk++) {
+            assertEquals(expected, events(DOCUMENT, chunk));
+        }
+    }
+
+    @Test
+    void readsTagsAcrossTheBufferBoundary() throws Exception {
+        // Shift the tags over the 64 kB boundary of the read buffer one byte at a time
+        for (int padding = 64 * 1024 - 40; padding < 64 * 1024; padding++) {
+            var xml = "<!--" + "-".repeat(padding) + "--><node id='1' user=\"a &amp; b\"/>";
+            assertEquals(List.of("<node id=1 user=a & b>", "</node>"), events(xml, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    void distinguishesSelfClosingAndOpenTags() throws Exception {
+        assertEquals(List.of("<a>", "</a>", "<b x=/>", "<c>", "</c>", "</b>"),
+            events("<a/><b x=\"/\"><c /></b>", Integer.MAX_VALUE));
+    }
+
+    @Test
+    void resolvesReferences() throws Exception {
+        var tokenizer = tokenizer("<tag v=\"&lt;&gt;&amp;&quot;&apos; &#233;&#xE9;&#x1F600; &unknown; &#xZZ; a&b\"/>");
+        tokenizer.next();
+
+        assertEquals("<>&\"' éé😀 &unknown; &#xZZ; a&b", tokenizer.getString(0));
+        assertEquals(tokenizer.getString(0), tokenizer.getCachedString(0));
+    }
+
+    @Test
+    void decodesUtf8() throws Exception {
+        var tokenizer = tokenizer("<tag k='name:ru' v='Москва'/>");
+        tokenizer.next();
+
+        assertEquals("Москва", tokenizer.getString(1));
+        assertSame(tokenizer.getCachedString(1), tokenizer.getCachedString(1));
+    }
+
+    @Test
+    void readsQuotesInsideAttributeValues() throws Exception {
+        var tokenizer = tokenizer("<tag k='say' v=\"it's > 1\"/><tag k=\"q\" v='\"'/>");
+
+        tokenizer.next();
+        assertEquals("it's > 1", tokenizer.getString(1));
+        tokenizer.next();
+        tokenizer.next();
+        assertEquals("\"", tokenizer.getString(1));
+    }
+
+    @Test
+    void parsesNumbers() throws Exception {
+        var tokenizer = tokenizer("<n a='0' b='-42' c='9223372036854775807' d='-9223372036854775808' e='+7'/>");
+        tokenizer.next();
+
+        assertEquals(0, tokenizer.getLong(0));
+        assertEquals(-42, tokenizer.getInt(1));
+        assertEquals(Long.MAX_VALUE, tokenizer.getLong(2));
+        assertEquals(Long.MIN_VALUE, tokenizer.getLong(3));
+        assertEquals(7, tokenizer.getLong(4));
+        assertThrows(ArithmeticException.class, () -> tokenizer.getInt(2));
+    }
+
+    @Test
+    void parsesDoublesLikeParseDouble() throws Exception {
+        var values = new ArrayList<String>(List.of("0", "-0.0", "1", "52.3731", "-179.9999999", "0.1", "1.", ".5",
+            "123456789012345", "0.123456789012345",
+            // Longer than the exact fast path, these must be rounded once, not digit by digit
+            "1234567890123456", "0.1234567890123456", "0.12345678901234567", "9007199254740993",
+            "52.37310000000000001", "4.000000000000000000001", "1e5", "-2.5E-3"));
+        var random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            int digits = 1 + random.nextInt(20);
+            var value = new StringBuilder(random.nextBoolean() ? "-" : "");
+            for (int d = 0; d < digits; d++) {
+                value.append((char) ('0' + random.nextInt(10)));
+            }
+            value.insert(value.length() - random.nextInt(digits), '.');
+            values.add(value.toString());
+        }
+        var xml = new StringBuilder("<n");
+        for (int i = 0; i < values.size(); i++) {
+            xml.append(" a").append(i).append("='").append(values.get(i)).append("'");
+        }
+        var tokenizer = tokenizer(xml.append("/>").toString());
+        tokenizer.next();
+
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(Double.parseDouble(values.get(i)), tokenizer.getDouble(i), values.get(i));
+        }
+    }
+
+    @Test
+    void parsesTimestamps() throws Exception {
+        var values = List.of("2024-02-29T23:59:59Z", "1970-01-01T00:00:00Z", "1969-12-31T23:59:59Z",
+            "2000-03-01T12:00:00Z", "2024-05-01T10:15:30.123Z", "2024-05-01T10:15:30+02:00");
+        var xml = new StringBuilder("<n");
+        for (int i = 0; i < values.size(); i++) {
+            xml.append(" t").append(i).append("='").append(values.get(i)).append("'");
+        }
+        var tokenizer = tokenizer(xml.append("/>").toString());
+        tokenizer.next();
+
+        for (int i = 0; i < values.size(); i++) {
+            var expected = values.get(i).endsWith("+02:00")
+                ? Instant.parse("2024-05-01T08:15:30Z")
+                : Instant.parse(values.get(i));
+            assertEquals(expected.toEpochMilli(), tokenizer.getTimestamp(i), values.get(i));
+        }
+    }
+
+    @Test
+    void rejectsMalformedDocuments() throws Exception {
+        for (var xml : List.of("<node id='1'", "<node id=1/>", "<node id/>", "<node id='1/>", "<!-- open", "<")) {
+            var tokenizer = tokenizer(xml);
+            var e = assertThrows(IOException.class, () -> {
+                while (tokenizer.next() != XmlTokenizer.END_DOCUMENT) {
+                    // Read to the end
+                }
+            }, xml);
+            assertTrue(e.getMessage().contains(" at byte "), e.getMessage());
+        }
+    }
+
+    private static XmlTokenizer tokenizer(String xml) {
+        return new XmlTokenizer(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Tokenize a document that arrives in chunks of at most the given size.
+     */
+    private static List<String> events(String xml, int chunk) throws IOException {
+        var tokenizer = new XmlTokenizer(new ChunkedInputStream(
+            new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), chunk));
+        var events = new ArrayList<String>();
+        int event;
+        while ((event = tokenizer.next()) != XmlTokenizer.END_DOCUMENT) {
+            if (event == XmlTokenizer.END_ELEMENT) {
+                events.add("</" + tokenizer.getName() + ">");
+                continue;
+            }
+            var text = new StringBuilder("<").append(tokenizer.getName());
+            for (int i = 0; i < tokenizer.getAttributeCount(); i++) {
+                text.append(' ').append(attributeName(tokenizer, i)).append('=').append(tokenizer.getString(i));
+            }
+            events.add(text.append('>').toString());
+        }
+        return events;
+    }
+
+    private static String attributeName(XmlTokenizer tokenizer, int index) {
+        for (var name : List.of("version", "generator", "id", "lat", "lon", "ref", "user", "x")) {
+            if (tokenizer.isAttribute(index, name.getBytes(StandardCharsets.US_ASCII))) {
+                return name;
+            }
+        }
+        throw new AssertionError(String.format("Unexpected attribute with value %s", tokenizer.getString(index)));
+    }
+
+    /**
+     * Returns at most a given number of bytes per read, like a network stream.
+     */
+    private static class ChunkedInputStream extends FilterInputStream {
+        private final int chunk;
+
+        ChunkedInputStream(InputStream in, int chunk) {
+            super(in);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package nl.osmdata.copy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+/**
+ * Checks the output byte by byte against the binary COPY format of Postgresql, see
+ * https://www.postgresql.org/docs/current/sql-copy.html#id-1.9.3.55.9.4
+ * All numbers of the format are big endian, only the EWKB geometries are little endian.
+ */
+class BinaryRowWriterTest {
+    private static final String HEADER = "5047434f50590aff0d0a00" + "00000000" + "00000000";
+    private static final String TRAILER = "ffff";
+
+    @Test
+    void writesHeaderAndTrailer() throws Exception {
+        var out = new ByteArrayOutputStream();
+        new BinaryRowWriter(out).close();
+
+        assertEquals(HEADER + TRAILER, HexFormat.of().formatHex(out.toByteArray()));
+    }
+
+    @Test
+    void writesRowWithFieldCount() throws Exception {
+        var in = rows(writer -> {
+            writer.writeField(1L);
+            writer.writeField(2);
+            writer.endRow();
+            writer.writeField(3L);
+            writer.endRow();
+        });
+
+        assertEquals(2, in.getShort());
+        assertLong(1, in);
+        assertEquals(4, in.getInt());
+        assertEquals(2, in.getInt());
+        assertEquals(1, in.getShort());
+        assertLong(3, in);
+        assertEnd(in);
+    }
+
+    @Test
+    void writesNumbers() throws Exception {
+        var in = row(writer -> {
+            writer.writeField(Long.MIN_VALUE);
+            writer.writeField(-1L);
+            writer.writeField(Integer.MAX_VALUE);
+            writer.writeField(-2);
+        });
+
+        assertEquals("00000008" + "8000000000000000", hex(in, 12));
+        assertEquals("00000008" + "ffffffffffffffff", hex(in, 12));
+        assertEquals(4, in.getInt());
+        assertEquals("7fffffff", hex(in, 4));
+        assertEquals(4, in.getInt());
+        assertEquals("fffffffe", hex(in, 4));
+        assertEnd(in);
+    }
+
+    @Test
+    void writesTextAsUtf8() throws Exception {
+        var in = row(writer -> {
+            writer.writeField("");
+            writer.writeField("Zürich");
+            writer.writeField('N');
+        });
+
+        assertEquals(0, in.getInt());
+        // The length is in bytes, not characters
+        assertEquals(7, in.getInt());
+        assertEquals("5ac3bc72696368", hex(in, 7));
+        assertString("N", in);
+        assertEnd(in);
+    }
+
+    @Test
+    void writesNulls() throws Exception {
+        var in = row(writer -> {
+            writer.writeNull();
+            writer.writeField((String) null);
+        });
+
+        assertEquals(-1, in.getInt());
+        assertEquals(-1, in.getInt());
+        assertEnd(in);
+    }
+
+    @Test
+    void writesTimestampsAsMicrosecondsSince2000() throws Exception {
+        var in = row(writer -> {
+            writer.writeTimestamp(Instant.parse("2000-01-01T00:00:00Z").toEpochMilli());
+            writer.writeTimestamp(Instant.parse("1999-12-31T23:59:59Z").toEpochMilli());
+            writer.writeTimestamp(Instant.parse("2024-05-01T10:15:30.123Z").toEpochMilli());
+        });
+
+        assertLong(0, in);
+        assertLong(-1_000_000, in);
+        assertLong(767_873_730_123_000L, in);
+        assertEnd(in);
+    }
+
+    @Test
+    void writesHstore() throws Exception {
+        var in = row(writer -> {
+            writer.writeHstore(List.of(new Tag("name", "Café"), new Tag("highway", "")));
+            writer.writeHstore(new String[] {"name", "Café", "highway", ""}, new int[] {0, 2}, new int[] {1, 3}, 0, 2);
+            writer.writeHstore(List.of());
+        });
+
+        for (int i = 0; i < 2; i++) {
+            // The field length, the number of pairs, then the length prefixed keys and values
+            assertEquals(4 + (4 + 4) + (4 + 5) + (4 + 7) + 4, in.getInt());
+            assertEquals(2, in.getInt());
+            assertString("name", in);
+            assertString("Café", in);
+            assertString("highway", in);
+            assertEquals(0, in.getInt());
+        }
+        assertEquals(4, in.getInt());
+        assertEquals(0, in.getInt());
+        assertEnd(in);
+    }
+
+    @Test
+    void writesHstoreRange() throws Exception {
+        var strings = new String[] {"a", "1", "b", "2"};
+        var in = row(writer -> writer.writeHstore(strings, new int[] {0, 2}, new int[] {1, 3}, 1, 2));
+
+        assertEquals(4 + 5 + 5, in.getInt());
+        assertEquals(1, in.getInt());
+        assertString("b", in);
+        assertString("2", in);
+        assertEnd(in);
+    }
+
+    @Test
+    void writesNodeIdsAsInt8Array() throws Exception {
+        var in = row(writer -> {
+            writer.writeNodeIds(List.of(new WayNode(1), new WayNode(-5)));
+            writer.writeNodeIds(new long[] {9, 1, -5, 9}, 1, 3);
+        });
+
+        for (int i = 0; i < 2; i++) {
+            // Dimensions, has nulls flag, element type oid, size and lower bound, elements
+            assertEquals(5 * 4 + 2 * 12, in.getInt());
+            assertEquals(1, in.getInt());
+            assertEquals(0, in.getInt());
+            assertEquals(20, in.getInt());
+            assertEquals(2, in.getInt());
+            assertEquals(1, in.getInt());
+            assertLong(1, in);
+            assertLong(-5, in);
+        }
+        assertEnd(in);
+    }
+
+    @Test
+    void writesEmptyArrayWithoutDimensions() throws Exception {
+        var in = row(writer -> {
+            writer.writeNodeIds(List.of());
+            writer.writeNodeIds(new long[] {1, 2}, 1, 1);
+        });
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(12, in.getInt());
+            assertEquals("00000000" + "00000000" + "00000014", hex(in, 12));
+        }
+        assertEnd(in);
+    }
+
+    @Test
+    void writesPointAsEwkb() throws Exception {
+        var in = row(writer -> writer.writePoint(4.8922, 52.3731));
+
+        assertEquals(1 + 4 + 4 + 16, in.getInt());
+        // Little endian, point type with the SRID flag, SRID 4326
+        assertEquals("01" + "01000020" + "e6100000", hex(in, 9));
+        var coordinates = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(4.8922, coordinates.getDouble());
+        assertEquals(52.3731, coordinates.getDouble());
+        in.position(in.position() + 16);
+        assertEnd(in);
+    }
+
+    @Test
+    void writesLineStringAsEwkb() throws Exception {
+        var coordinates = new double[] {4.0, 52.0, 4.5, 52.5, -1.0, -2.0, 99.0, 99.0};
+        var in = row(writer -> writer.writeLineString(coordinates, 3));
+
+        assertEquals(1 + 4 + 4 + 4 + 3 * 16, in.getInt());
+        assertEquals("01" + "02000020" + "e6100000" + "03000000", hex(in, 13));
+        var points = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 6; i++) {
+            assertEquals(coordinates[i], points.getDouble());
+        }
+        in.position(in.position() + 3 * 16);
+        assertEnd(in);
+    }
+
+    @Test
+    void writesBoxAsEwkbPolygon() throws Exception {
+        var in = row(writer -> writer.writeBox(4.0, 52.0, 5.0, 53.0));
+
+        assertEquals(1 + 4 + 4 + 4 + 4 + 5 * 16, in.getInt());
+        // One closed ring of five points
+        assertEquals("01" + "03000020" + "e6100000" + "01000000" + "05000000", hex(in, 17));
+        var points = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        for (double coordinate : new double[] {4, 52, 4, 53, 5, 53, 5, 52, 4, 52}) {
+            assertEquals(coordinate, points.getDouble());
+        }
+        in.position(in.position() + 5 * 16);
+        assertEnd(in);
+    }
+
+    @Test
+    void appendsFragmentRows() throws Exception {
+        var fragment = new ByteArrayOutputStream();
+        var fragmentWriter = CopyFormat.BINARY.createFragmentWriter(fragment);
+        fragmentWriter.writeField(7L);
+        fragmentWriter.endRow();
+        assertFalse(HexFormat.of().formatHex(fragment.toByteArray()).startsWith("5047"));
+        var data = fragment.toByteArray();
+
+        var in = rows(writer -> {
+            writer.writeField(6L);
+            writer.endRow();
+            writer.writeRows(data, 0, data.length);
+        });
+
+        assertEquals(1, in.getShort());
+        assertLong(6, in);
+        assertEquals(1, in.getShort());
+        assertLong(7, in);
+        assertEnd(in);
+    }
+
+    @Test
+    void matchesTheExpectedBytesOfARow() throws Exception {
+        var out = new ByteArrayOutputStream();
+        try (var writer = new BinaryRowWriter(out)) {
+            writer.writeField(42L);
+            writer.writeField("ab");
+            writer.writeNull();
+            writer.endRow();
+        }
+
+        assertArrayEquals(HexFormat.of().parseHex(HEADER
+            + "0003"
+            + "00000008" + "000000000000002a"
+            + "00000002" + "6162"
+            + "ffffffff"
+            + TRAILER), out.toByteArray());
+    }
+
+    /**
+     * Write rows and return the bytes between the header and the trailer.
+     */
+    private static ByteBuffer rows(Consumer<BinaryRowWriter> rows) throws Exception {
+        var out = new ByteArrayOutputStream();
+        try (var writer = new BinaryRowWriter(out)) {
+            rows.accept(writer);
+        }
+        var bytes = out.toByteArray();
+        var header = HexFormat.of().parseHex(HEADER);
+        assertArrayEquals(header, Arrays.copyOf(bytes, header.length));
+        assertEquals(TRAILER, HexFormat.of().formatHex(bytes, bytes.length - 2, bytes.length));
+        return ByteBuffer.wrap(bytes, header.length, bytes.length - header.length - 2).slice();
+    }
+
+    /**
+     * Write the fields of a single row and return the bytes after its field count.
+     */
+    private static ByteBuffer row(Consumer<BinaryRowWriter> fields) throws Exception {
+        var in = rows(writer -> {
+            fields.accept(writer);
+            writer.endRow();
+        });
+        assertTrue(in.getShort() > 0);
+        return in;
+    }
+
+    private static void assertLong(long expected, ByteBuffer in) {
+        assertEquals(8, in.getInt());
+        assertEquals(expected, in.getLong());
+    }
+
+    private static void assertString(String expected, ByteBuffer in) {
+        var bytes = new byte[in.getInt()];
+        in.get(bytes);
+        assertEquals(expected, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static String hex(ByteBuffer in, int length) {
+        var bytes = new byte[length];
+        in.get(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    private static void assertEnd(ByteBuffer in) {
+        assertEquals(0, in.remaining());
+    }
+}
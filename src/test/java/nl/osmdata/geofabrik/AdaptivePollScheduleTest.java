@@ -0,0 +1,76 @@
+package nl.osmdata.geofabrik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptivePollScheduleTest {
+    private static final Duration MIN = Duration.ofSeconds(10);
+    private static final Duration MAX = Duration.ofMinutes(15);
+    private static final Instant T0 = Instant.parse("2026-01-01T00:00:00Z");
+
+    private final AdaptivePollSchedule schedule = new AdaptivePollSchedule(MIN, MAX);
+
+    @Test
+    void pollsAtMinimumIntervalWithoutPeriod() {
+        assertEquals(MIN, schedule.nextDelay(T0));
+        schedule.observe(100, T0);
+        assertNull(schedule.getPeriod());
+        assertEquals(MIN, schedule.nextDelay(T0));
+    }
+
+    @Test
+    void backsOffWithoutPeriod() {
+        schedule.observe(100, T0);
+        schedule.observe(100, T0);
+        assertEquals(Duration.ofSeconds(20), schedule.nextDelay(T0));
+        schedule.observe(100, T0);
+        assertEquals(Duration.ofSeconds(40), schedule.nextDelay(T0));
+        schedule.failed();
+        assertEquals(Duration.ofSeconds(80), schedule.nextDelay(T0));
+    }
+
+    @Test
+    void clampsBackOffToMaximumInterval() {
+        for (int i = 0; i < 40; i++) {
+            schedule.failed();
+        }
+        assertEquals(MAX, schedule.nextDelay(T0));
+    }
+
+    @Test
+    void backsOffUpToQuarterOfPeriod() {
+        var hour = Duration.ofHours(1);
+        schedule.observe(100, T0);
+        schedule.observe(101, T0.plus(hour));
+        assertEquals(hour, schedule.getPeriod());
+        var late = T0.plus(hour.multipliedBy(2)).plusSeconds(1);
+        for (int i = 0; i < 10; i++) {
+            schedule.observe(101, T0.plus(hour));
+        }
+        assertEquals(hour.dividedBy(4), schedule.nextDelay(late));
+    }
+
+    @Test
+    void resetsBackOffAfterHit() {
+        for (int i = 0; i < 5; i++) {
+            schedule.failed();
+        }
+        schedule.observe(100, T0);
+        assertEquals(MIN, schedule.nextDelay(T0));
+    }
+
+    @Test
+    void waitsForNextExpectedState() {
+        var minute = Duration.ofMinutes(1);
+        schedule.observe(100, T0);
+        schedule.observe(102, T0.plus(minute.multipliedBy(2)));
+        assertEquals(minute, schedule.getPeriod());
+        // Expected at T0 + 3 minutes, plus a margin of 3 s (a twentieth of the period)
+        assertEquals(Duration.ofSeconds(63), schedule.nextDelay(T0.plus(minute.multipliedBy(2))));
+    }
+}
@@ -0,0 +1,86 @@
+package nl.osmdata.geofabrik;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArchivingInputStreamTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keepsCopyWhenReadToEnd() throws Exception {
+        var data = gzip("<osmChange version=\"0.6\"></osmChange>\n".repeat(1000));
+        var target = tempDir.resolve("europe/monaco-000000001.osc.gz");
+        var archive = new ArchivingInputStream(new ByteArrayInputStream(data), target);
+
+        try (var in = archive.completeAtEndOf(new GZIPInputStream(archive))) {
+            in.readAllBytes();
+        }
+
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertFalse(Files.exists(partPath(target)));
+    }
+
+    @Test
+    void dropsCopyWhenStoppedEarly() throws Exception {
+        var text = new StringBuilder();
+        var random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            text.append(String.format("<node id=\"%d\"/>%n", random.nextLong()));
+        }
+        var data = gzip(text.toString());
+        var body = new CountingInputStream(data);
+        var target = tempDir.resolve("europe/monaco-000000001.osc.gz");
+        var archive = new ArchivingInputStream(body, target);
+
+        try (var in = archive.completeAtEndOf(new GZIPInputStream(archive, 1024))) {
+            in.readNBytes(100);
+        }
+
+        assertFalse(Files.exists(target));
+        assertFalse(Files.exists(partPath(target)));
+        // The rest of the body is not read after the reader stopped
+        assertTrue(body.bytesRead < 10 * 1024, () -> body.bytesRead + " of " + data.length + " bytes read");
+    }
+
+    private static Path partPath(Path target) {
+        return target.resolveSibling(target.getFileName() + ".part");
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static class CountingInputStream extends ByteArrayInputStream {
+        private long bytesRead = 0;
+
+        CountingInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int n = super.read(b, off, len);
+            bytesRead += Math.max(0, n);
+            return n;
+        }
+    }
+}
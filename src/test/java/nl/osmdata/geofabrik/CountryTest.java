@@ -0,0 +1,37 @@
+package nl.osmdata.geofabrik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class CountryTest {
+
+    @Test
+    void parsesCountry() {
+        var country = Country.parse(" europe/netherlands ");
+        assertEquals("europe", country.getContinent());
+        assertEquals("netherlands", country.getCountry());
+        assertNull(country.getSchema());
+    }
+
+    @Test
+    void parsesSchema() {
+        assertEquals(new Country("europe", "netherlands", "nl"), Country.parse("europe/netherlands:nl"));
+    }
+
+    @Test
+    void parsesSubRegion() {
+        assertEquals(new Country("europe", "germany/bayern", null), Country.parse("europe/germany/bayern"));
+        assertEquals(new Country("europe", "germany/bayern", "by"), Country.parse("europe/germany/bayern:by"));
+    }
+
+    @Test
+    void rejectsInvalidCountries() {
+        for (var value : new String[] {"europe", "europe/", "/netherlands", "europe//netherlands",
+                "europe/netherlands:", "europe:nl/netherlands:nl"}) {
+            assertThrows(IllegalArgumentException.class, () -> Country.parse(value), value);
+        }
+    }
+}
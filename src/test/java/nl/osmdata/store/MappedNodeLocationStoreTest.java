@@ -0,0 +1,157 @@
+package nl.osmdata.store;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class MappedNodeLocationStoreTest {
+    private static final int PAGE_SIZE = 1 << 16;
+    // The OSM precision of the stored locations
+    private static final double DELTA = 1e-7;
+
+    private final MappedNodeLocationStore store = new MappedNodeLocationStore();
+    private final double[] lonLat = new double[2];
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void findsLocationsAcrossPageBoundaries() {
+        long[] ids = {0, 1, PAGE_SIZE - 1, PAGE_SIZE, 2L * PAGE_SIZE - 1, 2L * PAGE_SIZE, 10L * PAGE_SIZE + 7};
+        for (long id : ids) {
+            store.put(id, longitude(id), latitude(id));
+        }
+        for (long id : ids) {
+            assertLocation(id);
+        }
+    }
+
+    @Test
+    void findsLocationsInCurrentPage() {
+        store.put(5, 4.9, 52.3);
+        store.put(9, -73.98, 40.75);
+        assertTrue(store.get(5, lonLat));
+        assertArrayEquals(new double[] {4.9, 52.3}, lonLat, DELTA);
+        assertTrue(store.get(9, lonLat));
+        assertArrayEquals(new double[] {-73.98, 40.75}, lonLat, DELTA);
+        assertFalse(store.get(7, lonLat));
+    }
+
+    @Test
+    void findsLocationsInDensePage() {
+        long base = 3L * PAGE_SIZE;
+        // Every other id, enough to make the page dense
+        for (long id = base; id < base + PAGE_SIZE; id += 2) {
+            store.put(id, longitude(id), latitude(id));
+        }
+        store.put(base + 2L * PAGE_SIZE, 0, 0);
+        for (long id = base; id < base + PAGE_SIZE; id += 2) {
+            assertLocation(id);
+            assertFalse(store.get(id + 1, lonLat));
+        }
+    }
+
+    @Test
+    void findsLocationsInSparsePages() {
+        long[] ids = {17, 1_000_003, 1_000_021, 5_000_000_000L, 12_000_000_123L};
+        for (long id : ids) {
+            store.put(id, longitude(id), latitude(id));
+        }
+        for (long id : ids) {
+            assertLocation(id);
+        }
+        assertFalse(store.get(1_000_004, lonLat));
+        assertFalse(store.get(5_000_000_001L, lonLat));
+        assertFalse(store.get(7_000_000_000L, lonLat));
+    }
+
+    @Test
+    void keepsNegativeAndUnsortedIds() {
+        store.put(-5, 1.5, 2.5);
+        store.put(1000, 3.0, 4.0);
+        store.put(200, 5.0, 6.0);
+        store.put(10L * PAGE_SIZE, 7.0, 8.0);
+        store.put(300, 9.0, 10.0);
+        assertTrue(store.get(-5, lonLat));
+        assertArrayEquals(new double[] {1.5, 2.5}, lonLat, DELTA);
+        assertTrue(store.get(200, lonLat));
+        assertArrayEquals(new double[] {5.0, 6.0}, lonLat, DELTA);
+        assertTrue(store.get(300, lonLat));
+        assertArrayEquals(new double[] {9.0, 10.0}, lonLat, DELTA);
+        assertTrue(store.get(1000, lonLat));
+        assertArrayEquals(new double[] {3.0, 4.0}, lonLat, DELTA);
+        assertFalse(store.get(-6, lonLat));
+    }
+
+    @Test
+    void keepsLastLocationOfRepeatedId() {
+        store.put(42, 1.0, 1.0);
+        store.put(42, 2.0, 2.0);
+        assertTrue(store.get(42, lonLat));
+        assertArrayEquals(new double[] {2.0, 2.0}, lonLat, DELTA);
+    }
+
+    @Test
+    void reportsUnknownIdWithoutChangingResult() {
+        store.put(1, 10.0, 20.0);
+        lonLat[0] = 99;
+        lonLat[1] = 99;
+        assertFalse(store.get(2, lonLat));
+        assertFalse(store.get(PAGE_SIZE + 1, lonLat));
+        assertArrayEquals(new double[] {99, 99}, lonLat);
+    }
+
+    @Test
+    void storesExtremeCoordinates() {
+        store.put(1, -180.0, -90.0);
+        store.put(2, 180.0, 90.0);
+        store.put(3, 0.0, 0.0);
+        store.put(PAGE_SIZE, 0, 0);
+        assertTrue(store.get(1, lonLat));
+        assertArrayEquals(new double[] {-180.0, -90.0}, lonLat, DELTA);
+        assertTrue(store.get(2, lonLat));
+        assertArrayEquals(new double[] {180.0, 90.0}, lonLat, DELTA);
+        assertTrue(store.get(3, lonLat));
+        assertArrayEquals(new double[] {0.0, 0.0}, lonLat, DELTA);
+    }
+
+    @Test
+    void growsPastFirstMapping() {
+        // A dense page takes 512 KB, so 130 of them don't fit in the first 64 MB mapping
+        int pages = 130;
+        for (long page = 0; page < pages; page++) {
+            for (long id = page * PAGE_SIZE; id < (page + 1) * PAGE_SIZE; id++) {
+                store.put(id, longitude(id), latitude(id));
+            }
+        }
+        int found = 0;
+        for (long page = 0; page < pages; page++) {
+            for (long id : new long[] {page * PAGE_SIZE, page * PAGE_SIZE + 12345, (page + 1) * PAGE_SIZE - 1}) {
+                assertLocation(id);
+                found++;
+            }
+        }
+        assertEquals(3 * pages, found);
+        assertFalse(store.get((long) pages * PAGE_SIZE, lonLat));
+    }
+
+    private void assertLocation(long id) {
+        assertTrue(store.get(id, lonLat), () -> "No location for node " + id);
+        assertEquals(longitude(id), lonLat[0], DELTA, () -> "Longitude of node " + id);
+        assertEquals(latitude(id), lonLat[1], DELTA, () -> "Latitude of node " + id);
+    }
+
+    private static double longitude(long id) {
+        return (id % 3_600_000) / 10_000.0 - 180;
+    }
+
+    private static double latitude(long id) {
+        return (id % 1_800_000) / 10_000.0 - 90;
+    }
+}